@@ -0,0 +1,141 @@
+package io.bloc.android.blocly.api;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import io.bloc.android.blocly.api.model.RssFeed;
+import io.bloc.android.blocly.api.model.RssItem;
+
+/**
+ * Checks which reads ModelCache accepts once changes have been committed, and how it counts hits
+ * and misses. Runs on the device, as the cache is built on android.util.LruCache.
+ */
+public class ModelCacheTest extends TestCase {
+
+    private ModelCache modelCache;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        modelCache = new ModelCache(1024 * 1024);
+    }
+
+    public void testItemListIsDroppedWhenItsFeedChanges() {
+        long feedVersion = modelCache.getFeedVersion(1);
+        modelCache.putItemList(1, feedVersion, itemList(1, 10, 11));
+        assertEquals(2, modelCache.getItemList(1).size());
+
+        ChangeSet changes = new ChangeSet();
+        changes.itemUpdated(1, 10);
+        modelCache.invalidate(changes);
+        assertNull(modelCache.getItemList(1));
+
+        // A read which began before the change may hold the old rows
+        modelCache.putItemList(1, feedVersion, itemList(1, 10, 11));
+        assertNull(modelCache.getItemList(1));
+        modelCache.putItemList(1, modelCache.getFeedVersion(1), itemList(1, 10, 11));
+        assertNotNull(modelCache.getItemList(1));
+    }
+
+    public void testWriteToOneFeedKeepsReadsOfAnother() {
+        modelCache.putItemList(2, modelCache.getFeedVersion(2), itemList(2, 20));
+        Map<Long, Long> feedVersions = modelCache.getFeedVersions();
+
+        // Feed 1 changes while items of both feeds are being read
+        ChangeSet changes = new ChangeSet();
+        changes.itemInserted(1, 12, 0);
+        modelCache.invalidate(changes);
+        modelCache.putItems(feedVersions, Arrays.asList(item(1, 10), item(2, 21)));
+
+        assertNull(modelCache.getItem(10));
+        assertNotNull(modelCache.getItem(21));
+        assertNotNull(modelCache.getItemList(2));
+    }
+
+    public void testChangedAndRemovedItemsAreDropped() {
+        modelCache.putItems(modelCache.getFeedVersions(), Arrays.asList(item(1, 10), item(1, 11), item(2, 20),
+                item(3, 30)));
+
+        ChangeSet changes = new ChangeSet();
+        changes.itemUpdated(1, 10);
+        changes.itemRemoved(2, 20);
+        // The items of a removed feed are not listed
+        changes.feedRemoved(3);
+        modelCache.invalidate(changes);
+
+        assertNull(modelCache.getItem(10));
+        assertNotNull(modelCache.getItem(11));
+        assertNull(modelCache.getItem(20));
+        assertNull(modelCache.getItem(30));
+    }
+
+    public void testFeedListOnlyFollowsFeedChanges() {
+        long feedListVersion = modelCache.getFeedListVersion();
+        modelCache.putAllFeeds(feedListVersion, feedList(1, 2));
+
+        ChangeSet itemChanges = new ChangeSet();
+        itemChanges.itemUpdated(1, 10);
+        modelCache.invalidate(itemChanges);
+        assertEquals(feedListVersion, modelCache.getFeedListVersion());
+        assertNotNull(modelCache.getAllFeeds());
+
+        ChangeSet feedChanges = new ChangeSet();
+        feedChanges.feedUpdated(2);
+        modelCache.invalidate(feedChanges);
+        assertNull(modelCache.getAllFeeds());
+        modelCache.putAllFeeds(feedListVersion, feedList(1, 2));
+        assertNull(modelCache.getAllFeeds());
+        modelCache.putAllFeeds(modelCache.getFeedListVersion(), feedList(1, 2));
+        assertEquals(2, modelCache.getAllFeeds().size());
+    }
+
+    public void testStatsCountHitsAndMisses() {
+        modelCache.getItemList(1);
+        modelCache.putItemList(1, modelCache.getFeedVersion(1), itemList(1, 10));
+        modelCache.getItemList(1);
+        modelCache.getItemList(1);
+        modelCache.getItem(10);
+        modelCache.putItems(modelCache.getFeedVersions(), Arrays.asList(item(1, 10)));
+        modelCache.getItem(10);
+        modelCache.getAllFeeds();
+        modelCache.putAllFeeds(modelCache.getFeedListVersion(), feedList(1));
+        modelCache.getAllFeeds();
+        modelCache.getAllFeeds();
+
+        ModelCache.Stats stats = modelCache.getStats();
+        assertEquals(2, stats.itemListHits);
+        assertEquals(1, stats.itemListMisses);
+        assertEquals(1, stats.itemHits);
+        assertEquals(1, stats.itemMisses);
+        assertEquals(2, stats.feedListHits);
+        assertEquals(1, stats.feedListMisses);
+        assertTrue(stats.size > 0);
+        assertTrue(stats.size <= stats.maxSize);
+    }
+
+    private static RssItem item(long feedRowId, long itemRowId) {
+        return new RssItem(itemRowId, "guid-" + itemRowId, "Item " + itemRowId, null,
+                "http://example.com/" + itemRowId, null, feedRowId, itemRowId, false, false, false);
+    }
+
+    private static List<RssItem> itemList(long feedRowId, long... itemRowIds) {
+        List<RssItem> itemList = new ArrayList<RssItem>();
+        for (long itemRowId : itemRowIds) {
+            itemList.add(item(feedRowId, itemRowId));
+        }
+        return itemList;
+    }
+
+    private static List<RssFeed> feedList(long... feedRowIds) {
+        List<RssFeed> feedList = new ArrayList<RssFeed>();
+        for (long feedRowId : feedRowIds) {
+            feedList.add(new RssFeed(feedRowId, "Feed " + feedRowId, null, null,
+                    "http://example.com/" + feedRowId));
+        }
+        return feedList;
+    }
+}
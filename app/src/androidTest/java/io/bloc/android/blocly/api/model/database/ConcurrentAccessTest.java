@@ -0,0 +1,104 @@
+package io.bloc.android.blocly.api.model.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import io.bloc.android.blocly.api.model.database.table.RssFeedTable;
+import io.bloc.android.blocly.api.model.database.table.RssItemTable;
+
+/**
+ * Checks that reads complete while a write transaction is held open, as they do in
+ * write-ahead-logging mode.
+ */
+public class ConcurrentAccessTest extends AndroidTestCase {
+
+    private static final String NAME = "blocly_concurrency_test_db";
+
+    private DatabaseOpenHelper databaseOpenHelper;
+    private ExecutorService executorService;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        getContext().deleteDatabase(NAME);
+        databaseOpenHelper = new DatabaseOpenHelper(getContext(), NAME, new RssFeedTable(), new RssItemTable());
+        executorService = Executors.newFixedThreadPool(2);
+
+        List<RssItemTable.Builder> builders = new ArrayList<RssItemTable.Builder>();
+        for (int i = 0; i < 50; i++) {
+            builders.add(new RssItemTable.Builder().setGUID("guid-" + i).setPubDate(i).setRSSFeed(1));
+        }
+        new RssItemTable().bulkInsert(databaseOpenHelper.getWritableDatabase(), builders);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        executorService.shutdownNow();
+        databaseOpenHelper.close();
+        getContext().deleteDatabase(NAME);
+        super.tearDown();
+    }
+
+    public void testDatabaseUsesWriteAheadLogging() {
+        Cursor cursor = databaseOpenHelper.getReadableDatabase().rawQuery("PRAGMA journal_mode", null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("wal", cursor.getString(0).toLowerCase());
+        cursor.close();
+    }
+
+    public void testReadsAreNotBlockedByWrites() throws Exception {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch readFinished = new CountDownLatch(1);
+
+        // Holds a write transaction open, with uncommitted rows, until the read has finished
+        Future<Void> writer = executorService.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                SQLiteDatabase writableDatabase = databaseOpenHelper.getWritableDatabase();
+                writableDatabase.beginTransactionNonExclusive();
+                try {
+                    for (int i = 50; i < 100; i++) {
+                        new RssItemTable.Builder().setGUID("guid-" + i).setPubDate(i).setRSSFeed(1)
+                                .insert(writableDatabase);
+                    }
+                    writing.countDown();
+                    assertTrue(readFinished.await(10, TimeUnit.SECONDS));
+                    writableDatabase.setTransactionSuccessful();
+                } finally {
+                    writableDatabase.endTransaction();
+                }
+                return null;
+            }
+        });
+        assertTrue(writing.await(10, TimeUnit.SECONDS));
+
+        Future<Integer> reader = executorService.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                Cursor cursor = RssItemTable.fetchItemsForFeed(databaseOpenHelper.getReadableDatabase(), 1);
+                int count = cursor.getCount();
+                cursor.close();
+                readFinished.countDown();
+                return count;
+            }
+        });
+
+        // The read finishes while the write is still open, and sees only committed rows
+        assertEquals(Integer.valueOf(50), reader.get(2, TimeUnit.SECONDS));
+        writer.get(10, TimeUnit.SECONDS);
+
+        Cursor cursor = RssItemTable.fetchItemsForFeed(databaseOpenHelper.getReadableDatabase(), 1);
+        assertEquals(100, cursor.getCount());
+        cursor.close();
+    }
+}
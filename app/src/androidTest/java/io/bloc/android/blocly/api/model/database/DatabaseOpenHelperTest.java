@@ -0,0 +1,173 @@
+package io.bloc.android.blocly.api.model.database;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+import io.bloc.android.blocly.api.model.database.table.ItemCountTable;
+import io.bloc.android.blocly.api.model.database.table.RssFeedTable;
+import io.bloc.android.blocly.api.model.database.table.RssItemSearchTable;
+import io.bloc.android.blocly.api.model.database.table.RssItemTable;
+
+/**
+ * Upgrades a populated version 1 database in place and checks the result.
+ */
+public class DatabaseOpenHelperTest extends AndroidTestCase {
+
+    private static final String NAME = "blocly_upgrade_test_db";
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        getContext().deleteDatabase(NAME);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        getContext().deleteDatabase(NAME);
+        super.tearDown();
+    }
+
+    public void testUpgradeFromVersion1() {
+        createVersion1Database();
+
+        DatabaseOpenHelper databaseOpenHelper = new DatabaseOpenHelper(getContext(), NAME,
+                new RssFeedTable(), new RssItemTable(), new RssItemSearchTable(), new ItemCountTable());
+        SQLiteDatabase database = databaseOpenHelper.getWritableDatabase();
+
+        // Version 2 added the validators
+        Cursor feedCursor = RssFeedTable.fetchFeedWithURL(database, "http://example.com/feed");
+        assertTrue(feedCursor.moveToFirst());
+        assertNull(RssFeedTable.getETag(feedCursor));
+        feedCursor.close();
+
+        // Version 3 merged the copies of guid-1, keeping the oldest row and its copy's favorite flag
+        Cursor itemCursor = RssItemTable.fetchItemsForFeed(database, 1);
+        assertEquals(3, itemCursor.getCount());
+        itemCursor.close();
+        itemCursor = database.rawQuery("SELECT * FROM rss_items WHERE guid = 'guid-1'", null);
+        assertTrue(itemCursor.moveToFirst());
+        assertEquals(1, itemCursor.getCount());
+        assertEquals(1, RssItemTable.getRowId(itemCursor));
+        assertEquals("guid-1", RssItemTable.getItemKey(itemCursor));
+        assertTrue(RssItemTable.getFavorite(itemCursor));
+        itemCursor.close();
+
+        // Version 4 added the indexes, which the feed and item queries now use. Version 5 replaced
+        //      the pub_date index with one which also orders by row id
+        assertIndexExists(database, "rss_feeds_feed_url");
+        assertIndexExists(database, "rss_items_feed_item_key");
+        assertIndexExists(database, "rss_items_feed_pub_date_id");
+        assertIndexMissing(database, "rss_items_feed_pub_date");
+        String plan = queryPlan(database,
+                "SELECT * FROM rss_items WHERE rss_feed = 1 ORDER BY pub_date DESC, id DESC");
+        assertTrue(plan, plan.contains("rss_items_feed_pub_date_id"));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+        plan = queryPlan(database, "SELECT * FROM rss_items WHERE rss_feed = 1 AND pub_date <= 200"
+                + " AND (pub_date < 200 OR id < 2) ORDER BY pub_date DESC, id DESC LIMIT 30");
+        assertTrue(plan, plan.contains("rss_items_feed_pub_date_id"));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+        plan = queryPlan(database, "SELECT * FROM rss_feeds WHERE feed_url = 'http://example.com/feed'");
+        assertTrue(plan, plan.contains("rss_feeds_feed_url"));
+
+        // Version 6 indexed the text of the items already stored, and keeps it up to date
+        Cursor searchCursor = RssItemSearchTable.searchItems(database, "one", 30, 0);
+        assertEquals(1, searchCursor.getCount());
+        searchCursor.close();
+        database.execSQL("UPDATE rss_items SET title = 'Uno' WHERE id = 1");
+        searchCursor = RssItemSearchTable.searchItems(database, "one", 30, 0);
+        assertEquals(0, searchCursor.getCount());
+        searchCursor.close();
+
+        // Version 7 added the read flag, items already stored start out unread
+        itemCursor = RssItemTable.fetchItemsForFeed(database, 1);
+        while (itemCursor.moveToNext()) {
+            assertFalse(RssItemTable.getRead(itemCursor));
+        }
+        itemCursor.close();
+
+        // Version 8 counted the items already stored, and keeps counting
+        assertEquals(0, ItemCountTable.countMismatches(database));
+        database.execSQL("UPDATE rss_items SET is_read = 1 WHERE id = 2");
+        Cursor countCursor = ItemCountTable.fetchCounts(database);
+        while (countCursor.moveToNext()) {
+            assertEquals(3, ItemCountTable.getItemCount(countCursor));
+            assertEquals(2, ItemCountTable.getUnreadCount(countCursor));
+            assertEquals(1, ItemCountTable.getFavoriteCount(countCursor));
+        }
+        assertEquals(2, countCursor.getCount());
+        countCursor.close();
+
+        // Version 9 leaves archived items out of the unread counts
+        database.execSQL("UPDATE rss_items SET is_archived = 1 WHERE id = 1");
+        countCursor = ItemCountTable.fetchCounts(database);
+        while (countCursor.moveToNext()) {
+            assertEquals(1, ItemCountTable.getUnreadCount(countCursor));
+            assertEquals(1, ItemCountTable.getArchivedCount(countCursor));
+        }
+        countCursor.close();
+        assertEquals(0, ItemCountTable.countMismatches(database));
+
+        databaseOpenHelper.close();
+    }
+
+    public void testNewDatabaseMatchesUpgradedSchema() {
+        DatabaseOpenHelper databaseOpenHelper = new DatabaseOpenHelper(getContext(), NAME,
+                new RssFeedTable(), new RssItemTable(), new RssItemSearchTable(), new ItemCountTable());
+        SQLiteDatabase database = databaseOpenHelper.getWritableDatabase();
+
+        assertIndexExists(database, "rss_feeds_feed_url");
+        assertIndexExists(database, "rss_items_feed_item_key");
+        assertIndexExists(database, "rss_items_feed_pub_date_id");
+        // Free pages can be given back a few at a time, without a full VACUUM
+        assertEquals(2, DatabaseUtils.longForQuery(database, "PRAGMA auto_vacuum", null));
+
+        databaseOpenHelper.close();
+    }
+
+    // The schema and rows of the original release, including an item stored twice
+    private void createVersion1Database() {
+        SQLiteDatabase database = getContext().openOrCreateDatabase(NAME, 0, null);
+        database.execSQL("CREATE TABLE rss_feeds (id INTEGER PRIMARY KEY, link TEXT, title TEXT,"
+                + " description TEXT, feed_url TEXT)");
+        database.execSQL("CREATE TABLE rss_items (id INTEGER PRIMARY KEY, link TEXT, title TEXT,"
+                + " description TEXT, guid TEXT, pub_date INTEGER, enclosure TEXT, mime_type TEXT,"
+                + " rss_feed INTEGER, is_favorite INTEGER DEFAULT 0, is_archived INTEGER DEFAULT 0)");
+        database.execSQL("INSERT INTO rss_feeds VALUES (1, 'http://example.com', 'Example', 'An example',"
+                + " 'http://example.com/feed')");
+        database.execSQL("INSERT INTO rss_items (id, link, title, guid, pub_date, rss_feed) VALUES"
+                + " (1, 'http://example.com/1', 'One', 'guid-1', 100, 1),"
+                + " (2, 'http://example.com/2', 'Two', 'guid-2', 200, 1),"
+                + " (3, 'http://example.com/3', 'Three', NULL, 300, 1)");
+        database.execSQL("INSERT INTO rss_items (id, link, title, guid, pub_date, rss_feed, is_favorite)"
+                + " VALUES (4, 'http://example.com/1', 'One', 'guid-1', 100, 1, 1)");
+        database.setVersion(1);
+        database.close();
+    }
+
+    private static void assertIndexExists(SQLiteDatabase database, String indexName) {
+        Cursor cursor = database.rawQuery("SELECT name FROM sqlite_master WHERE type = 'index' AND name = ?",
+                new String[] {indexName});
+        assertEquals(indexName, 1, cursor.getCount());
+        cursor.close();
+    }
+
+    private static void assertIndexMissing(SQLiteDatabase database, String indexName) {
+        Cursor cursor = database.rawQuery("SELECT name FROM sqlite_master WHERE type = 'index' AND name = ?",
+                new String[] {indexName});
+        assertEquals(indexName, 0, cursor.getCount());
+        cursor.close();
+    }
+
+    // Concatenates the detail column of EXPLAIN QUERY PLAN
+    private static String queryPlan(SQLiteDatabase database, String query) {
+        Cursor cursor = database.rawQuery("EXPLAIN QUERY PLAN " + query, null);
+        StringBuilder plan = new StringBuilder();
+        while (cursor.moveToNext()) {
+            plan.append(cursor.getString(cursor.getColumnIndex("detail"))).append('\n');
+        }
+        cursor.close();
+        return plan.toString();
+    }
+}
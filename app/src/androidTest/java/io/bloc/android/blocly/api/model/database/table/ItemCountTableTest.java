@@ -0,0 +1,152 @@
+package io.bloc.android.blocly.api.model.database.table;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps counts in an in-memory database on the device through the triggers on rss_items and
+ * rss_feeds, and checks them against a fresh count of the items.
+ */
+public class ItemCountTableTest extends TestCase {
+
+    private RssItemTable rssItemTable;
+    private SQLiteDatabase database;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        rssItemTable = new RssItemTable();
+        ItemCountTable itemCountTable = new ItemCountTable();
+        database = SQLiteDatabase.create(null);
+        database.execSQL(new RssFeedTable().getCreateStatement());
+        database.execSQL(rssItemTable.getCreateStatement());
+        database.execSQL(itemCountTable.getCreateStatement());
+        rssItemTable.createIndexes(database);
+        itemCountTable.createTriggers(database);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        database.close();
+        super.tearDown();
+    }
+
+    public void testCountsFollowInsertsFlagsAndDeletes() {
+        List<RssItemTable.Builder> builders = new ArrayList<RssItemTable.Builder>();
+        for (int i = 0; i < 6; i++) {
+            builders.add(new RssItemTable.Builder().setGUID("guid-" + i).setPubDate(i).setRSSFeed(1 + i % 2));
+        }
+        long[] rowIds = rssItemTable.bulkInsert(database, builders);
+        assertCounts(1, 3, 3, 0, 0);
+        assertCounts(2, 3, 3, 0, 0);
+        assertCounts(ItemCountTable.ALL_FEEDS, 6, 6, 0, 0);
+
+        RssItemTable.setRead(database, Arrays.asList(rowIds[0], rowIds[1]), true);
+        RssItemTable.setFavorite(database, Arrays.asList(rowIds[0]), true);
+        RssItemTable.setArchived(database, Arrays.asList(rowIds[2], rowIds[3]), true);
+        // Archived items are no longer unread
+        assertCounts(1, 3, 1, 1, 1);
+        assertCounts(2, 3, 1, 0, 1);
+        assertCounts(ItemCountTable.ALL_FEEDS, 6, 2, 1, 2);
+
+        // Edits to an item's text leave the counts alone
+        database.execSQL("UPDATE rss_items SET title = 'Edited' WHERE id = " + rowIds[4]);
+        // The favorite is spared by deleteItems()
+        RssItemTable.deleteItems(database, Arrays.asList(rowIds[0], rowIds[1], rowIds[5]));
+        assertCounts(1, 3, 1, 1, 1);
+        assertCounts(2, 1, 0, 0, 1);
+        assertCounts(ItemCountTable.ALL_FEEDS, 4, 1, 1, 2);
+        assertEquals(0, ItemCountTable.countMismatches(database));
+    }
+
+    public void testRebuildRepairsCountsWhichDrifted() {
+        long[] rowIds = rssItemTable.bulkInsert(database, Arrays.asList(
+                new RssItemTable.Builder().setGUID("guid-1").setPubDate(1).setRSSFeed(1),
+                new RssItemTable.Builder().setGUID("guid-2").setPubDate(2).setRSSFeed(2)));
+        RssItemTable.setFavorite(database, Arrays.asList(rowIds[1]), true);
+        assertEquals(0, ItemCountTable.countMismatches(database));
+
+        // Counts changed behind the triggers' backs, and a feed's row lost altogether
+        database.execSQL("UPDATE rss_item_counts SET unread_count = 5 WHERE rss_feed = 1");
+        database.execSQL("DELETE FROM rss_item_counts WHERE rss_feed = 2");
+        // The drifted row differs from its fresh count, and the missing row has nothing to match
+        assertEquals(3, ItemCountTable.countMismatches(database));
+
+        ItemCountTable.rebuild(database);
+        assertEquals(0, ItemCountTable.countMismatches(database));
+        assertCounts(1, 1, 1, 0, 0);
+        assertCounts(2, 1, 1, 1, 0);
+        assertCounts(ItemCountTable.ALL_FEEDS, 2, 2, 1, 0);
+    }
+
+    public void testFeedsWithoutItemsAreCountedAsZero() {
+        long emptyFeedId = new RssFeedTable.Builder().setFeedURL("http://example.com/empty").insert(database);
+        long feedId = new RssFeedTable.Builder().setFeedURL("http://example.com/feed").insert(database);
+        RssItemTable.Builder builder = new RssItemTable.Builder().setGUID("guid-1").setPubDate(1).setRSSFeed(feedId);
+        long itemId = rssItemTable.bulkInsert(database, Arrays.asList(builder))[0];
+        assertCounts(emptyFeedId, 0, 0, 0, 0);
+        assertEquals(0, ItemCountTable.countMismatches(database));
+
+        // The feed's last item going leaves its row at zero
+        RssItemTable.deleteItems(database, Arrays.asList(itemId));
+        assertCounts(feedId, 0, 0, 0, 0);
+        assertEquals(0, ItemCountTable.countMismatches(database));
+
+        // A zero row left behind by a feed which is gone differs from a fresh count
+        database.execSQL("INSERT INTO rss_item_counts (rss_feed) VALUES (" + (feedId + 1) + ")");
+        assertEquals(1, ItemCountTable.countMismatches(database));
+        ItemCountTable.rebuild(database);
+        assertEquals(0, ItemCountTable.countMismatches(database));
+        assertCounts(emptyFeedId, 0, 0, 0, 0);
+    }
+
+    public void testDeletedFeedTakesItsCountsAlong() {
+        long feedId = new RssFeedTable.Builder().setFeedURL("http://example.com/feed").insert(database);
+        assertCounts(feedId, 0, 0, 0, 0);
+
+        database.delete("rss_feeds", "id = " + feedId, null);
+        assertNoCounts(feedId);
+        assertEquals(0, ItemCountTable.countMismatches(database));
+    }
+
+    public void testEmptyDatabaseIsConsistent() {
+        assertEquals(0, ItemCountTable.countMismatches(database));
+        ItemCountTable.rebuild(database);
+        assertCounts(ItemCountTable.ALL_FEEDS, 0, 0, 0, 0);
+    }
+
+    private void assertNoCounts(long feedRowId) {
+        Cursor cursor = ItemCountTable.fetchCounts(database);
+        try {
+            while (cursor.moveToNext()) {
+                assertTrue(ItemCountTable.getRssFeedId(cursor) != feedRowId);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void assertCounts(long feedRowId, long items, long unread, long favorites, long archived) {
+        Cursor cursor = ItemCountTable.fetchCounts(database);
+        try {
+            while (cursor.moveToNext()) {
+                if (ItemCountTable.getRssFeedId(cursor) == feedRowId) {
+                    assertEquals(items, ItemCountTable.getItemCount(cursor));
+                    assertEquals(unread, ItemCountTable.getUnreadCount(cursor));
+                    assertEquals(favorites, ItemCountTable.getFavoriteCount(cursor));
+                    assertEquals(archived, ItemCountTable.getArchivedCount(cursor));
+                    return;
+                }
+            }
+            fail("No counts for feed " + feedRowId);
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package io.bloc.android.blocly.api.model.database.table;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Searches an in-memory database on the device, kept in step with rss_items by triggers.
+ */
+public class RssItemSearchTableTest extends TestCase {
+
+    private RssItemTable rssItemTable;
+    private SQLiteDatabase database;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        rssItemTable = new RssItemTable();
+        RssItemSearchTable rssItemSearchTable = new RssItemSearchTable();
+        database = SQLiteDatabase.create(null);
+        database.execSQL(rssItemTable.getCreateStatement());
+        database.execSQL(rssItemSearchTable.getCreateStatement());
+        rssItemTable.createIndexes(database);
+        rssItemSearchTable.createTriggers(database);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        database.close();
+        super.tearDown();
+    }
+
+    public void testTitleMatchesRankAboveNewerDescriptionMatches() {
+        rssItemTable.bulkInsert(database, Arrays.asList(
+                item("guid-1", "Android release notes", "What changed", 1),
+                item("guid-2", "Weekly roundup", "Includes android news", 2),
+                item("guid-3", "Cooking", "Nothing relevant", 3)));
+
+        assertEquals(Arrays.asList("guid-1", "guid-2"), searchGuids("ANDROID", 0));
+        // Words match as prefixes, and every word must appear
+        assertEquals(Arrays.asList("guid-2"), searchGuids("andr new", 0));
+    }
+
+    public void testIndexFollowsEditsAndDeletes() {
+        rssItemTable.upsertItems(database, Arrays.asList(item("guid-1", "Old title", "Body", 1)));
+        assertEquals(Arrays.asList("guid-1"), searchGuids("old", 0));
+
+        rssItemTable.upsertItems(database, Arrays.asList(item("guid-1", "New title", "Body", 2)));
+        assertTrue(searchGuids("old", 0).isEmpty());
+        assertEquals(Arrays.asList("guid-1"), searchGuids("new", 0));
+
+        RssItemTable.deleteItemsForFeed(database, 7);
+        assertTrue(searchGuids("new", 0).isEmpty());
+    }
+
+    public void testResultsArePaged() {
+        List<RssItemTable.Builder> builders = new ArrayList<RssItemTable.Builder>();
+        for (int i = 0; i < 45; i++) {
+            builders.add(item("guid-" + i, "Item " + i, "shared words", i));
+        }
+        rssItemTable.bulkInsert(database, builders);
+
+        List<String> firstPage = searchGuids("shared", 0);
+        List<String> secondPage = searchGuids("shared", 30);
+        assertEquals(30, firstPage.size());
+        assertEquals(15, secondPage.size());
+        assertEquals("guid-44", firstPage.get(0));
+        assertEquals("guid-0", secondPage.get(14));
+    }
+
+    public void testQueriesWithoutWordsSearchNothing() {
+        assertNull(RssItemSearchTable.searchItems(database, " \"*- ", 30, 0));
+        // Operators are searched for as words
+        assertNull(RssItemSearchTable.matchExpression("", null));
+        assertEquals("title:or* title:near*", RssItemSearchTable.matchExpression("OR NEAR", "title"));
+    }
+
+    private List<String> searchGuids(String query, int offset) {
+        List<String> guids = new ArrayList<String>();
+        Cursor cursor = RssItemSearchTable.searchItems(database, query, 30, offset);
+        while (cursor.moveToNext()) {
+            guids.add(RssItemTable.getGUID(cursor));
+        }
+        cursor.close();
+        return guids;
+    }
+
+    private static RssItemTable.Builder item(String guid, String title, String description, long pubDate) {
+        return new RssItemTable.Builder()
+                .setGUID(guid)
+                .setTitle(title)
+                .setDescription(description)
+                .setPubDate(pubDate)
+                .setRSSFeed(7)
+                .setItemKey(RssItemTable.itemKeyOf(guid, null))
+                .setContentHash((title + description).hashCode());
+    }
+}
@@ -0,0 +1,235 @@
+package io.bloc.android.blocly.api.model.database.table;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs RssItemTable against an in-memory database on the device.
+ */
+public class RssItemTableTest extends TestCase {
+
+    private RssItemTable rssItemTable;
+    private SQLiteDatabase database;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        rssItemTable = new RssItemTable();
+        database = SQLiteDatabase.create(null);
+        database.execSQL(rssItemTable.getCreateStatement());
+        rssItemTable.createIndexes(database);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        database.close();
+        super.tearDown();
+    }
+
+    public void testBulkInsertReturnsRowIdsInOrder() {
+        List<RssItemTable.Builder> builders = new ArrayList<RssItemTable.Builder>();
+        for (int i = 0; i < 100; i++) {
+            builders.add(new RssItemTable.Builder()
+                    .setGUID("guid-" + i)
+                    .setTitle("Item " + i)
+                    .setPubDate(i)
+                    .setRSSFeed(7));
+        }
+
+        long[] rowIds = rssItemTable.bulkInsert(database, builders);
+
+        assertEquals(100, rowIds.length);
+        for (int i = 0; i < rowIds.length; i++) {
+            Cursor cursor = rssItemTable.fetchRow(database, rowIds[i]);
+            assertTrue(cursor.moveToFirst());
+            assertEquals("guid-" + i, RssItemTable.getGUID(cursor));
+            assertEquals(i, RssItemTable.getPubDate(cursor));
+            assertEquals(7, RssItemTable.getRssFeedId(cursor));
+            // Columns left out of the bulk insert keep their defaults
+            assertFalse(RssItemTable.getFavorite(cursor));
+            assertFalse(RssItemTable.getArchived(cursor));
+            assertNull(RssItemTable.getLink(cursor));
+            cursor.close();
+        }
+    }
+
+    public void testUpsertSkipsUnchangedAndUpdatesEditedItems() {
+        RssItemTable.UpsertResult first = rssItemTable.upsertItems(database, Arrays.asList(
+                item("guid-1", "http://example.com/1", "First", 1),
+                item(null, "http://example.com/2", "Second", 2)));
+        assertEquals(2, first.insertedIds.size());
+        long editedRowId = first.insertedIds.get(1);
+        database.execSQL("UPDATE rss_items SET is_favorite = 1 WHERE id = " + editedRowId);
+
+        RssItemTable.UpsertResult second = rssItemTable.upsertItems(database, Arrays.asList(
+                item("guid-1", "http://example.com/1", "First", 1),
+                item(null, "http://example.com/2", "Second, edited", 3),
+                item("guid-3", "http://example.com/3", "Third", 4)));
+
+        assertEquals(1, second.insertedIds.size());
+        assertEquals(Arrays.asList(editedRowId), second.updatedIds);
+        assertEquals(1, second.unchangedCount);
+
+        Cursor cursor = RssItemTable.fetchItemsForFeed(database, 7);
+        assertEquals(3, cursor.getCount());
+        cursor.close();
+
+        cursor = rssItemTable.fetchRow(database, editedRowId);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Second, edited", RssItemTable.getTitle(cursor));
+        assertTrue(RssItemTable.getFavorite(cursor));
+        cursor.close();
+    }
+
+    public void testItemKeyFallsBackToLinkHash() {
+        assertEquals("guid-1", RssItemTable.itemKeyOf(" guid-1 ", "http://example.com/1"));
+        assertEquals(RssItemTable.itemKeyOf("", "http://example.com/1"),
+                RssItemTable.itemKeyOf(null, "http://example.com/1 "));
+        assertFalse(RssItemTable.itemKeyOf(null, "http://example.com/1")
+                .equals(RssItemTable.itemKeyOf(null, "http://example.com/2")));
+        assertNull(RssItemTable.itemKeyOf(null, null));
+    }
+
+    public void testBulkInsertOfNothingWritesNothing() {
+        long[] rowIds = rssItemTable.bulkInsert(database, new ArrayList<RssItemTable.Builder>());
+
+        assertEquals(0, rowIds.length);
+        Cursor cursor = RssItemTable.fetchItemsForFeed(database, 7);
+        assertEquals(0, cursor.getCount());
+        cursor.close();
+    }
+
+    public void testPagesCoverEveryItemOnceInOrder() {
+        // Many items share a pub_date, so pages must break ties on the row id
+        List<RssItemTable.Builder> builders = new ArrayList<RssItemTable.Builder>();
+        for (int i = 0; i < 95; i++) {
+            builders.add(new RssItemTable.Builder().setGUID("guid-" + i).setPubDate(i / 10).setRSSFeed(7));
+        }
+        rssItemTable.bulkInsert(database, builders);
+
+        List<Long> pagedRowIds = new ArrayList<Long>();
+        Cursor page = RssItemTable.fetchFirstItemPage(database, 7, 20);
+        while (page.getCount() > 0) {
+            assertTrue(page.getCount() <= 20);
+            long lastPubDate = 0;
+            long lastRowId = 0;
+            while (page.moveToNext()) {
+                lastPubDate = RssItemTable.getPubDate(page);
+                lastRowId = RssItemTable.getRowId(page);
+                pagedRowIds.add(lastRowId);
+            }
+            page.close();
+            page = RssItemTable.fetchItemPageAfter(database, 7, lastPubDate, lastRowId, 20);
+        }
+        page.close();
+
+        List<Long> allRowIds = new ArrayList<Long>();
+        Cursor cursor = RssItemTable.fetchItemsForFeed(database, 7);
+        while (cursor.moveToNext()) {
+            allRowIds.add(RssItemTable.getRowId(cursor));
+        }
+        cursor.close();
+        assertEquals(95, allRowIds.size());
+        assertEquals(allRowIds, pagedRowIds);
+    }
+
+    private static RssItemTable.Builder item(String guid, String link, String title, int contentHash) {
+        return new RssItemTable.Builder()
+                .setGUID(guid)
+                .setLink(link)
+                .setTitle(title)
+                .setItemKey(RssItemTable.itemKeyOf(guid, link))
+                .setContentHash(contentHash)
+                .setRSSFeed(7);
+    }
+
+    public void testListQueriesReadOnlyModelColumns() {
+        rssItemTable.bulkInsert(database, Arrays.asList(new RssItemTable.Builder()
+                .setGUID("guid-1").setTitle("First").setMIMEType("image/png").setItemKey("guid-1")
+                .setContentHash(42).setPubDate(1).setRSSFeed(7)));
+
+        Cursor cursor = RssItemTable.fetchItemsForFeed(database, 7);
+        assertEquals(-1, cursor.getColumnIndex("mime_type"));
+        assertEquals(-1, cursor.getColumnIndex("content_hash"));
+        RssItemTable.ItemColumns columns = new RssItemTable.ItemColumns(cursor);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("guid-1", columns.getGUID(cursor));
+        assertEquals("First", columns.getTitle(cursor));
+        assertEquals(7, columns.getRssFeedId(cursor));
+        assertFalse(columns.getFavorite(cursor));
+        cursor.close();
+    }
+
+    public void testExpiredItemsSpareFavoritesAndNewestItems() {
+        List<RssItemTable.Builder> builders = new ArrayList<RssItemTable.Builder>();
+        for (int i = 0; i < 10; i++) {
+            builders.add(new RssItemTable.Builder().setGUID("guid-" + i).setPubDate(i).setRSSFeed(7));
+        }
+        long[] rowIds = rssItemTable.bulkInsert(database, builders);
+        database.execSQL("UPDATE rss_items SET is_favorite = 1 WHERE id = " + rowIds[0]);
+
+        // Keeping the newest 5 expires the 4 older items which are not favorites, oldest first
+        assertEquals(Arrays.asList(rowIds[1], rowIds[2], rowIds[3], rowIds[4]),
+                expiredRowIds(5, Long.MIN_VALUE));
+        // Items published before 7 expire whatever the count
+        assertEquals(Arrays.asList(rowIds[1], rowIds[2], rowIds[3], rowIds[4], rowIds[5], rowIds[6]),
+                expiredRowIds(-1, 7));
+        assertTrue(expiredRowIds(-1, Long.MIN_VALUE).isEmpty());
+
+        // Items the caller keeps are left out by the query, so they never fill up a batch
+        Cursor keptCursor = RssItemTable.fetchExpiredItems(database, 7, 5, Long.MIN_VALUE,
+                Arrays.asList(rowIds[1], rowIds[2]), 1);
+        assertTrue(keptCursor.moveToFirst());
+        assertEquals(rowIds[3], RssItemTable.getRowId(keptCursor));
+        keptCursor.close();
+        keptCursor = RssItemTable.fetchOldestItems(database, Arrays.asList(rowIds[1]), 1);
+        assertTrue(keptCursor.moveToFirst());
+        assertEquals(rowIds[2], RssItemTable.getRowId(keptCursor));
+        keptCursor.close();
+
+        assertEquals(2, RssItemTable.deleteItems(database, Arrays.asList(rowIds[0], rowIds[1], rowIds[2])));
+        Cursor cursor = RssItemTable.fetchOldestItems(database, 1);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(rowIds[3], RssItemTable.getRowId(cursor));
+        cursor.close();
+    }
+
+    public void testFlagsAreSetForEveryItemOfABatch() {
+        List<RssItemTable.Builder> builders = new ArrayList<RssItemTable.Builder>();
+        for (int i = 0; i < 3; i++) {
+            builders.add(new RssItemTable.Builder().setGUID("guid-" + i).setPubDate(i).setRSSFeed(7));
+        }
+        long[] rowIds = rssItemTable.bulkInsert(database, builders);
+
+        assertEquals(2, RssItemTable.setRead(database, Arrays.asList(rowIds[0], rowIds[1]), true));
+        // Rows which already hold the value are not rewritten
+        assertEquals(1, RssItemTable.setRead(database, Arrays.asList(rowIds[1], rowIds[2]), true));
+        assertEquals(1, RssItemTable.setFavorite(database, Arrays.asList(rowIds[2]), true));
+        assertEquals(0, RssItemTable.setArchived(database, Arrays.asList(rowIds[0]), false));
+
+        Cursor cursor = RssItemTable.fetchItemsForFeed(database, 7);
+        RssItemTable.ItemColumns columns = new RssItemTable.ItemColumns(cursor);
+        while (cursor.moveToNext()) {
+            assertTrue(columns.getRead(cursor));
+            assertEquals(columns.getRowId(cursor) == rowIds[2], columns.getFavorite(cursor));
+            assertFalse(columns.getArchived(cursor));
+        }
+        cursor.close();
+    }
+
+    private List<Long> expiredRowIds(int keepCount, long publishedBefore) {
+        List<Long> rowIds = new ArrayList<Long>();
+        Cursor cursor = RssItemTable.fetchExpiredItems(database, 7, keepCount, publishedBefore, 100);
+        while (cursor.moveToNext()) {
+            rowIds.add(RssItemTable.getRowId(cursor));
+        }
+        cursor.close();
+        return rowIds;
+    }
+}
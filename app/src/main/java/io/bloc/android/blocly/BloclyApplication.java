@@ -1,6 +1,8 @@
 package io.bloc.android.blocly;
 
 import android.app.Application;
+import android.os.SystemClock;
+import android.util.Log;
 
 import com.nostra13.universalimageloader.cache.memory.impl.LruMemoryCache;
 import com.nostra13.universalimageloader.core.DisplayImageOptions;
@@ -9,6 +11,8 @@ import com.nostra13.universalimageloader.core.ImageLoaderConfiguration;
 import com.nostra13.universalimageloader.core.assist.QueueProcessingType;
 
 import io.bloc.android.blocly.api.DataSource;
+import io.bloc.android.blocly.api.RetentionPolicy;
+import io.bloc.android.blocly.api.SyncEngine;
 
 /**
  * Created by namlu on 18-Jun-16.
@@ -17,9 +21,16 @@ import io.bloc.android.blocly.api.DataSource;
  */
 public class BloclyApplication extends Application {
 
+    private static String TAG = BloclyApplication.class.getSimpleName();
+
     //Singleton instance of BloclyApplication
     private static BloclyApplication sharedInstance;
     private DataSource dataSource;
+    private SyncEngine syncEngine;
+    // Uptime when the app was started, as near as the Application can tell
+    private long startUptimeMillis;
+    // How long the first screen took to show stored content, -1 until it has
+    private long timeToContentMillis = -1l;
 
     public static BloclyApplication getSharedInstance(){
         return sharedInstance;
@@ -40,8 +51,36 @@ public class BloclyApplication extends Application {
     @Override
     public void onCreate() {
         super.onCreate();
+        startUptimeMillis = SystemClock.uptimeMillis();
         sharedInstance = this;
         dataSource = new DataSource();
+        // Keeps every subscribed feed refreshed while the app is running
+        syncEngine = new SyncEngine(dataSource);
+        syncEngine.start();
+        // Old items are cleared out once per launch, behind any other write
+        dataSource.pruneItems(RetentionPolicy.DEFAULT, new DataSource.Callback<RetentionPolicy.Result>() {
+            @Override
+            public void onSuccess(RetentionPolicy.Result result) {
+                Log.i(TAG, "Pruned items: " + result);
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+            }
+        });
+        // The drawer's counts are checked against the items once per launch, after the pruning
+        dataSource.checkItemCounts(new DataSource.Callback<Integer>() {
+            @Override
+            public void onSuccess(Integer mismatches) {
+                if (mismatches > 0) {
+                    Log.w(TAG, "Item counts rebuilt, " + mismatches + " rows were wrong");
+                }
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+            }
+        });
 
         // DisplayImageOptions class is composed of settings which pertain to each image loading request
         // We create a default instance of these options to be used each time Blocly requests an image.
@@ -64,4 +103,19 @@ public class BloclyApplication extends Application {
         // Returns singleton class instance
         ImageLoader.getInstance().init(configuration);
     }
+
+    // Records the startup metric the first time content is on screen. Returns false if it was
+    //      already recorded, by an earlier Activity of this process
+    public boolean reportContentShown() {
+        if (timeToContentMillis != -1l) {
+            return false;
+        }
+        timeToContentMillis = SystemClock.uptimeMillis() - startUptimeMillis;
+        Log.i(TAG, "Time to content: " + timeToContentMillis + "ms");
+        return true;
+    }
+
+    public long getTimeToContentMillis() {
+        return timeToContentMillis;
+    }
 }
@@ -0,0 +1,69 @@
+package io.bloc.android.blocly.api;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ChangeNotifier delivers DataSource's ChangeSets to its listeners on the main thread. ChangeSets
+ * published from any thread are merged until the next frame, so listeners hear from it at most
+ * once per frame however many batches were written in between.
+ */
+class ChangeNotifier {
+
+    private final Handler mainThreadHandler = new Handler(Looper.getMainLooper());
+    // Only touched on the main thread
+    private final List<DataSource.ChangeListener> changeListeners = new ArrayList<DataSource.ChangeListener>();
+
+    // Changes waiting for the next frame, null when none are
+    private ChangeSet pendingChanges;
+
+    private final Runnable scheduleFrame = new Runnable() {
+        @Override
+        public void run() {
+            Choreographer.getInstance().postFrameCallback(deliverChanges);
+        }
+    };
+
+    private final Choreographer.FrameCallback deliverChanges = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            ChangeSet changes;
+            synchronized (ChangeNotifier.this) {
+                changes = pendingChanges;
+                pendingChanges = null;
+            }
+            if (changes.isEmpty()) {
+                return;
+            }
+            // A listener may unsubscribe while being notified
+            for (DataSource.ChangeListener changeListener
+                    : new ArrayList<DataSource.ChangeListener>(changeListeners)) {
+                changeListener.onDataChanged(changes);
+            }
+        }
+    };
+
+    void addListener(DataSource.ChangeListener changeListener) {
+        if (!changeListeners.contains(changeListener)) {
+            changeListeners.add(changeListener);
+        }
+    }
+
+    void removeListener(DataSource.ChangeListener changeListener) {
+        changeListeners.remove(changeListener);
+    }
+
+    // Called once the changes are committed, from any thread
+    synchronized void publish(ChangeSet changes) {
+        if (pendingChanges != null) {
+            pendingChanges.merge(changes);
+            return;
+        }
+        pendingChanges = changes;
+        mainThreadHandler.post(scheduleFrame);
+    }
+}
@@ -0,0 +1,178 @@
+package io.bloc.android.blocly.api;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ChangeSet describes what DataSource has written to the database: feeds added, updated or removed,
+ * and for each feed the items inserted, updated or removed. Changes to the same row are combined,
+ * an item inserted then removed before the ChangeSet is delivered does not appear at all.
+ * Inserted items carry their pub_date, the key item lists are sorted on, so they can be placed
+ * without reloading the list.
+ */
+public class ChangeSet {
+
+    private final Set<Long> addedFeedIds = new LinkedHashSet<Long>();
+    private final Set<Long> updatedFeedIds = new LinkedHashSet<Long>();
+    private final Set<Long> removedFeedIds = new LinkedHashSet<Long>();
+    private final Map<Long, ItemChanges> itemChanges = new LinkedHashMap<Long, ItemChanges>();
+
+    public Set<Long> getAddedFeedIds() {
+        return Collections.unmodifiableSet(addedFeedIds);
+    }
+
+    public Set<Long> getUpdatedFeedIds() {
+        return Collections.unmodifiableSet(updatedFeedIds);
+    }
+
+    public Set<Long> getRemovedFeedIds() {
+        return Collections.unmodifiableSet(removedFeedIds);
+    }
+
+    // Returns the changes to a feed's items, or null if none of them changed
+    public ItemChanges getItemChanges(long feedRowId) {
+        ItemChanges changes = itemChanges.get(feedRowId);
+        return changes == null || changes.isEmpty() ? null : changes;
+    }
+
+    // Every feed which was added, updated or removed, or whose items changed
+    Set<Long> getChangedFeedIds() {
+        Set<Long> changedFeedIds = new LinkedHashSet<Long>(addedFeedIds);
+        changedFeedIds.addAll(updatedFeedIds);
+        changedFeedIds.addAll(removedFeedIds);
+        changedFeedIds.addAll(itemChanges.keySet());
+        return changedFeedIds;
+    }
+
+    public boolean isEmpty() {
+        if (!addedFeedIds.isEmpty() || !updatedFeedIds.isEmpty() || !removedFeedIds.isEmpty()) {
+            return false;
+        }
+        for (ItemChanges changes : itemChanges.values()) {
+            if (!changes.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void feedAdded(long feedRowId) {
+        // A row id freed and reused before delivery is a change to the feed already shown
+        if (removedFeedIds.remove(feedRowId)) {
+            updatedFeedIds.add(feedRowId);
+        } else {
+            addedFeedIds.add(feedRowId);
+        }
+    }
+
+    void feedUpdated(long feedRowId) {
+        if (!addedFeedIds.contains(feedRowId)) {
+            updatedFeedIds.add(feedRowId);
+        }
+    }
+
+    // The feed's items go with it, so their own changes are dropped
+    void feedRemoved(long feedRowId) {
+        itemChanges.remove(feedRowId);
+        updatedFeedIds.remove(feedRowId);
+        if (!addedFeedIds.remove(feedRowId)) {
+            removedFeedIds.add(feedRowId);
+        }
+    }
+
+    void itemInserted(long feedRowId, long itemRowId, long pubDate) {
+        itemChangesFor(feedRowId).inserted(itemRowId, pubDate);
+    }
+
+    void itemUpdated(long feedRowId, long itemRowId) {
+        itemChangesFor(feedRowId).updated(itemRowId);
+    }
+
+    void itemRemoved(long feedRowId, long itemRowId) {
+        itemChangesFor(feedRowId).removed(itemRowId);
+    }
+
+    // Adds the changes of a later ChangeSet to this one
+    void merge(ChangeSet later) {
+        for (Long feedRowId : later.removedFeedIds) {
+            feedRemoved(feedRowId);
+        }
+        for (Long feedRowId : later.addedFeedIds) {
+            feedAdded(feedRowId);
+        }
+        for (Long feedRowId : later.updatedFeedIds) {
+            feedUpdated(feedRowId);
+        }
+        for (Map.Entry<Long, ItemChanges> entry : later.itemChanges.entrySet()) {
+            ItemChanges laterItemChanges = entry.getValue();
+            ItemChanges earlierItemChanges = itemChangesFor(entry.getKey());
+            for (Long itemRowId : laterItemChanges.removedIds) {
+                earlierItemChanges.removed(itemRowId);
+            }
+            for (Map.Entry<Long, Long> inserted : laterItemChanges.insertedPubDates.entrySet()) {
+                earlierItemChanges.inserted(inserted.getKey(), inserted.getValue());
+            }
+            for (Long itemRowId : laterItemChanges.updatedIds) {
+                earlierItemChanges.updated(itemRowId);
+            }
+        }
+    }
+
+    private ItemChanges itemChangesFor(long feedRowId) {
+        ItemChanges changes = itemChanges.get(feedRowId);
+        if (changes == null) {
+            changes = new ItemChanges();
+            itemChanges.put(feedRowId, changes);
+        }
+        return changes;
+    }
+
+    public static class ItemChanges {
+
+        // Row id of each inserted item, mapped to its pub_date
+        private final Map<Long, Long> insertedPubDates = new LinkedHashMap<Long, Long>();
+        private final Set<Long> updatedIds = new LinkedHashSet<Long>();
+        private final Set<Long> removedIds = new LinkedHashSet<Long>();
+
+        public Map<Long, Long> getInsertedPubDates() {
+            return Collections.unmodifiableMap(insertedPubDates);
+        }
+
+        public Set<Long> getUpdatedIds() {
+            return Collections.unmodifiableSet(updatedIds);
+        }
+
+        public Set<Long> getRemovedIds() {
+            return Collections.unmodifiableSet(removedIds);
+        }
+
+        public boolean isEmpty() {
+            return insertedPubDates.isEmpty() && updatedIds.isEmpty() && removedIds.isEmpty();
+        }
+
+        void inserted(long itemRowId, long pubDate) {
+            if (removedIds.remove(itemRowId)) {
+                updatedIds.add(itemRowId);
+            } else {
+                insertedPubDates.put(itemRowId, pubDate);
+            }
+        }
+
+        // An item inserted since the last delivery is shown in its updated form anyway
+        void updated(long itemRowId) {
+            if (!insertedPubDates.containsKey(itemRowId)) {
+                updatedIds.add(itemRowId);
+            }
+        }
+
+        void removed(long itemRowId) {
+            updatedIds.remove(itemRowId);
+            if (insertedPubDates.remove(itemRowId) == null) {
+                removedIds.add(itemRowId);
+            }
+        }
+    }
+}
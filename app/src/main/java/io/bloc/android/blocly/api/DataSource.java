@@ -1,27 +1,41 @@
 package io.bloc.android.blocly.api;
 
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.os.BatteryManager;
 import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
 
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Locale;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 
 import io.bloc.android.blocly.BloclyApplication;
-import io.bloc.android.blocly.BuildConfig;
 import io.bloc.android.blocly.api.model.RssFeed;
 import io.bloc.android.blocly.api.model.RssItem;
 import io.bloc.android.blocly.api.model.database.DatabaseOpenHelper;
+import io.bloc.android.blocly.api.model.database.table.ItemCountTable;
 import io.bloc.android.blocly.api.model.database.table.RssFeedTable;
+import io.bloc.android.blocly.api.model.database.table.RssItemSearchTable;
 import io.bloc.android.blocly.api.model.database.table.RssItemTable;
 import io.bloc.android.blocly.api.model.database.table.Table;
 import io.bloc.android.blocly.api.network.GetFeedsNetworkRequest;
 import io.bloc.android.blocly.api.network.NetworkRequest;
+import io.bloc.android.blocly.api.network.PubDateParser;
 
 /**
  * Created by namlu on 18-Jun-16.
@@ -32,19 +46,59 @@ import io.bloc.android.blocly.api.network.NetworkRequest;
  */
 public class DataSource {
 
+    private static String TAG = DataSource.class.getSimpleName();
+
     // 55: Interface will provide a means for external classes to make asynchronous requests of DataSource
     public static interface Callback<Result> {
         public void onSuccess(Result result);
         public void onError(String errorMessage);
     }
 
+    // Reports how many of a feed's items have been stored so far, while the feed is still being
+    //      fetched. Counts are running totals, updates which arrive faster than the requesting thread
+    //      handles them are merged into one. The last update always comes before the Callback
+    public static interface ProgressListener {
+        public void onItemsIngested(int insertedCount, int updatedCount);
+    }
+
+    // Hears about every change DataSource writes, on the main thread and at most once per frame
+    public static interface ChangeListener {
+        public void onDataChanged(ChangeSet changes);
+    }
+
+    // Items read per page by fetchItemPage(), a few screens' worth
+    public static final int ITEM_PAGE_SIZE = 30;
+    // Items deleted per transaction by pruneItems()
+    private static final int PRUNE_BATCH_SIZE = 200;
+    // Free pages given back to the file system by each run of pruneItems(), the rest wait for the next
+    private static final int RECLAIM_PAGE_LIMIT = 2048;
+    // Flag changes are written this long after the first of them, along with any made meanwhile
+    private static final long ITEM_STATE_FLUSH_DELAY_MILLIS = 2000;
+
     // Fields needed for Database
     private DatabaseOpenHelper databaseOpenHelper;
     private RssFeedTable rssFeedTable;
     private RssItemTable rssItemTable;
+    private RssItemSearchTable rssItemSearchTable;
+    private ItemCountTable itemCountTable;
 
     // 55: ExecutorService allows the management of tasks to process and can terminate them as well
-    private ExecutorService executorService;
+    // TaskScheduler keeps network, feed ingestion, database read and database write work on separate
+    //      lanes. Every write goes through a single thread, SQLite allows one writer at a time. In
+    //      write-ahead-logging mode reads see the last committed data and are never blocked by the writer
+    private TaskScheduler taskScheduler;
+    private ChangeNotifier changeNotifier;
+    // Models read recently, kept until a write changes them
+    private ModelCache modelCache;
+    // Known items in a row which end an incremental refresh, read by fetchNewFeed() on the main thread
+    private int maxKnownItemRun = GetFeedsNetworkRequest.DEFAULT_MAX_KNOWN_ITEM_RUN;
+    // Flag changes waiting to be written and the timer which writes them, both kept on the main thread
+    private ItemStateStore itemStates;
+    private Handler itemStateHandler;
+    private boolean itemStateFlushScheduled;
+    // Items the user has made favorites which the database does not mark as such yet. Kept on the main
+    //      thread and read by pruneItems() on the write lane, which leaves these items alone
+    private final Set<Long> unwrittenFavorites = Collections.synchronizedSet(new HashSet<Long>());
 
     /*
      * 55: Deleted all private List<RssFeed> feeds; and private List<RssItem> items; (and their uses)
@@ -56,81 +110,229 @@ public class DataSource {
         // Database tables created
         rssFeedTable = new RssFeedTable();
         rssItemTable = new RssItemTable();
+        rssItemSearchTable = new RssItemSearchTable();
+        itemCountTable = new ItemCountTable();
 
-        // 55: Single thread, tasks will be executed in the order they arrive
-        executorService = Executors.newSingleThreadExecutor();
+        taskScheduler = new TaskScheduler();
+        changeNotifier = new ChangeNotifier();
+        modelCache = new ModelCache(ModelCache.maxBytesFor(BloclyApplication.getSharedInstance()));
+        itemStates = new ItemStateStore();
+        itemStateHandler = new Handler(Looper.getMainLooper());
 
         // Both Table fields are kept w/in DataSource and act as primary access points for models
         // .getSharedInstance() returns an instance of BloclyApplication
+        // The database is kept between launches, the first screen is shown from it before any
+        //      feed is refreshed
         databaseOpenHelper = new DatabaseOpenHelper(BloclyApplication.getSharedInstance(),
-                rssFeedTable, rssItemTable);
-
-        // 55:
-        if (BuildConfig.DEBUG && true) {
-            BloclyApplication.getSharedInstance().deleteDatabase("blocly_db");
-        }
+                rssFeedTable, rssItemTable, rssItemSearchTable, itemCountTable);
     }
 
     // 55: A Runnable is a simple interface which has but one method, run()
-    void submitTask(Runnable task) {
-        // 55: If executorService is shutdown or terminated, instantiate a new ExecutorService
-        if (executorService.isShutdown() || executorService.isTerminated()) {
-            executorService = Executors.newSingleThreadExecutor();
-        }
-        // 55: Submitting a task places it on the queue, it will then be performed on a background thread.
-        executorService.submit(task);
+    // 55: Submitting a task places it on the lane's queue, it will then be performed on a background thread.
+    //      Tasks the user is waiting on are taken ahead of background work
+    // A task which has not started by the time its request is cancelled never runs
+    void submitTask(TaskScheduler.Lane lane, TaskScheduler.Priority priority, RequestHandle requestHandle,
+                    Runnable task) {
+        final Future<?> future = taskScheduler.submit(lane, priority, task);
+        requestHandle.whenCancelled(new Runnable() {
+            @Override
+            public void run() {
+                future.cancel(false);
+            }
+        });
+    }
+
+    // Posts a Callback invocation to the requesting thread. It is dropped if the request has been
+    //      cancelled by the time it would run
+    private static void postCallback(Handler callbackThreadHandler, final RequestHandle requestHandle,
+                                     final Runnable callbackInvocation) {
+        callbackThreadHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!requestHandle.isCancelled()) {
+                    callbackInvocation.run();
+                }
+            }
+        });
+    }
+
+    // Listeners are added and removed on the main thread. A listener stays subscribed until it is
+    //      removed, so an Activity must unsubscribe before it is destroyed
+    public void subscribe(ChangeListener changeListener) {
+        changeNotifier.addListener(changeListener);
+    }
+
+    public void unsubscribe(ChangeListener changeListener) {
+        changeNotifier.removeListener(changeListener);
+    }
+
+    // Sets how many already-stored items in a row end each later refresh of a feed, 0 reads every
+    //      item. Refreshes already requested keep the value they started with
+    public void setMaxKnownItemRun(int maxKnownItemRun) {
+        this.maxKnownItemRun = Math.max(0, maxKnownItemRun);
+    }
+
+    // Every write reports its changes here once committed. Cached models go stale at once, listeners
+    //      hear about the changes on the next frame
+    private void publishChanges(ChangeSet changes) {
+        modelCache.invalidate(changes);
+        changeNotifier.publish(changes);
+    }
+
+    // Hit and miss counts of the model cache, to tell how often reads are served from memory
+    public ModelCache.Stats getCacheStats() {
+        return modelCache.getStats();
+    }
+
+    // Queue depth and wait times of a lane, to tell where requests are being held up
+    public TaskScheduler.LaneMetrics getTaskMetrics(TaskScheduler.Lane lane) {
+        return taskScheduler.getMetrics(lane);
     }
 
     // 55: The method signature indicates which type of Callback is required to recover the new RSS feed.
     // This Callback receives an RssFeed object, the one corresponding to the fetched feed.
-    public void fetchNewFeed (final String feedURL, final Callback<RssFeed> callback) {
+    // Cancelling the returned RequestHandle abandons the download and any items not yet written.
+    public RequestHandle fetchNewFeed (final String feedURL, final Callback<RssFeed> callback) {
+        return fetchNewFeed(feedURL, null, callback);
+    }
+
+    // The Callback is invoked exactly once per feed, after every item has been stored, or not at all
+    //      if the request is cancelled. The optional ProgressListener hears about items as they are
+    //      written in batches
+    // A refresh which fails or is cancelled part way removes the items it had inserted, otherwise the
+    //      next refresh would stop at them as known items and never fetch the older ones it missed.
+    //      Edits it wrote to items already stored are kept, they are newer content either way
+    public RequestHandle fetchNewFeed (final String feedURL, ProgressListener progressListener,
+                                       final Callback<RssFeed> callback) {
+        return fetchNewFeed(feedURL, TaskScheduler.Priority.USER_VISIBLE, progressListener, callback);
+    }
+
+    // Refreshes nobody is waiting on are fetched at BACKGROUND priority, behind the user's requests
+    public RequestHandle fetchNewFeed (final String feedURL, final TaskScheduler.Priority priority,
+                                       ProgressListener progressListener, final Callback<RssFeed> callback) {
+        final RequestHandle requestHandle = new RequestHandle();
 
         // 55: A Handler, when instantiated, associates itself with the Thread on which it is created.
         //      Handlers are capable of executing Runnables on their designated Thread
         final android.os.Handler callbackThreadHandler = new Handler();
+        final int knownItemRun = maxKnownItemRun;
+        final ProgressReporter progressReporter = progressListener == null ? null
+                : new ProgressReporter(new Executor() {
+                    @Override
+                    public void execute(Runnable update) {
+                        postCallback(callbackThreadHandler, requestHandle, update);
+                    }
+                }, progressListener);
 
-        submitTask(new Runnable() {
+        // The download is seen through on its own lane, only the writes of its items take the single
+        //      writer, each for one short transaction, so other writes are queued between them
+        final Runnable ingestFeed = new Runnable() {
             @Override
             public void run() {
 
                 // 55: Check whether a row exists for the given RSS feed URL.
-                //      If it exists, we recover that row and return it to the Callback.
+                //      If it exists, its saved validators make the request conditional
+                RssFeed existingFeed = null;
+                String eTag = null;
+                String lastModified = null;
                 Cursor existingFeedCursor = RssFeedTable.fetchFeedWithURL(databaseOpenHelper.getReadableDatabase(), feedURL);
                 if (existingFeedCursor.moveToFirst()) {
-                    final RssFeed fetchedFeed = feedFromCursor(existingFeedCursor);
-                    existingFeedCursor.close();
-
-                    // 55: Handler con't, invoke the Callback object's onSuccess(Result) method
-                    //      on the same Thread that made the request
-                    callbackThreadHandler.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            callback.onSuccess(fetchedFeed);
-                        }
-                    });
-                    return;
+                    existingFeed = feedFromCursor(existingFeedCursor);
+                    eTag = RssFeedTable.getETag(existingFeedCursor);
+                    lastModified = RssFeedTable.getLastModified(existingFeedCursor);
                 }
+                existingFeedCursor.close();
 
                 // 55:
-                GetFeedsNetworkRequest getFeedsNetworkRequest = new GetFeedsNetworkRequest(feedURL);
-                List<GetFeedsNetworkRequest.FeedResponse> feedResponses = getFeedsNetworkRequest.performRequest();
+                final GetFeedsNetworkRequest getFeedsNetworkRequest = new GetFeedsNetworkRequest(feedURL);
+                requestHandle.whenCancelled(new Runnable() {
+                    @Override
+                    public void run() {
+                        getFeedsNetworkRequest.cancel();
+                    }
+                });
+                if (existingFeed != null) {
+                    getFeedsNetworkRequest.setValidators(feedURL, eTag, lastModified);
+                    // Refresh incrementally, items already stored are skipped and reading stops
+                    //      once the feed reaches them
+                    getFeedsNetworkRequest.setItemFilter(feedURL,
+                            new StoredItemFilter(fetchItemKeys(existingFeed.getRowId())));
+                    getFeedsNetworkRequest.setMaxKnownItemRun(knownItemRun);
+                }
+
+                // Items are written in batches while the feed is still downloading. A new feed's row
+                // is inserted along with the first batch, its channel details are filled in once the
+                // whole feed has been read
+                final ItemBatchWriter itemBatchWriter = new ItemBatchWriter(feedURL,
+                        existingFeed == null ? -1l : existingFeed.getRowId(), priority, progressReporter);
+                GetFeedsNetworkRequest.FeedResponse newFeedResponse =
+                        new FeedIngestionPipeline(getFeedsNetworkRequest, feedURL)
+                                .run(taskScheduler, priority, requestHandle,
+                                        itemBatchWriter);
 
                 // 55: Checks whether an error has occurred during fetchNewFeed request
-                if (getFeedsNetworkRequest.getErrorCode() != 0) {
+                if (newFeedResponse.errorCode != 0) {
+                    // A feed which failed on its first fetch is not kept, along with any items
+                    //      written before the failure
+                    if (existingFeed == null && itemBatchWriter.feedId != -1l) {
+                        final long failedFeedId = itemBatchWriter.feedId;
+                        awaitWrite(priority, new Callable<Void>() {
+                            @Override
+                            public Void call() {
+                                SQLiteDatabase writableDatabase = databaseOpenHelper.getWritableDatabase();
+                                // The feed and its items go together, neither is left without the other
+                                writableDatabase.beginTransactionNonExclusive();
+                                try {
+                                    RssItemTable.deleteItemsForFeed(writableDatabase, failedFeedId);
+                                    rssFeedTable.deleteRow(writableDatabase, failedFeedId);
+                                    writableDatabase.setTransactionSuccessful();
+                                } finally {
+                                    writableDatabase.endTransaction();
+                                }
+                                ChangeSet changes = new ChangeSet();
+                                changes.feedRemoved(failedFeedId);
+                                publishChanges(changes);
+                                return null;
+                            }
+                        });
+                    } else if (existingFeed != null && !itemBatchWriter.insertedIds.isEmpty()) {
+                        final long refreshedFeedId = existingFeed.getRowId();
+                        awaitWrite(priority, new Callable<Void>() {
+                            @Override
+                            public Void call() {
+                                RssItemTable.deleteItems(databaseOpenHelper.getWritableDatabase(),
+                                        itemBatchWriter.insertedIds);
+                                ChangeSet changes = new ChangeSet();
+                                for (Long insertedId : itemBatchWriter.insertedIds) {
+                                    changes.itemRemoved(refreshedFeedId, insertedId);
+                                }
+                                publishChanges(changes);
+                                return null;
+                            }
+                        });
+                    }
+
+                    // Nobody is waiting on a cancelled request
+                    if (newFeedResponse.errorCode == NetworkRequest.ERROR_CANCELLED) {
+                        return;
+                    }
+
                     final String errorMessage;
 
-                    if (getFeedsNetworkRequest.getErrorCode() == NetworkRequest.ERROR_IO) {
+                    if (newFeedResponse.errorCode == NetworkRequest.ERROR_IO) {
                         errorMessage = "Network error";
-                    } else if (getFeedsNetworkRequest.getErrorCode() == NetworkRequest.ERROR_MALFORMED_URL) {
+                    } else if (newFeedResponse.errorCode == NetworkRequest.ERROR_MALFORMED_URL) {
                         errorMessage = "Malformed URL error";
-                    } else if (getFeedsNetworkRequest.getErrorCode() == GetFeedsNetworkRequest.ERROR_PARSING) {
+                    } else if (newFeedResponse.errorCode == GetFeedsNetworkRequest.ERROR_PARSING) {
                         errorMessage = "Error parsing feed";
+                    } else if (newFeedResponse.errorCode == FeedIngestionPipeline.ERROR_WRITING) {
+                        errorMessage = "Error storing feed";
                     } else {
                         errorMessage = "Error unknown";
                     }
 
                     // 55: After error checking, invoke Callback's onError()
-                    callbackThreadHandler.post(new Runnable() {
+                    postCallback(callbackThreadHandler, requestHandle, new Runnable() {
                         @Override
                         public void run() {
                             callback.onError(errorMessage);
@@ -138,82 +340,742 @@ public class DataSource {
                     });
                     return;
                 }
-                // 55:
-                GetFeedsNetworkRequest.FeedResponse newFeedResponse = feedResponses.get(0);
-                long newFeedId = new RssFeedTable.Builder()
+
+                // Nothing has changed since the last fetch, so there is nothing to parse or insert
+                if (newFeedResponse.notModified) {
+                    final RssFeed unchangedFeed = existingFeed;
+                    postCallback(callbackThreadHandler, requestHandle, new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onSuccess(unchangedFeed);
+                        }
+                    });
+                    return;
+                }
+
+                final RssFeedTable.Builder feedBuilder = new RssFeedTable.Builder()
                         .setFeedURL(newFeedResponse.channelFeedURL)
                         .setSiteURL(newFeedResponse.channelURL)
                         .setTitle(newFeedResponse.channelTitle)
                         .setDescription(newFeedResponse.channelDescription)
-                        .insert(databaseOpenHelper.getWritableDatabase());
+                        .setETag(newFeedResponse.eTag)
+                        .setLastModified(newFeedResponse.lastModified);
+                final boolean newFeed = existingFeed == null;
+                final long newFeedId = awaitWrite(priority, new Callable<Long>() {
+                    @Override
+                    public Long call() {
+                        long feedId;
+                        if (itemBatchWriter.feedId == -1l) {
+                            // The feed had no items, so its row has not been inserted yet
+                            feedId = feedBuilder.insert(databaseOpenHelper.getWritableDatabase());
+                        } else {
+                            feedId = itemBatchWriter.feedId;
+                            feedBuilder.update(databaseOpenHelper.getWritableDatabase(), feedId);
+                        }
+                        // A new feed is announced once its channel details are stored
+                        ChangeSet changes = new ChangeSet();
+                        if (newFeed) {
+                            changes.feedAdded(feedId);
+                        } else {
+                            changes.feedUpdated(feedId);
+                        }
+                        publishChanges(changes);
+                        return feedId;
+                    }
+                });
+
+                // 55: Using callback pattern, we no longer need to broadcast updates to interested
+                //      parties after task's completion. The callback fires once, after every item is stored
+                Cursor newFeedCursor = rssFeedTable.fetchRow(databaseOpenHelper.getReadableDatabase(), newFeedId);
+                newFeedCursor.moveToFirst();
+                final RssFeed fetchedFeed = feedFromCursor(newFeedCursor);
+                newFeedCursor.close();
+
+                postCallback(callbackThreadHandler, requestHandle, new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onSuccess(fetchedFeed);
+                    }
+                });
+            }
+        };
+        submitTask(TaskScheduler.Lane.FEED_INGESTION, priority, requestHandle, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ingestFeed.run();
+                } catch (RuntimeException e) {
+                    // E.g. an SQLiteException from reading the stored feed or from its last writes,
+                    //      the Callback still hears how the request ended
+                    Log.e(TAG, "Feed not stored: " + feedURL, e);
+                    postCallback(callbackThreadHandler, requestHandle, new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onError("Error storing feed");
+                        }
+                    });
+                }
+            }
+        });
+        return requestHandle;
+    }
+
+    // Maps the item key of every item stored for a feed to its content hash
+    private Map<String, Long> fetchItemKeys(long feedRowId) {
+        Map<String, Long> itemKeys = new HashMap<String, Long>();
+        Cursor cursor = RssItemTable.fetchItemKeysForFeed(databaseOpenHelper.getReadableDatabase(), feedRowId);
+        RssItemTable.ItemColumns columns = new RssItemTable.ItemColumns(cursor);
+        if (cursor.moveToFirst()) {
+            do {
+                // Items without a guid or link have no key and cannot be recognized again
+                String itemKey = columns.getItemKey(cursor);
+                if (itemKey != null) {
+                    itemKeys.put(itemKey, columns.getContentHash(cursor));
+                }
+            } while (cursor.moveToNext());
+        }
+        cursor.close();
+        return itemKeys;
+    }
+
+    // Runs a write on the DATABASE_WRITE lane and waits for it to finish, returning its result. Tasks on
+    //      other lanes write this way, they never hold the writer while they wait on anything else.
+    //      A RuntimeException thrown by the write is thrown again here
+    private <Result> Result awaitWrite(TaskScheduler.Priority priority, Callable<Result> write) {
+        Future<Result> future = taskScheduler.submit(TaskScheduler.Lane.DATABASE_WRITE, priority, write);
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    // The write is already queued, it is waited for so it never outlives its task
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Writes each batch of items handed over by a FeedIngestionPipeline in a single transaction on
+    //      the DATABASE_WRITE lane. The FeedIngestionPipeline waits for each batch to commit
+    private class ItemBatchWriter implements FeedIngestionPipeline.BatchWriter {
+
+        private final String feedURL;
+        // Undated items are given the time of the fetch, less their position within the feed
+        private final long fetchTimeMillis = System.currentTimeMillis();
+        private int itemIndex;
+
+        private final TaskScheduler.Priority priority;
+        // Null when nobody is listening for progress
+        private final ProgressReporter progressReporter;
+
+        // Row id of the feed the items belong to, -1 until the row exists
+        long feedId;
+        // Row ids of the items inserted so far, in every batch written
+        final List<Long> insertedIds = new ArrayList<Long>();
+
+        ItemBatchWriter(String feedURL, long feedId, TaskScheduler.Priority priority,
+                        ProgressReporter progressReporter) {
+            this.feedURL = feedURL;
+            this.feedId = feedId;
+            this.priority = priority;
+            this.progressReporter = progressReporter;
+        }
+
+        @Override
+        public void write(final List<GetFeedsNetworkRequest.ItemResponse> batch) {
+            awaitWrite(priority, new Callable<Void>() {
+                @Override
+                public Void call() {
+                    writeBatch(batch);
+                    return null;
+                }
+            });
+        }
+
+        private void writeBatch(List<GetFeedsNetworkRequest.ItemResponse> batch) {
+            SQLiteDatabase writableDatabase = databaseOpenHelper.getWritableDatabase();
+            RssItemTable.UpsertResult upsertResult;
+            writableDatabase.beginTransactionNonExclusive();
+            try {
+                if (feedId == -1l) {
+                    feedId = new RssFeedTable.Builder()
+                            .setFeedURL(feedURL)
+                            .insert(writableDatabase);
+                }
 
                 // The other table, "rss_items", will feature every item from every subscription
-                for (GetFeedsNetworkRequest.ItemResponse itemResponse : newFeedResponse.channelItems) {
-                    // Attempt to convert the downloaded String into Unix time
-                    long itemPubDate = System.currentTimeMillis();
-                    DateFormat dateFormat = new SimpleDateFormat("EEE, dd MMM yyyy kk:mm:ss z", Locale.ENGLISH);
-                    try {
-                        // long getTime() returns the number of milliseconds since
-                        //      January 1, 1970, 00:00:00 GMT represented by this Date object
-                        itemPubDate = dateFormat.parse(itemResponse.itemPubDate).getTime();
-                    } catch (ParseException e) {
-                        e.printStackTrace();
-                    }
-
-                    // Insert the RSS item into the database
-                    // 55: update
-                    new RssItemTable.Builder()
+                List<RssItemTable.Builder> itemBuilders = new ArrayList<RssItemTable.Builder>(batch.size());
+                for (GetFeedsNetworkRequest.ItemResponse itemResponse : batch) {
+                    // Convert the downloaded String into Unix time. Items without a readable date are
+                    //      placed just behind the item before them, keeping the feed's own order
+                    long itemPubDate = PubDateParser.parse(itemResponse.itemPubDate);
+                    if (itemPubDate == PubDateParser.INVALID_DATE) {
+                        itemPubDate = fetchTimeMillis - itemIndex;
+                    }
+                    itemIndex++;
+
+                    itemBuilders.add(new RssItemTable.Builder()
                             .setTitle(itemResponse.itemTitle)
                             .setDescription(itemResponse.itemDescription)
                             .setEnclosure(itemResponse.itemEnclosureURL)
                             .setMIMEType(itemResponse.itemEnclosureMIMEType)
                             .setLink(itemResponse.itemURL)
                             .setGUID(itemResponse.itemGUID)
+                            .setItemKey(RssItemTable.itemKeyOf(itemResponse.itemGUID, itemResponse.itemURL))
+                            .setContentHash(itemResponse.itemContentHash)
                             .setPubDate(itemPubDate)
-                            // We supply the row identifier for the AndroidCentral feed we inserted earlier.
-                            // This forms a relationship between each RSS item and the AndroidCentral feed.
-                            .setRSSFeed(newFeedId)
-                            .insert(databaseOpenHelper.getWritableDatabase());
-
-                    // 55: Using callback pattern, we no longer need to broadcast updates to interested
-                    //      parties after task's completion
-                    Cursor newFeedCursor = rssFeedTable.fetchRow(databaseOpenHelper.getReadableDatabase(), newFeedId);
-                    newFeedCursor.moveToFirst();
-                    final RssFeed fetchedFeed = feedFromCursor(newFeedCursor);
-                    newFeedCursor.close();
-
-                    callbackThreadHandler.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            callback.onSuccess(fetchedFeed);
-                        }
-                    });
+                            // We supply the row identifier for the feed inserted earlier.
+                            // This forms a relationship between each RSS item and its feed.
+                            .setRSSFeed(feedId));
                 }
+                // Insert new items and update edited ones, items already stored are skipped
+                upsertResult = rssItemTable.upsertItems(writableDatabase, itemBuilders);
+                writableDatabase.setTransactionSuccessful();
+            } finally {
+                writableDatabase.endTransaction();
             }
-        });
+            // Reported once the batch is committed, so a listener reading the table finds its items
+            insertedIds.addAll(upsertResult.insertedIds);
+            ChangeSet changes = new ChangeSet();
+            for (int i = 0; i < upsertResult.insertedIds.size(); i++) {
+                changes.itemInserted(feedId, upsertResult.insertedIds.get(i), upsertResult.insertedPubDates.get(i));
+            }
+            for (Long updatedId : upsertResult.updatedIds) {
+                changes.itemUpdated(feedId, updatedId);
+            }
+            if (!changes.isEmpty()) {
+                publishChanges(changes);
+            }
+            if (progressReporter != null) {
+                progressReporter.add(upsertResult.insertedIds.size(), upsertResult.updatedIds.size());
+            }
+        }
+    }
+
+    // Deletes the items the policy no longer keeps and reclaims the space they took. The work is done
+    //      in batches, each its own short transaction queued behind any other write, so a large
+    //      clean-up never holds up feeds being stored. Favorites are kept, including those whose flag
+    //      has not been written yet. The callback receives what was removed
+    public RequestHandle pruneItems(RetentionPolicy retentionPolicy, Callback<RetentionPolicy.Result> callback) {
+        RequestHandle requestHandle = new RequestHandle();
+        new ItemPruner(retentionPolicy, requestHandle, new Handler(), callback).submit();
+        return requestHandle;
+    }
+
+    // Removes one batch of items each time it runs, then queues itself again until nothing is left
+    //      to remove. Feeds are pruned to their count and age limits first, then the oldest items
+    //      of any feed until the database fits its budget
+    private class ItemPruner implements Runnable {
+
+        private final RetentionPolicy retentionPolicy;
+        private final RequestHandle requestHandle;
+        private final Handler callbackThreadHandler;
+        private final Callback<RetentionPolicy.Result> callback;
+        private final long publishedBefore;
+
+        // Read on the first run
+        private List<Long> feedRowIds;
+        private long fileBytesBefore;
+        private int feedIndex;
+        private int itemsDeleted;
+
+        ItemPruner(RetentionPolicy retentionPolicy, RequestHandle requestHandle, Handler callbackThreadHandler,
+                   Callback<RetentionPolicy.Result> callback) {
+            this.retentionPolicy = retentionPolicy;
+            this.requestHandle = requestHandle;
+            this.callbackThreadHandler = callbackThreadHandler;
+            this.callback = callback;
+            this.publishedBefore = retentionPolicy.getMaxAgeMillis() == RetentionPolicy.UNLIMITED
+                    ? Long.MIN_VALUE : System.currentTimeMillis() - retentionPolicy.getMaxAgeMillis();
+        }
+
+        void submit() {
+            submitTask(TaskScheduler.Lane.DATABASE_WRITE, TaskScheduler.Priority.BACKGROUND, requestHandle, this);
+        }
+
+        @Override
+        public void run() {
+            SQLiteDatabase writableDatabase = databaseOpenHelper.getWritableDatabase();
+            if (feedRowIds == null) {
+                fileBytesBefore = DatabaseOpenHelper.getFileBytes(writableDatabase);
+                feedRowIds = new ArrayList<Long>();
+                Cursor cursor = RssFeedTable.fetchAllFeeds(writableDatabase);
+                RssFeedTable.FeedColumns columns = new RssFeedTable.FeedColumns(cursor);
+                while (cursor.moveToNext()) {
+                    feedRowIds.add(columns.getRowId(cursor));
+                }
+                cursor.close();
+            }
+
+            for (; feedIndex < feedRowIds.size(); feedIndex++) {
+                if (deleteBatch(writableDatabase, feedRowIds.get(feedIndex)) > 0) {
+                    submit();
+                    return;
+                }
+            }
+            if (retentionPolicy.getMaxDatabaseBytes() != RetentionPolicy.UNLIMITED
+                    && DatabaseOpenHelper.getUsedBytes(writableDatabase) > retentionPolicy.getMaxDatabaseBytes()
+                    && deleteBatch(writableDatabase, -1l) > 0) {
+                submit();
+                return;
+            }
+
+            if (itemsDeleted > 0) {
+                try {
+                    DatabaseOpenHelper.reclaimFreePages(writableDatabase, RECLAIM_PAGE_LIMIT, isCharging());
+                } catch (SQLiteException e) {
+                    // Another connection held the database, the free pages are reused by later inserts
+                    Log.w(TAG, "Free pages not reclaimed", e);
+                }
+            }
+            final RetentionPolicy.Result result = new RetentionPolicy.Result(itemsDeleted,
+                    Math.max(0l, fileBytesBefore - DatabaseOpenHelper.getFileBytes(writableDatabase)));
+            if (callback != null) {
+                postCallback(callbackThreadHandler, requestHandle, new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onSuccess(result);
+                    }
+                });
+            }
+        }
+
+        // Deletes the next batch of a feed's expired items, or of the oldest items of every feed if
+        //      feedRowId is -1. Returns how many items the batch found, which is 0 only once nothing
+        //      is left to delete
+        private int deleteBatch(SQLiteDatabase writableDatabase, long feedRowId) {
+            ChangeSet changes = new ChangeSet();
+            List<Long> itemRowIds = new ArrayList<Long>(PRUNE_BATCH_SIZE);
+            // Favorites whose flag is still waiting to be written are kept like any other. They are
+            //      left out by the query, so they never take up a batch
+            List<Long> keptRowIds;
+            synchronized (unwrittenFavorites) {
+                keptRowIds = new ArrayList<Long>(unwrittenFavorites);
+            }
+            int foundCount;
+            writableDatabase.beginTransactionNonExclusive();
+            try {
+                Cursor cursor = feedRowId == -1l
+                        ? RssItemTable.fetchOldestItems(writableDatabase, keptRowIds, PRUNE_BATCH_SIZE)
+                        : RssItemTable.fetchExpiredItems(writableDatabase, feedRowId,
+                        retentionPolicy.getMaxItemsPerFeed(), publishedBefore, keptRowIds, PRUNE_BATCH_SIZE);
+                foundCount = cursor.getCount();
+                RssItemTable.ItemColumns columns = new RssItemTable.ItemColumns(cursor);
+                while (cursor.moveToNext()) {
+                    // Favorited since the ids were copied, the next batch leaves it out
+                    if (unwrittenFavorites.contains(columns.getRowId(cursor))) {
+                        continue;
+                    }
+                    itemRowIds.add(columns.getRowId(cursor));
+                    changes.itemRemoved(columns.getRssFeedId(cursor), columns.getRowId(cursor));
+                }
+                cursor.close();
+                if (!itemRowIds.isEmpty()) {
+                    RssItemTable.deleteItems(writableDatabase, itemRowIds);
+                }
+                writableDatabase.setTransactionSuccessful();
+            } finally {
+                writableDatabase.endTransaction();
+            }
+            if (!itemRowIds.isEmpty()) {
+                itemsDeleted += itemRowIds.size();
+                publishChanges(changes);
+            }
+            return foundCount;
+        }
+    }
+
+    // Whether the device is plugged in, when a slow clean-up costs the user nothing
+    private static boolean isCharging() {
+        Intent batteryStatus = BloclyApplication.getSharedInstance()
+                .registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        int status = batteryStatus == null ? -1 : batteryStatus.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+        return status == BatteryManager.BATTERY_STATUS_CHARGING || status == BatteryManager.BATTERY_STATUS_FULL;
+    }
+
+    // The read, favorite and archived flags of items as the user last set them, including changes
+    //      not yet written. Views read flags through it rather than from models alone
+    public ItemStateStore getItemStates() {
+        return itemStates;
+    }
+
+    // Changes a flag of an item. The change shows in getItemStates() at once and is written within
+    //      ITEM_STATE_FLUSH_DELAY_MILLIS, in one transaction with every other change made meanwhile.
+    //      Called on the main thread
+    public void setItemFlag(RssItem rssItem, ItemStateStore.Flag flag, boolean value) {
+        itemStates.set(rssItem, flag, value);
+        if (flag == ItemStateStore.Flag.FAVORITE) {
+            if (value) {
+                unwrittenFavorites.add(rssItem.getRowId());
+            } else {
+                unwrittenFavorites.remove(rssItem.getRowId());
+            }
+        }
+        scheduleItemStateFlush();
+    }
+
+    private void scheduleItemStateFlush() {
+        if (itemStates.hasPendingChanges() && !itemStateFlushScheduled) {
+            itemStateFlushScheduled = true;
+            itemStateHandler.postDelayed(itemStateFlush, ITEM_STATE_FLUSH_DELAY_MILLIS);
+        }
+    }
+
+    // Writes held flag changes now rather than when the timer fires, e.g. as the app leaves the
+    //      foreground. Called on the main thread
+    public void flushItemStates() {
+        itemStateHandler.removeCallbacks(itemStateFlush);
+        itemStateFlush.run();
+    }
+
+    private final Runnable itemStateFlush = new Runnable() {
+        @Override
+        public void run() {
+            itemStateFlushScheduled = false;
+            Map<Long, ItemStateStore.ItemState> batch = itemStates.takeBatch();
+            if (batch != null) {
+                writeItemStates(batch);
+            }
+        }
+    };
+
+    // One UPDATE per flag and value covers every item of the batch, however many times each was toggled
+    private void writeItemStates(final Map<Long, ItemStateStore.ItemState> batch) {
+        submitTask(TaskScheduler.Lane.DATABASE_WRITE, TaskScheduler.Priority.USER_VISIBLE, new RequestHandle(),
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        ChangeSet changes = new ChangeSet();
+                        SQLiteDatabase writableDatabase = databaseOpenHelper.getWritableDatabase();
+                        boolean written = false;
+                        writableDatabase.beginTransactionNonExclusive();
+                        try {
+                            for (ItemStateStore.Flag flag : ItemStateStore.Flag.values()) {
+                                writeFlag(writableDatabase, flag, ItemStateStore.itemsWith(batch, flag, true), true);
+                                writeFlag(writableDatabase, flag, ItemStateStore.itemsWith(batch, flag, false), false);
+                            }
+                            for (ItemStateStore.ItemState itemState : batch.values()) {
+                                changes.itemUpdated(itemState.getFeedRowId(), itemState.getItemRowId());
+                            }
+                            writableDatabase.setTransactionSuccessful();
+                            written = true;
+                        } catch (SQLiteException e) {
+                            Log.e(TAG, "Item flags not written, retrying with the next flush", e);
+                        } finally {
+                            writableDatabase.endTransaction();
+                        }
+                        if (!written) {
+                            // The changes are held again and count for reads until they are written
+                            itemStateHandler.post(new Runnable() {
+                                @Override
+                                public void run() {
+                                    itemStates.batchFailed(batch);
+                                    scheduleItemStateFlush();
+                                }
+                            });
+                            return;
+                        }
+                        publishChanges(changes);
+                        // Listeners reload the items from the database. Models read before the write
+                        //      go on showing the batch's values until they are replaced
+                        itemStateHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                itemStates.batchWritten(batch);
+                                // The database marks these favorites now, pruning leaves them alone
+                                unwrittenFavorites.removeAll(
+                                        ItemStateStore.itemsWith(batch, ItemStateStore.Flag.FAVORITE, true));
+                            }
+                        });
+                    }
+                });
+    }
+
+    private static void writeFlag(SQLiteDatabase writableDatabase, ItemStateStore.Flag flag, List<Long> itemRowIds,
+                                  boolean value) {
+        if (itemRowIds.isEmpty()) {
+            return;
+        }
+        switch (flag) {
+            case READ:
+                RssItemTable.setRead(writableDatabase, itemRowIds, value);
+                break;
+            case FAVORITE:
+                RssItemTable.setFavorite(writableDatabase, itemRowIds, value);
+                break;
+            default:
+                RssItemTable.setArchived(writableDatabase, itemRowIds, value);
+        }
     }
 
     // 55: fetchItemsForFeed() uses RssItemTable.fetchItemsForFeed() to retrieve every time
     //      associated with a feed
     // 55: Parameterized types can include nested types
-    public void fetchItemsForFeed(final RssFeed rssFeed, final Callback<List<RssItem>> callback){
+    public RequestHandle fetchItemsForFeed(final RssFeed rssFeed, final Callback<List<RssItem>> callback){
+        final RequestHandle requestHandle = new RequestHandle();
         final Handler callbackThreadHandler = new Handler();
-        submitTask(new Runnable() {
+
+        // A feed read earlier, and unchanged since, is served without touching the database
+        final List<RssItem> cachedItems = modelCache.getItemList(rssFeed.getRowId());
+        if (cachedItems != null) {
+            postCallback(callbackThreadHandler, requestHandle, new Runnable() {
+                @Override
+                public void run() {
+                    callback.onSuccess(cachedItems);
+                }
+            });
+            return requestHandle;
+        }
+
+        submitTask(TaskScheduler.Lane.DATABASE_READ, TaskScheduler.Priority.USER_VISIBLE, requestHandle, new Runnable() {
             @Override
             public void run() {
+                long feedVersion = modelCache.getFeedVersion(rssFeed.getRowId());
                 final List<RssItem> resultList = new ArrayList<RssItem>();
                 Cursor cursor = RssItemTable.fetchItemsForFeed(
                         databaseOpenHelper.getReadableDatabase(),
                         rssFeed.getRowId());
 
                 // 55: Iterate over each entry, instantiating an RssItem from each row retrieved
+                // Stop reading rows once nobody is waiting for them
+                RssItemTable.ItemColumns columns = new RssItemTable.ItemColumns(cursor);
                 if (cursor.moveToFirst()) {
                     do {
-                        resultList.add(itemFromCursor(cursor));
-                    } while (cursor.moveToNext());
-                    cursor.close();
+                        resultList.add(itemFromCursor(cursor, columns));
+                    } while (!requestHandle.isCancelled() && cursor.moveToNext());
                 }
+                cursor.close();
+                // A list cut short is not the feed's complete list
+                if (requestHandle.isCancelled()) {
+                    return;
+                }
+                modelCache.putItemList(rssFeed.getRowId(), feedVersion, resultList);
+                postCallback(callbackThreadHandler, requestHandle, new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onSuccess(resultList);
+                    }
+                });
+            }
+        });
+        return requestHandle;
+    }
+
+    // Reads the page of a feed's items which follows previousPage, or the first page if it is null.
+    //      Pages are read from the item cache when the feed's complete list is there
+    public RequestHandle fetchItemPage(final RssFeed rssFeed, final ItemPage previousPage,
+                                       final Callback<ItemPage> callback) {
+        final RequestHandle requestHandle = new RequestHandle();
+        final Handler callbackThreadHandler = new Handler();
+
+        final List<RssItem> cachedItems = modelCache.getItemList(rssFeed.getRowId());
+        if (cachedItems != null) {
+            int start = 0;
+            while (previousPage != null && start < cachedItems.size()
+                    && !previousPage.endsBefore(cachedItems.get(start))) {
+                start++;
+            }
+            int end = Math.min(start + ITEM_PAGE_SIZE, cachedItems.size());
+            final ItemPage itemPage = new ItemPage(rssFeed.getRowId(),
+                    new ArrayList<RssItem>(cachedItems.subList(start, end)), end < cachedItems.size(), previousPage);
+            postCallback(callbackThreadHandler, requestHandle, new Runnable() {
+                @Override
+                public void run() {
+                    callback.onSuccess(itemPage);
+                }
+            });
+            return requestHandle;
+        }
+
+        submitTask(TaskScheduler.Lane.DATABASE_READ, TaskScheduler.Priority.USER_VISIBLE, requestHandle, new Runnable() {
+            @Override
+            public void run() {
+                final ItemPage itemPage = readItemPage(rssFeed, previousPage);
+                postCallback(callbackThreadHandler, requestHandle, new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onSuccess(itemPage);
+                    }
+                });
+            }
+        });
+        return requestHandle;
+    }
+
+    // Opens a Cursor over every item of a feed, newest first, for ItemAdapter to bind rows from
+    //      directly. The first window of rows is read before the Cursor is handed over; later
+    //      windows are read as the Cursor moves. The callback owns the Cursor and must close it
+    public RequestHandle fetchItemCursor(final RssFeed rssFeed, final Callback<Cursor> callback) {
+        final RequestHandle requestHandle = new RequestHandle();
+        final Handler callbackThreadHandler = new Handler();
+        submitTask(TaskScheduler.Lane.DATABASE_READ, TaskScheduler.Priority.USER_VISIBLE, requestHandle, new Runnable() {
+            @Override
+            public void run() {
+                final Cursor cursor = RssItemTable.fetchItemsForFeed(databaseOpenHelper.getReadableDatabase(),
+                        rssFeed.getRowId());
+                // getCount() fills the first window here rather than on the main thread
+                cursor.getCount();
+                // Not postCallback(), a Cursor nobody receives must still be closed
                 callbackThreadHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (requestHandle.isCancelled()) {
+                            cursor.close();
+                        } else {
+                            callback.onSuccess(cursor);
+                        }
+                    }
+                });
+            }
+        });
+        return requestHandle;
+    }
+
+    // Searches the title and description of every stored item for the words of query, each matched
+    //      as the start of a word. Items matching within their title come first, then the newest.
+    //      Returns at most ITEM_PAGE_SIZE items, skipping the first offset results, so a shorter list
+    //      is the last page
+    public RequestHandle searchItems(final String query, final int offset, final Callback<List<RssItem>> callback) {
+        final RequestHandle requestHandle = new RequestHandle();
+        final Handler callbackThreadHandler = new Handler();
+        submitTask(TaskScheduler.Lane.DATABASE_READ, TaskScheduler.Priority.USER_VISIBLE, requestHandle, new Runnable() {
+            @Override
+            public void run() {
+                final List<RssItem> resultList = new ArrayList<RssItem>();
+                Cursor cursor = RssItemSearchTable.searchItems(databaseOpenHelper.getReadableDatabase(), query,
+                        ITEM_PAGE_SIZE, offset);
+                // A query without any words matches nothing
+                if (cursor != null) {
+                    RssItemTable.ItemColumns columns = new RssItemTable.ItemColumns(cursor);
+                    while (cursor.moveToNext()) {
+                        resultList.add(itemFromCursor(cursor, columns));
+                    }
+                    cursor.close();
+                }
+                postCallback(callbackThreadHandler, requestHandle, new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onSuccess(resultList);
+                    }
+                });
+            }
+        });
+        return requestHandle;
+    }
+
+    // Reads the item counts of every feed. The database keeps them current as items are written, so
+    //      the read costs the same however many items are stored
+    public RequestHandle fetchItemCounts(final Callback<ItemCounts> callback) {
+        final RequestHandle requestHandle = new RequestHandle();
+        final Handler callbackThreadHandler = new Handler();
+        submitTask(TaskScheduler.Lane.DATABASE_READ, TaskScheduler.Priority.USER_VISIBLE, requestHandle, new Runnable() {
+            @Override
+            public void run() {
+                Map<Long, ItemCounts.Counts> feedCounts = new HashMap<Long, ItemCounts.Counts>();
+                ItemCounts.Counts totals = ItemCounts.Counts.NONE;
+                Cursor cursor = ItemCountTable.fetchCounts(databaseOpenHelper.getReadableDatabase());
+                while (cursor.moveToNext()) {
+                    ItemCounts.Counts counts = new ItemCounts.Counts((int) ItemCountTable.getItemCount(cursor),
+                            (int) ItemCountTable.getUnreadCount(cursor), (int) ItemCountTable.getFavoriteCount(cursor),
+                            (int) ItemCountTable.getArchivedCount(cursor));
+                    if (ItemCountTable.getRssFeedId(cursor) == ItemCountTable.ALL_FEEDS) {
+                        totals = counts;
+                    } else {
+                        feedCounts.put(ItemCountTable.getRssFeedId(cursor), counts);
+                    }
+                }
+                cursor.close();
+                final ItemCounts itemCounts = new ItemCounts(feedCounts, totals);
+                postCallback(callbackThreadHandler, requestHandle, new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onSuccess(itemCounts);
+                    }
+                });
+            }
+        });
+        return requestHandle;
+    }
+
+    // Compares the stored item counts with a fresh count of the items and rebuilds them if any differ.
+    //      It runs on the write lane, so no write lands between the comparison and the rebuild. The
+    //      callback receives the number of rows found to differ, 0 if the counts were right
+    public RequestHandle checkItemCounts(final Callback<Integer> callback) {
+        final RequestHandle requestHandle = new RequestHandle();
+        final Handler callbackThreadHandler = new Handler();
+        submitTask(TaskScheduler.Lane.DATABASE_WRITE, TaskScheduler.Priority.BACKGROUND, requestHandle, new Runnable() {
+            @Override
+            public void run() {
+                SQLiteDatabase writableDatabase = databaseOpenHelper.getWritableDatabase();
+                ChangeSet changes = new ChangeSet();
+                final int mismatches;
+                writableDatabase.beginTransactionNonExclusive();
+                try {
+                    mismatches = ItemCountTable.countMismatches(writableDatabase);
+                    if (mismatches > 0) {
+                        ItemCountTable.rebuild(writableDatabase);
+                        // Counts are shown alongside the feeds, which are reported as changed
+                        Cursor cursor = RssFeedTable.fetchAllFeeds(writableDatabase);
+                        RssFeedTable.FeedColumns columns = new RssFeedTable.FeedColumns(cursor);
+                        while (cursor.moveToNext()) {
+                            changes.feedUpdated(columns.getRowId(cursor));
+                        }
+                        cursor.close();
+                    }
+                    writableDatabase.setTransactionSuccessful();
+                } finally {
+                    writableDatabase.endTransaction();
+                }
+                if (!changes.isEmpty()) {
+                    publishChanges(changes);
+                }
+                if (callback != null) {
+                    postCallback(callbackThreadHandler, requestHandle, new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onSuccess(mismatches);
+                        }
+                    });
+                }
+            }
+        });
+        return requestHandle;
+    }
+
+    // Retrieves every subscribed feed
+    public RequestHandle fetchAllFeeds(final Callback<List<RssFeed>> callback) {
+        final RequestHandle requestHandle = new RequestHandle();
+        final Handler callbackThreadHandler = new Handler();
+
+        final List<RssFeed> cachedFeeds = modelCache.getAllFeeds();
+        if (cachedFeeds != null) {
+            postCallback(callbackThreadHandler, requestHandle, new Runnable() {
+                @Override
+                public void run() {
+                    callback.onSuccess(cachedFeeds);
+                }
+            });
+            return requestHandle;
+        }
+
+        submitTask(TaskScheduler.Lane.DATABASE_READ, TaskScheduler.Priority.USER_VISIBLE, requestHandle, new Runnable() {
+            @Override
+            public void run() {
+                final List<RssFeed> resultList = readAllFeeds();
+                postCallback(callbackThreadHandler, requestHandle, new Runnable() {
                     @Override
                     public void run() {
                         callback.onSuccess(resultList);
@@ -221,8 +1083,170 @@ public class DataSource {
                 });
             }
         });
+        return requestHandle;
     }
 
+    // Reads what the first screen shows in a single task: every subscribed feed, and the first page
+    //      of the first feed's items. Request it before inflating views, so the database is read
+    //      while they are built
+    public RequestHandle fetchStartupContent(final Callback<StartupContent> callback) {
+        final RequestHandle requestHandle = new RequestHandle();
+        final Handler callbackThreadHandler = new Handler();
+        submitTask(TaskScheduler.Lane.DATABASE_READ, TaskScheduler.Priority.USER_VISIBLE, requestHandle, new Runnable() {
+            @Override
+            public void run() {
+                List<RssFeed> rssFeeds = modelCache.getAllFeeds();
+                if (rssFeeds == null) {
+                    rssFeeds = readAllFeeds();
+                }
+                ItemPage firstPage = rssFeeds.isEmpty() ? null : readItemPage(rssFeeds.get(0), null);
+                final StartupContent startupContent = new StartupContent(rssFeeds, firstPage);
+                postCallback(callbackThreadHandler, requestHandle, new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onSuccess(startupContent);
+                    }
+                });
+            }
+        });
+        return requestHandle;
+    }
+
+    // Reads every subscribed feed and caches the list. Only called on the DATABASE_READ lane
+    private List<RssFeed> readAllFeeds() {
+        long feedListVersion = modelCache.getFeedListVersion();
+        List<RssFeed> resultList = new ArrayList<RssFeed>();
+        Cursor cursor = RssFeedTable.fetchAllFeeds(databaseOpenHelper.getReadableDatabase());
+        RssFeedTable.FeedColumns columns = new RssFeedTable.FeedColumns(cursor);
+        while (cursor.moveToNext()) {
+            resultList.add(feedFromCursor(cursor, columns));
+        }
+        cursor.close();
+        modelCache.putAllFeeds(feedListVersion, resultList);
+        return resultList;
+    }
+
+    // Reads the page of a feed's items which follows previousPage, or the first page if it is null.
+    //      Only called on the DATABASE_READ lane
+    private ItemPage readItemPage(RssFeed rssFeed, ItemPage previousPage) {
+        long feedVersion = modelCache.getFeedVersion(rssFeed.getRowId());
+        // One item more than a page tells whether another page follows
+        Cursor cursor;
+        if (previousPage == null) {
+            cursor = RssItemTable.fetchFirstItemPage(databaseOpenHelper.getReadableDatabase(),
+                    rssFeed.getRowId(), ITEM_PAGE_SIZE + 1);
+        } else {
+            cursor = RssItemTable.fetchItemPageAfter(databaseOpenHelper.getReadableDatabase(),
+                    rssFeed.getRowId(), previousPage.getLastPubDate(), previousPage.getLastRowId(),
+                    ITEM_PAGE_SIZE + 1);
+        }
+        List<RssItem> items = new ArrayList<RssItem>(ITEM_PAGE_SIZE);
+        RssItemTable.ItemColumns columns = new RssItemTable.ItemColumns(cursor);
+        while (items.size() < ITEM_PAGE_SIZE && cursor.moveToNext()) {
+            items.add(itemFromCursor(cursor, columns));
+        }
+        boolean more = cursor.getCount() > ITEM_PAGE_SIZE;
+        cursor.close();
+
+        // A first page holding the whole feed is the feed's complete list
+        if (previousPage == null && !more) {
+            modelCache.putItemList(rssFeed.getRowId(), feedVersion, new ArrayList<RssItem>(items));
+        }
+        return new ItemPage(rssFeed.getRowId(), items, more, previousPage);
+    }
+
+    // Retrieves the pub_date of a feed's newest items, newest first, for SyncEngine to judge how
+    //      often the feed publishes
+    RequestHandle fetchRecentPubDates(final long feedRowId, final int limit, final Callback<List<Long>> callback) {
+        final RequestHandle requestHandle = new RequestHandle();
+        final Handler callbackThreadHandler = new Handler();
+        submitTask(TaskScheduler.Lane.DATABASE_READ, TaskScheduler.Priority.BACKGROUND, requestHandle, new Runnable() {
+            @Override
+            public void run() {
+                final List<Long> pubDates = new ArrayList<Long>(limit);
+                Cursor cursor = RssItemTable.fetchRecentPubDates(databaseOpenHelper.getReadableDatabase(),
+                        feedRowId, limit);
+                while (cursor.moveToNext()) {
+                    pubDates.add(cursor.getLong(0));
+                }
+                cursor.close();
+                postCallback(callbackThreadHandler, requestHandle, new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onSuccess(pubDates);
+                    }
+                });
+            }
+        });
+        return requestHandle;
+    }
+
+    // Retrieves the items named by a ChangeSet, newest first. Items removed since the ChangeSet was
+    //      published are left out
+    public RequestHandle fetchItems(final Collection<Long> itemRowIds, final Callback<List<RssItem>> callback) {
+        final RequestHandle requestHandle = new RequestHandle();
+        final Handler callbackThreadHandler = new Handler();
+
+        // Only the items missing from the cache are read
+        final List<RssItem> cachedItems = new ArrayList<RssItem>();
+        final List<Long> missingIds = new ArrayList<Long>();
+        for (Long itemRowId : itemRowIds) {
+            RssItem cachedItem = modelCache.getItem(itemRowId);
+            if (cachedItem == null) {
+                missingIds.add(itemRowId);
+            } else {
+                cachedItems.add(cachedItem);
+            }
+        }
+        if (missingIds.isEmpty()) {
+            Collections.sort(cachedItems, NEWEST_FIRST);
+            postCallback(callbackThreadHandler, requestHandle, new Runnable() {
+                @Override
+                public void run() {
+                    callback.onSuccess(cachedItems);
+                }
+            });
+            return requestHandle;
+        }
+
+        submitTask(TaskScheduler.Lane.DATABASE_READ, TaskScheduler.Priority.USER_VISIBLE, requestHandle, new Runnable() {
+            @Override
+            public void run() {
+                Map<Long, Long> feedVersions = modelCache.getFeedVersions();
+                List<RssItem> readItems = new ArrayList<RssItem>(missingIds.size());
+                Cursor cursor = RssItemTable.fetchItemsWithIds(databaseOpenHelper.getReadableDatabase(), missingIds);
+                RssItemTable.ItemColumns columns = new RssItemTable.ItemColumns(cursor);
+                while (cursor.moveToNext()) {
+                    readItems.add(itemFromCursor(cursor, columns));
+                }
+                cursor.close();
+                modelCache.putItems(feedVersions, readItems);
+
+                final List<RssItem> resultList = new ArrayList<RssItem>(cachedItems);
+                resultList.addAll(readItems);
+                Collections.sort(resultList, NEWEST_FIRST);
+                postCallback(callbackThreadHandler, requestHandle, new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onSuccess(resultList);
+                    }
+                });
+            }
+        });
+        return requestHandle;
+    }
+
+    // The order of item lists, pub_date then row id, both descending
+    private static final Comparator<RssItem> NEWEST_FIRST = new Comparator<RssItem>() {
+        @Override
+        public int compare(RssItem lhs, RssItem rhs) {
+            if (lhs.getDatePublished() != rhs.getDatePublished()) {
+                return lhs.getDatePublished() > rhs.getDatePublished() ? -1 : 1;
+            }
+            return lhs.getRowId() > rhs.getRowId() ? -1 : (lhs.getRowId() == rhs.getRowId() ? 0 : 1);
+        }
+    };
+
     // 54: Pulls information from the Cursor and places it directly into RssFeed's constructor using
     //      newly created get methods in RssFeedTable.java
     // 55: Use new Table.getRowId() method to supply required row Id
@@ -231,6 +1255,21 @@ public class DataSource {
                 RssFeedTable.getSiteURL(cursor), RssFeedTable.getFeedUrl(cursor));
     }
 
+    // Builds an RssFeed from a Cursor whose column positions are already known, for reading many rows
+    static RssFeed feedFromCursor(Cursor cursor, RssFeedTable.FeedColumns columns) {
+        return new RssFeed(columns.getRowId(cursor), columns.getTitle(cursor), columns.getDescription(cursor),
+                columns.getSiteURL(cursor), columns.getFeedUrl(cursor));
+    }
+
+    // Builds an RssItem from a Cursor whose column positions are already known. Used when reading many
+    //      rows, and by views which bind from the Cursor and only need the model when the item is acted on
+    public static RssItem itemFromCursor(Cursor cursor, RssItemTable.ItemColumns columns) {
+        return new RssItem(columns.getRowId(cursor), columns.getGUID(cursor), columns.getTitle(cursor),
+                columns.getDescription(cursor), columns.getLink(cursor), columns.getEnclosure(cursor),
+                columns.getRssFeedId(cursor), columns.getPubDate(cursor), columns.getRead(cursor),
+                columns.getFavorite(cursor), columns.getArchived(cursor));
+    }
+
     // 54: Pulls information from the Cursor and places it directly into RssItem's constructor using
     //      newly created get methods in RssItemTable.java
     // 55: Use new Table.getRowId() method to supply required row Id
@@ -238,7 +1277,7 @@ public class DataSource {
         return new RssItem(Table.getRowId(cursor), RssItemTable.getGUID(cursor), RssItemTable.getTitle(cursor),
                 RssItemTable.getDescription(cursor), RssItemTable.getLink(cursor),
                 RssItemTable.getEnclosure(cursor), RssItemTable.getRssFeedId(cursor),
-                RssItemTable.getPubDate(cursor), RssItemTable.getFavorite(cursor),
-                RssItemTable.getArchived(cursor));
+                RssItemTable.getPubDate(cursor), RssItemTable.getRead(cursor),
+                RssItemTable.getFavorite(cursor), RssItemTable.getArchived(cursor));
     }
 }
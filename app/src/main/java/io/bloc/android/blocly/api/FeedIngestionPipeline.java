@@ -0,0 +1,134 @@
+package io.bloc.android.blocly.api;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import io.bloc.android.blocly.api.network.FeedPullParser;
+import io.bloc.android.blocly.api.network.GetFeedsNetworkRequest;
+import io.bloc.android.blocly.api.network.NetworkRequest;
+
+/**
+ * FeedIngestionPipeline overlaps downloading and parsing a feed with writing its items.
+ * A producer streams items from the network into a bounded queue while the calling thread drains
+ * the queue in batches and hands each batch to a BatchWriter. When the queue is full the producer
+ * blocks and stops reading from the network, so memory stays flat regardless of the feed's size.
+ */
+class FeedIngestionPipeline {
+
+    // Receives the items of a feed in order, one batch at a time
+    static interface BatchWriter {
+        public void write(List<GetFeedsNetworkRequest.ItemResponse> batch);
+    }
+
+    // Error code of a feed whose items could not be written, alongside those of NetworkRequest
+    static final int ERROR_WRITING = 5;
+
+    // Items which may wait between the parser and the writer
+    static final int QUEUE_CAPACITY = 64;
+    // Largest number of items written at once
+    static final int BATCH_SIZE = 32;
+    // A partial batch is written once no new item has arrived for this long
+    static final long FLUSH_INTERVAL_MILLIS = 250;
+
+    // Marks the end of the producer's items, whether the feed finished or failed
+    private static final GetFeedsNetworkRequest.ItemResponse END_OF_FEED =
+            new GetFeedsNetworkRequest.ItemResponse(null, null, null, null, null, null, null);
+
+    private final GetFeedsNetworkRequest request;
+    private final String feedUrl;
+    private final BlockingQueue<GetFeedsNetworkRequest.ItemResponse> queue =
+            new ArrayBlockingQueue<GetFeedsNetworkRequest.ItemResponse>(QUEUE_CAPACITY);
+
+    FeedIngestionPipeline(GetFeedsNetworkRequest request, String feedUrl) {
+        this.request = request;
+        this.feedUrl = feedUrl;
+    }
+
+    // Streams the feed on the scheduler's network lane and hands its items to batchWriter on the calling thread.
+    // Returns once every item has been written, with the FeedResponse describing the channel. Its
+    // channelItems list is always empty. Once requestHandle is cancelled no further batch is written,
+    // the download is abandoned and the FeedResponse reports ERROR_CANCELLED. If batchWriter throws,
+    // e.g. an SQLiteException, the download is abandoned too and the FeedResponse reports
+    // ERROR_WRITING. Batches written before then stay written.
+    GetFeedsNetworkRequest.FeedResponse run(TaskScheduler taskScheduler, TaskScheduler.Priority priority,
+                                            RequestHandle requestHandle, BatchWriter batchWriter) {
+        Future<GetFeedsNetworkRequest.FeedResponse> producer = taskScheduler.submit(
+                TaskScheduler.Lane.NETWORK, priority, new Callable<GetFeedsNetworkRequest.FeedResponse>() {
+                    @Override
+                    public GetFeedsNetworkRequest.FeedResponse call() throws Exception {
+                        try {
+                            return request.streamFeed(feedUrl, new FeedPullParser.ItemHandler() {
+                                @Override
+                                public boolean onItem(GetFeedsNetworkRequest.ItemResponse itemResponse) {
+                                    try {
+                                        // Blocks while the writer is behind
+                                        queue.put(itemResponse);
+                                        return true;
+                                    } catch (InterruptedException e) {
+                                        Thread.currentThread().interrupt();
+                                        return false;
+                                    }
+                                }
+                            });
+                        } finally {
+                            queue.put(END_OF_FEED);
+                        }
+                    }
+                });
+
+        boolean drained = false;
+        try {
+            List<GetFeedsNetworkRequest.ItemResponse> batch =
+                    new ArrayList<GetFeedsNetworkRequest.ItemResponse>(BATCH_SIZE);
+            while (true) {
+                GetFeedsNetworkRequest.ItemResponse itemResponse =
+                        queue.poll(FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (requestHandle.isCancelled()) {
+                    return new GetFeedsNetworkRequest.FeedResponse(feedUrl, NetworkRequest.ERROR_CANCELLED);
+                }
+                if (itemResponse == END_OF_FEED) {
+                    break;
+                }
+                if (itemResponse != null) {
+                    batch.add(itemResponse);
+                }
+                // Write full batches immediately, and partial ones whenever the network is the bottleneck
+                if (batch.size() >= BATCH_SIZE || (itemResponse == null && !batch.isEmpty())) {
+                    batchWriter.write(batch);
+                    batch = new ArrayList<GetFeedsNetworkRequest.ItemResponse>(BATCH_SIZE);
+                }
+            }
+            if (!batch.isEmpty()) {
+                batchWriter.write(batch);
+            }
+            drained = true;
+            GetFeedsNetworkRequest.FeedResponse feedResponse = producer.get();
+            if (requestHandle.isCancelled()) {
+                return new GetFeedsNetworkRequest.FeedResponse(feedUrl, NetworkRequest.ERROR_CANCELLED);
+            }
+            return feedResponse;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new GetFeedsNetworkRequest.FeedResponse(feedUrl, NetworkRequest.ERROR_IO);
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+            return new GetFeedsNetworkRequest.FeedResponse(feedUrl, NetworkRequest.ERROR_IO);
+        } catch (RuntimeException e) {
+            // Thrown by batchWriter, the producer never throws here
+            e.printStackTrace();
+            return new GetFeedsNetworkRequest.FeedResponse(feedUrl, ERROR_WRITING);
+        } finally {
+            if (!drained) {
+                // Unblock and stop the producer if the writer gave up early
+                producer.cancel(true);
+                queue.clear();
+            }
+        }
+    }
+}
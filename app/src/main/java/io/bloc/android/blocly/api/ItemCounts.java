@@ -0,0 +1,48 @@
+package io.bloc.android.blocly.api;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * ItemCounts is what DataSource.fetchItemCounts() reads: how many items each feed holds, and how
+ * many of them are unread, favorites or archived, along with the totals over every feed. Counts
+ * are looked up by feed row id without touching the database again.
+ */
+public class ItemCounts {
+
+    public static class Counts {
+
+        public static final Counts NONE = new Counts(0, 0, 0, 0);
+
+        public final int itemCount;
+        public final int unreadCount;
+        public final int favoriteCount;
+        public final int archivedCount;
+
+        Counts(int itemCount, int unreadCount, int favoriteCount, int archivedCount) {
+            this.itemCount = itemCount;
+            this.unreadCount = unreadCount;
+            this.favoriteCount = favoriteCount;
+            this.archivedCount = archivedCount;
+        }
+    }
+
+    private final Map<Long, Counts> feedCounts;
+    private final Counts totals;
+
+    ItemCounts(Map<Long, Counts> feedCounts, Counts totals) {
+        this.feedCounts = Collections.unmodifiableMap(feedCounts);
+        this.totals = totals;
+    }
+
+    // The counts of one feed, all zero if it holds no items
+    public Counts getFeedCounts(long feedRowId) {
+        Counts counts = feedCounts.get(feedRowId);
+        return counts == null ? Counts.NONE : counts;
+    }
+
+    // The counts over every feed
+    public Counts getTotals() {
+        return totals;
+    }
+}
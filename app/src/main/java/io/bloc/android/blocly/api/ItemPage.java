@@ -0,0 +1,64 @@
+package io.bloc.android.blocly.api;
+
+import java.util.Collections;
+import java.util.List;
+
+import io.bloc.android.blocly.api.model.RssItem;
+
+/**
+ * ItemPage is one page of a feed's items, newest first. Hand it back to
+ * DataSource.fetchItemPage() to read the page which follows it.
+ */
+public class ItemPage {
+
+    private final long feedRowId;
+    private final List<RssItem> items;
+    private final boolean more;
+    // pub_date and row id of the last item read so far, where the next page starts
+    private final long lastPubDate;
+    private final long lastRowId;
+
+    ItemPage(long feedRowId, List<RssItem> items, boolean more, ItemPage previousPage) {
+        this.feedRowId = feedRowId;
+        this.items = Collections.unmodifiableList(items);
+        this.more = more;
+        if (!items.isEmpty()) {
+            RssItem lastItem = items.get(items.size() - 1);
+            lastPubDate = lastItem.getDatePublished();
+            lastRowId = lastItem.getRowId();
+        } else if (previousPage != null) {
+            lastPubDate = previousPage.lastPubDate;
+            lastRowId = previousPage.lastRowId;
+        } else {
+            lastPubDate = Long.MAX_VALUE;
+            lastRowId = Long.MAX_VALUE;
+        }
+    }
+
+    public long getFeedRowId() {
+        return feedRowId;
+    }
+
+    public List<RssItem> getItems() {
+        return items;
+    }
+
+    // False once the feed's oldest item has been read
+    public boolean hasMore() {
+        return more;
+    }
+
+    long getLastPubDate() {
+        return lastPubDate;
+    }
+
+    long getLastRowId() {
+        return lastRowId;
+    }
+
+    // True if the item belongs on a later page than this one
+    public boolean endsBefore(RssItem rssItem) {
+        return rssItem.getDatePublished() < lastPubDate
+                || (rssItem.getDatePublished() == lastPubDate && rssItem.getRowId() < lastRowId);
+    }
+}
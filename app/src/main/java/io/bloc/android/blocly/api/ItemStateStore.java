@@ -0,0 +1,211 @@
+package io.bloc.android.blocly.api;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.bloc.android.blocly.api.model.RssItem;
+
+/**
+ * ItemStateStore holds the read, favorite and archived flags the user has changed but DataSource
+ * has not written yet. Changes to the same item are combined, the last value of each flag wins and
+ * a flag set back to the value already stored is no change at all. Reads lay these values over
+ * those of the models and Cursors, so a change shows at once while it waits to be written.
+ *
+ * Held changes are taken as a batch to be written. A batch still counts for reads while it is
+ * written, and its values go on counting after the write has committed, until a model read since
+ * holds them. A batch whose write failed goes back among the held changes to be written again.
+ * ItemStateStore is not thread safe and is meant to be used from the main thread.
+ */
+public class ItemStateStore {
+
+    public static enum Flag {
+        READ,
+        FAVORITE,
+        ARCHIVED
+    }
+
+    // The flags changed on one item, each mapped to its new value
+    public static class ItemState {
+
+        private final long feedRowId;
+        private final long itemRowId;
+        private final Map<Flag, Boolean> flags = new EnumMap<Flag, Boolean>(Flag.class);
+
+        ItemState(long feedRowId, long itemRowId) {
+            this.feedRowId = feedRowId;
+            this.itemRowId = itemRowId;
+        }
+
+        public long getFeedRowId() {
+            return feedRowId;
+        }
+
+        public long getItemRowId() {
+            return itemRowId;
+        }
+
+        public Map<Flag, Boolean> getFlags() {
+            return Collections.unmodifiableMap(flags);
+        }
+    }
+
+    // Changes not yet taken, by item row id
+    private Map<Long, ItemState> pending = new LinkedHashMap<Long, ItemState>();
+    // Batches taken whose writes have not committed, oldest first
+    private final List<Map<Long, ItemState>> writing = new ArrayList<Map<Long, ItemState>>();
+    // Values committed which models read earlier do not hold yet, by item row id. A value is dropped
+    //      once a model holding it is seen, models read before the write may be bound long after it
+    private final Map<Long, Map<Flag, Boolean>> written = new HashMap<Long, Map<Flag, Boolean>>();
+
+    // The value of a flag as the model was read from the database
+    public static boolean storedValue(RssItem rssItem, Flag flag) {
+        switch (flag) {
+            case READ:
+                return rssItem.isRead();
+            case FAVORITE:
+                return rssItem.isFavorite();
+            default:
+                return rssItem.isArchived();
+        }
+    }
+
+    // Row ids of the items in a batch whose flag was set to value
+    public static List<Long> itemsWith(Map<Long, ItemState> batch, Flag flag, boolean value) {
+        List<Long> itemRowIds = new ArrayList<Long>();
+        for (ItemState itemState : batch.values()) {
+            Boolean flagValue = itemState.flags.get(flag);
+            if (flagValue != null && flagValue == value) {
+                itemRowIds.add(itemState.itemRowId);
+            }
+        }
+        return itemRowIds;
+    }
+
+    public boolean get(RssItem rssItem, Flag flag) {
+        return get(rssItem.getRowId(), flag, storedValue(rssItem, flag));
+    }
+
+    // Returns the flag's latest value, or storedValue, read from the database, if it has not changed
+    public boolean get(long itemRowId, Flag flag, boolean storedValue) {
+        Boolean value = valueIn(pending, itemRowId, flag);
+        return value == null ? getWritten(itemRowId, flag, storedValue) : value;
+    }
+
+    public void set(RssItem rssItem, Flag flag, boolean value) {
+        set(rssItem.getRssFeedId(), rssItem.getRowId(), flag, value, storedValue(rssItem, flag));
+    }
+
+    // Records a change to a flag. storedValue is the flag's value as read from the database
+    public void set(long feedRowId, long itemRowId, Flag flag, boolean value, boolean storedValue) {
+        ItemState itemState = pending.get(itemRowId);
+        if (value == getWritten(itemRowId, flag, storedValue)) {
+            // Back to what the database holds, or will once the batches being written commit
+            if (itemState != null) {
+                itemState.flags.remove(flag);
+                if (itemState.flags.isEmpty()) {
+                    pending.remove(itemRowId);
+                }
+            }
+            return;
+        }
+        if (itemState == null) {
+            itemState = new ItemState(feedRowId, itemRowId);
+            pending.put(itemRowId, itemState);
+        }
+        itemState.flags.put(flag, value);
+    }
+
+    public boolean hasPendingChanges() {
+        return !pending.isEmpty();
+    }
+
+    // Takes every change held so far as a batch to write, or returns null if there is none
+    Map<Long, ItemState> takeBatch() {
+        if (pending.isEmpty()) {
+            return null;
+        }
+        Map<Long, ItemState> batch = pending;
+        pending = new LinkedHashMap<Long, ItemState>();
+        writing.add(batch);
+        return batch;
+    }
+
+    // Called once the write of a batch has committed
+    void batchWritten(Map<Long, ItemState> batch) {
+        if (!removeWriting(batch)) {
+            return;
+        }
+        // Batches commit in the order they were taken, so later values replace earlier ones
+        for (ItemState itemState : batch.values()) {
+            Map<Flag, Boolean> writtenFlags = written.get(itemState.itemRowId);
+            if (writtenFlags == null) {
+                writtenFlags = new EnumMap<Flag, Boolean>(Flag.class);
+                written.put(itemState.itemRowId, writtenFlags);
+            }
+            writtenFlags.putAll(itemState.flags);
+        }
+    }
+
+    // Called if the write of a batch has failed. Its changes are held again, behind any made to the
+    //      same flags since it was taken, and go out with the next batch
+    void batchFailed(Map<Long, ItemState> batch) {
+        if (!removeWriting(batch)) {
+            return;
+        }
+        for (ItemState failedState : batch.values()) {
+            ItemState itemState = pending.get(failedState.itemRowId);
+            if (itemState == null) {
+                itemState = new ItemState(failedState.feedRowId, failedState.itemRowId);
+                pending.put(failedState.itemRowId, itemState);
+            }
+            for (Map.Entry<Flag, Boolean> flag : failedState.flags.entrySet()) {
+                if (!itemState.flags.containsKey(flag.getKey())) {
+                    itemState.flags.put(flag.getKey(), flag.getValue());
+                }
+            }
+        }
+    }
+
+    private boolean removeWriting(Map<Long, ItemState> batch) {
+        for (int i = 0; i < writing.size(); i++) {
+            if (writing.get(i) == batch) {
+                writing.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // The value a flag will have once the batches being written commit
+    private boolean getWritten(long itemRowId, Flag flag, boolean storedValue) {
+        for (int i = writing.size() - 1; i >= 0; i--) {
+            Boolean value = valueIn(writing.get(i), itemRowId, flag);
+            if (value != null) {
+                return value;
+            }
+        }
+        Map<Flag, Boolean> writtenFlags = written.get(itemRowId);
+        Boolean value = writtenFlags == null ? null : writtenFlags.get(flag);
+        if (value == null) {
+            return storedValue;
+        }
+        if (value == storedValue) {
+            // The model was read after the write, it needs no help from here on
+            writtenFlags.remove(flag);
+            if (writtenFlags.isEmpty()) {
+                written.remove(itemRowId);
+            }
+        }
+        return value;
+    }
+
+    private static Boolean valueIn(Map<Long, ItemState> itemStates, long itemRowId, Flag flag) {
+        ItemState itemState = itemStates.get(itemRowId);
+        return itemState == null ? null : itemState.flags.get(flag);
+    }
+}
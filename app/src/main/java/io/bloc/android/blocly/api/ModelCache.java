@@ -0,0 +1,204 @@
+package io.bloc.android.blocly.api;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.util.LruCache;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.bloc.android.blocly.api.model.RssFeed;
+import io.bloc.android.blocly.api.model.RssItem;
+
+/**
+ * ModelCache keeps the models DataSource has recently read, so returning to a feed does not read
+ * and rebuild every one of its items again. It holds each feed's item list, single items read by
+ * row id, and the list of feeds, within a memory budget shared out least-recently-used first.
+ *
+ * Entries are dropped as soon as DataSource commits a change to them. A read which began before
+ * such a change may have seen the old rows, so its result is only cached if nothing it covers
+ * changed while it ran; read a version before querying and hand it back with the result. Versions
+ * are kept per feed, and for the list of feeds, so a write to one feed never turns away a read of
+ * another.
+ */
+public class ModelCache {
+
+    // The cache may use this fraction of the memory available to the app
+    private static final int MEMORY_CLASS_DIVISOR = 16;
+    // Rough size of an RssItem and its Strings, less their characters
+    private static final int ITEM_OVERHEAD_BYTES = 160;
+
+    private final LruCache<Long, List<RssItem>> itemLists;
+    private final LruCache<Long, RssItem> items;
+    private List<RssFeed> allFeeds;
+    private int allFeedsHits;
+    private int allFeedsMisses;
+
+    // Counts the changes to each feed's items, and to the list of feeds
+    private final Map<Long, Long> feedVersions = new HashMap<Long, Long>();
+    private long feedListVersion;
+
+    ModelCache(int maxBytes) {
+        // Lists are what the screen shows, they get the larger share
+        itemLists = new LruCache<Long, List<RssItem>>(Math.max(1, maxBytes / 4 * 3)) {
+            @Override
+            protected int sizeOf(Long feedRowId, List<RssItem> itemList) {
+                int size = 0;
+                for (RssItem rssItem : itemList) {
+                    size += ModelCache.sizeOf(rssItem);
+                }
+                return Math.max(1, size);
+            }
+        };
+        items = new LruCache<Long, RssItem>(Math.max(1, maxBytes / 4)) {
+            @Override
+            protected int sizeOf(Long itemRowId, RssItem rssItem) {
+                return ModelCache.sizeOf(rssItem);
+            }
+        };
+    }
+
+    // Sizes the cache from the device's memory class, the heap each app may use
+    static int maxBytesFor(Context context) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        return activityManager.getMemoryClass() * 1024 * 1024 / MEMORY_CLASS_DIVISOR;
+    }
+
+    synchronized long getFeedVersion(long feedRowId) {
+        Long feedVersion = feedVersions.get(feedRowId);
+        return feedVersion == null ? 0l : feedVersion;
+    }
+
+    // A copy of every feed's version, for reads whose items may belong to any feed
+    synchronized Map<Long, Long> getFeedVersions() {
+        return new HashMap<Long, Long>(feedVersions);
+    }
+
+    synchronized long getFeedListVersion() {
+        return feedListVersion;
+    }
+
+    List<RssItem> getItemList(long feedRowId) {
+        return itemLists.get(feedRowId);
+    }
+
+    // The list is kept as it is, callers must not change it afterwards
+    synchronized void putItemList(long feedRowId, long feedVersion, List<RssItem> itemList) {
+        if (feedVersion == getFeedVersion(feedRowId)) {
+            itemLists.put(feedRowId, Collections.unmodifiableList(itemList));
+        }
+    }
+
+    RssItem getItem(long itemRowId) {
+        return items.get(itemRowId);
+    }
+
+    // Each item is cached only if its feed is still at the version found in feedVersions
+    synchronized void putItems(Map<Long, Long> feedVersions, Collection<RssItem> rssItems) {
+        for (RssItem rssItem : rssItems) {
+            Long feedVersion = feedVersions.get(rssItem.getRssFeedId());
+            if ((feedVersion == null ? 0l : feedVersion) == getFeedVersion(rssItem.getRssFeedId())) {
+                items.put(rssItem.getRowId(), rssItem);
+            }
+        }
+    }
+
+    synchronized List<RssFeed> getAllFeeds() {
+        if (allFeeds == null) {
+            allFeedsMisses++;
+        } else {
+            allFeedsHits++;
+        }
+        return allFeeds;
+    }
+
+    synchronized void putAllFeeds(long feedListVersion, List<RssFeed> rssFeeds) {
+        if (feedListVersion == this.feedListVersion) {
+            allFeeds = Collections.unmodifiableList(rssFeeds);
+        }
+    }
+
+    // Drops everything the changes touch. Called after the changes are committed
+    synchronized void invalidate(ChangeSet changes) {
+        Set<Long> changedFeedIds = changes.getChangedFeedIds();
+        if (!changes.getAddedFeedIds().isEmpty() || !changes.getUpdatedFeedIds().isEmpty()
+                || !changes.getRemovedFeedIds().isEmpty()) {
+            feedListVersion++;
+            allFeeds = null;
+        }
+        for (Long feedRowId : changedFeedIds) {
+            feedVersions.put(feedRowId, getFeedVersion(feedRowId) + 1);
+            itemLists.remove(feedRowId);
+            ChangeSet.ItemChanges itemChanges = changes.getItemChanges(feedRowId);
+            if (itemChanges == null) {
+                continue;
+            }
+            for (Long itemRowId : itemChanges.getUpdatedIds()) {
+                items.remove(itemRowId);
+            }
+            for (Long itemRowId : itemChanges.getRemovedIds()) {
+                items.remove(itemRowId);
+            }
+        }
+        // The items of a removed feed are not listed one by one
+        if (!changes.getRemovedFeedIds().isEmpty()) {
+            for (Map.Entry<Long, RssItem> entry : items.snapshot().entrySet()) {
+                if (changes.getRemovedFeedIds().contains(entry.getValue().getRssFeedId())) {
+                    items.remove(entry.getKey());
+                }
+            }
+        }
+    }
+
+    public Stats getStats() {
+        synchronized (this) {
+            return new Stats(itemLists.hitCount(), itemLists.missCount(), items.hitCount(), items.missCount(),
+                    allFeedsHits, allFeedsMisses, itemLists.size() + items.size(),
+                    itemLists.maxSize() + items.maxSize());
+        }
+    }
+
+    private static int sizeOf(RssItem rssItem) {
+        return ITEM_OVERHEAD_BYTES + 2 * (length(rssItem.getGuid()) + length(rssItem.getTitle())
+                + length(rssItem.getDescription()) + length(rssItem.getUrl()) + length(rssItem.getImageUrl()));
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    public static class Stats {
+        public final int itemListHits;
+        public final int itemListMisses;
+        public final int itemHits;
+        public final int itemMisses;
+        public final int feedListHits;
+        public final int feedListMisses;
+        // Estimated, in bytes
+        public final int size;
+        public final int maxSize;
+
+        Stats(int itemListHits, int itemListMisses, int itemHits, int itemMisses, int feedListHits,
+              int feedListMisses, int size, int maxSize) {
+            this.itemListHits = itemListHits;
+            this.itemListMisses = itemListMisses;
+            this.itemHits = itemHits;
+            this.itemMisses = itemMisses;
+            this.feedListHits = feedListHits;
+            this.feedListMisses = feedListMisses;
+            this.size = size;
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public String toString() {
+            return "item lists " + itemListHits + " hits " + itemListMisses + " misses, items " + itemHits
+                    + " hits " + itemMisses + " misses, feeds " + feedListHits + " hits " + feedListMisses
+                    + " misses, " + size / 1024 + "KB of " + maxSize / 1024 + "KB";
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package io.bloc.android.blocly.api;
+
+import java.util.concurrent.Executor;
+
+/**
+ * ProgressReporter delivers the running totals of a feed's stored items to a ProgressListener on the
+ * requesting thread. At most one update is waiting to be delivered at a time, batches written while
+ * it waits are folded into the totals it reports, so the listener is called no more often than the
+ * requesting thread gets round to it. An update reads the totals as it is delivered, so the one
+ * delivered before the request's Callback holds every item.
+ */
+class ProgressReporter {
+
+    // Runs each update on the requesting thread, in order with the request's Callback
+    private final Executor callbackExecutor;
+    private final DataSource.ProgressListener progressListener;
+    private int insertedCount;
+    private int updatedCount;
+    private boolean updatePosted;
+
+    ProgressReporter(Executor callbackExecutor, DataSource.ProgressListener progressListener) {
+        this.callbackExecutor = callbackExecutor;
+        this.progressListener = progressListener;
+    }
+
+    // Called from the writing thread once each batch has been committed
+    synchronized void add(int inserted, int updated) {
+        if (inserted == 0 && updated == 0) {
+            return;
+        }
+        insertedCount += inserted;
+        updatedCount += updated;
+        if (updatePosted) {
+            return;
+        }
+        updatePosted = true;
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                int insertedSoFar;
+                int updatedSoFar;
+                synchronized (ProgressReporter.this) {
+                    updatePosted = false;
+                    insertedSoFar = insertedCount;
+                    updatedSoFar = updatedCount;
+                }
+                progressListener.onItemsIngested(insertedSoFar, updatedSoFar);
+            }
+        });
+    }
+}
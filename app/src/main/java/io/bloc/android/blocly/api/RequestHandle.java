@@ -0,0 +1,47 @@
+package io.bloc.android.blocly.api;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RequestHandle is returned by each asynchronous DataSource request. Cancelling it stops any work
+ * which has not happened yet, closes an open download, and guarantees the request's Callback is
+ * never invoked, as long as cancel() is called from the thread the Callback would run on.
+ */
+public class RequestHandle {
+
+    private volatile boolean cancelled;
+    // Run once when the request is cancelled, each stops one stage of the work
+    private final List<Runnable> cancelActions = new ArrayList<Runnable>();
+
+    public void cancel() {
+        List<Runnable> actions;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            actions = new ArrayList<Runnable>(cancelActions);
+            cancelActions.clear();
+        }
+        for (Runnable action : actions) {
+            action.run();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    // Registers an action to stop part of the request. If the request has already been cancelled,
+    //      the action runs immediately
+    void whenCancelled(Runnable action) {
+        synchronized (this) {
+            if (!cancelled) {
+                cancelActions.add(action);
+                return;
+            }
+        }
+        action.run();
+    }
+}
@@ -0,0 +1,86 @@
+package io.bloc.android.blocly.api;
+
+/**
+ * RetentionPolicy sets how many items DataSource.pruneItems() keeps. Each feed keeps at most its
+ * newest maxItemsPerFeed items, and none older than maxAgeMillis. If the database is still larger
+ * than maxDatabaseBytes, the oldest items of any feed go next until it fits. Favorites are always
+ * kept, whatever the limits say. Each limit is off unless it is set.
+ */
+public class RetentionPolicy {
+
+    public static final int UNLIMITED = -1;
+
+    // What the app keeps by default: a few months' reading, within the space of a few photos
+    public static final RetentionPolicy DEFAULT = new Builder()
+            .setMaxItemsPerFeed(1000)
+            .setMaxAgeMillis(90l * 24l * 60l * 60l * 1000l)
+            .setMaxDatabaseBytes(50l * 1024l * 1024l)
+            .build();
+
+    private final int maxItemsPerFeed;
+    private final long maxAgeMillis;
+    private final long maxDatabaseBytes;
+
+    private RetentionPolicy(Builder builder) {
+        this.maxItemsPerFeed = builder.maxItemsPerFeed;
+        this.maxAgeMillis = builder.maxAgeMillis;
+        this.maxDatabaseBytes = builder.maxDatabaseBytes;
+    }
+
+    public int getMaxItemsPerFeed() {
+        return maxItemsPerFeed;
+    }
+
+    public long getMaxAgeMillis() {
+        return maxAgeMillis;
+    }
+
+    public long getMaxDatabaseBytes() {
+        return maxDatabaseBytes;
+    }
+
+    public static class Builder {
+
+        private int maxItemsPerFeed = UNLIMITED;
+        private long maxAgeMillis = UNLIMITED;
+        private long maxDatabaseBytes = UNLIMITED;
+
+        public Builder setMaxItemsPerFeed(int maxItemsPerFeed) {
+            this.maxItemsPerFeed = maxItemsPerFeed;
+            return this;
+        }
+
+        // Measured against each item's pub_date
+        public Builder setMaxAgeMillis(long maxAgeMillis) {
+            this.maxAgeMillis = maxAgeMillis;
+            return this;
+        }
+
+        // Counts the pages in use, free pages waiting to be reclaimed are left out
+        public Builder setMaxDatabaseBytes(long maxDatabaseBytes) {
+            this.maxDatabaseBytes = maxDatabaseBytes;
+            return this;
+        }
+
+        public RetentionPolicy build() {
+            return new RetentionPolicy(this);
+        }
+    }
+
+    // What a run of DataSource.pruneItems() removed
+    public static class Result {
+        public final int itemsDeleted;
+        // Shrinkage of the database file, once its free pages were reclaimed
+        public final long bytesFreed;
+
+        Result(int itemsDeleted, long bytesFreed) {
+            this.itemsDeleted = itemsDeleted;
+            this.bytesFreed = bytesFreed;
+        }
+
+        @Override
+        public String toString() {
+            return itemsDeleted + " items deleted, " + bytesFreed / 1024 + "KB freed";
+        }
+    }
+}
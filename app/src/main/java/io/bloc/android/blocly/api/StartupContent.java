@@ -0,0 +1,31 @@
+package io.bloc.android.blocly.api;
+
+import java.util.Collections;
+import java.util.List;
+
+import io.bloc.android.blocly.api.model.RssFeed;
+
+/**
+ * StartupContent is what DataSource.fetchStartupContent() reads for the first screen, straight from
+ * the database without waiting on the network.
+ */
+public class StartupContent {
+
+    private final List<RssFeed> feeds;
+    private final ItemPage firstPage;
+
+    StartupContent(List<RssFeed> feeds, ItemPage firstPage) {
+        this.feeds = Collections.unmodifiableList(feeds);
+        this.firstPage = firstPage;
+    }
+
+    // Every subscribed feed, in the order they were added
+    public List<RssFeed> getFeeds() {
+        return feeds;
+    }
+
+    // The first page of the first feed's items, or null if there are no feeds yet
+    public ItemPage getFirstPage() {
+        return firstPage;
+    }
+}
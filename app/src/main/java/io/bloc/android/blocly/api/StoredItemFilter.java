@@ -0,0 +1,32 @@
+package io.bloc.android.blocly.api;
+
+import java.util.Map;
+
+import io.bloc.android.blocly.api.model.database.table.RssItemTable;
+import io.bloc.android.blocly.api.network.FeedPullParser;
+
+/**
+ * StoredItemFilter recognizes the items of a feed which are already stored, unchanged, so that an
+ * incremental refresh skips them. Items are matched by RssItemTable.itemKeyOf(), then by content
+ * hash, so an edited item is let through and its stored copy updated.
+ */
+class StoredItemFilter implements FeedPullParser.ItemFilter {
+
+    // Content hash of every stored item, by item key
+    private final Map<String, Long> storedContentHashes;
+
+    StoredItemFilter(Map<String, Long> storedContentHashes) {
+        this.storedContentHashes = storedContentHashes;
+    }
+
+    // Items without a guid or link have no key, they are never known and always stored again
+    @Override
+    public boolean isKnownItem(String guid, String link, int contentHash) {
+        String itemKey = RssItemTable.itemKeyOf(guid, link);
+        if (itemKey == null) {
+            return false;
+        }
+        Long storedContentHash = storedContentHashes.get(itemKey);
+        return storedContentHash != null && storedContentHash == contentHash;
+    }
+}
@@ -0,0 +1,187 @@
+package io.bloc.android.blocly.api;
+
+import android.os.Handler;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import io.bloc.android.blocly.api.model.RssFeed;
+
+/**
+ * SyncEngine refreshes every subscribed feed in the background for as long as it is started, each
+ * on the schedule SyncScheduler works out for it. Refreshes go through DataSource at BACKGROUND
+ * priority, so they never hold up a request the user is waiting on, and their items reach the
+ * screen through DataSource's ChangeListeners like any other write. A refresh holds the database
+ * writer only for each short batch of items, never while its feed downloads.
+ *
+ * SyncEngine must be started, stopped and used on the main thread.
+ */
+public class SyncEngine {
+
+    // Newest items whose dates are used to judge how often a feed publishes
+    private static final int RECENT_ITEM_COUNT = 10;
+
+    private final DataSource dataSource;
+    private final SyncScheduler syncScheduler;
+    private final SyncScheduler.Clock clock;
+    private final Handler handler = new Handler();
+
+    private final Map<Long, RssFeed> feeds = new HashMap<Long, RssFeed>();
+    // The refresh, or the read which follows it, of each feed being synced
+    private final Map<Long, RequestHandle> syncRequests = new HashMap<Long, RequestHandle>();
+    private RequestHandle feedsRequest;
+    private boolean started;
+
+    public SyncEngine(DataSource dataSource) {
+        this(dataSource, SyncScheduler.SYSTEM_CLOCK, new Random());
+    }
+
+    SyncEngine(DataSource dataSource, SyncScheduler.Clock clock, Random random) {
+        this.dataSource = dataSource;
+        this.clock = clock;
+        this.syncScheduler = new SyncScheduler(clock, random);
+    }
+
+    public void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        dataSource.subscribe(changeListener);
+        feedsRequest = dataSource.fetchAllFeeds(new DataSource.Callback<List<RssFeed>>() {
+            @Override
+            public void onSuccess(List<RssFeed> rssFeeds) {
+                for (RssFeed rssFeed : rssFeeds) {
+                    addFeed(rssFeed);
+                }
+                scheduleNextSync();
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+            }
+        });
+    }
+
+    // Abandons any refresh in progress, feeds are scheduled afresh by the next start()
+    public void stop() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        dataSource.unsubscribe(changeListener);
+        handler.removeCallbacks(syncDueFeeds);
+        if (feedsRequest != null) {
+            feedsRequest.cancel();
+            feedsRequest = null;
+        }
+        for (RequestHandle syncRequest : syncRequests.values()) {
+            syncRequest.cancel();
+        }
+        syncRequests.clear();
+        for (Long feedRowId : feeds.keySet()) {
+            syncScheduler.removeFeed(feedRowId);
+        }
+        feeds.clear();
+    }
+
+    private void addFeed(RssFeed rssFeed) {
+        feeds.put(rssFeed.getRowId(), rssFeed);
+        syncScheduler.addFeed(rssFeed.getRowId());
+    }
+
+    // Feeds subscribed to or dropped elsewhere join or leave the schedule
+    private final DataSource.ChangeListener changeListener = new DataSource.ChangeListener() {
+        @Override
+        public void onDataChanged(ChangeSet changes) {
+            for (Long removedFeedId : changes.getRemovedFeedIds()) {
+                feeds.remove(removedFeedId);
+                syncScheduler.removeFeed(removedFeedId);
+                RequestHandle syncRequest = syncRequests.remove(removedFeedId);
+                if (syncRequest != null) {
+                    syncRequest.cancel();
+                }
+            }
+            if (changes.getAddedFeedIds().isEmpty()) {
+                scheduleNextSync();
+                return;
+            }
+            // Only the row ids are known, so the feeds are read again
+            dataSource.fetchAllFeeds(new DataSource.Callback<List<RssFeed>>() {
+                @Override
+                public void onSuccess(List<RssFeed> rssFeeds) {
+                    if (!started) {
+                        return;
+                    }
+                    for (RssFeed rssFeed : rssFeeds) {
+                        if (!feeds.containsKey(rssFeed.getRowId())) {
+                            addFeed(rssFeed);
+                        }
+                    }
+                    scheduleNextSync();
+                }
+
+                @Override
+                public void onError(String errorMessage) {
+                }
+            });
+        }
+    };
+
+    private final Runnable syncDueFeeds = new Runnable() {
+        @Override
+        public void run() {
+            for (Long feedRowId : syncScheduler.takeDueFeeds()) {
+                syncFeed(feeds.get(feedRowId));
+            }
+            scheduleNextSync();
+        }
+    };
+
+    private void syncFeed(final RssFeed rssFeed) {
+        final long feedRowId = rssFeed.getRowId();
+        RequestHandle refreshRequest = dataSource.fetchNewFeed(rssFeed.getFeedUrl(),
+                TaskScheduler.Priority.BACKGROUND, null, new DataSource.Callback<RssFeed>() {
+                    @Override
+                    public void onSuccess(RssFeed refreshedFeed) {
+                        feeds.put(feedRowId, refreshedFeed);
+                        syncRequests.put(feedRowId, dataSource.fetchRecentPubDates(feedRowId, RECENT_ITEM_COUNT,
+                                new DataSource.Callback<List<Long>>() {
+                                    @Override
+                                    public void onSuccess(List<Long> recentPubDates) {
+                                        syncRequests.remove(feedRowId);
+                                        syncScheduler.onFeedRefreshed(feedRowId, recentPubDates);
+                                        scheduleNextSync();
+                                    }
+
+                                    @Override
+                                    public void onError(String errorMessage) {
+                                        syncRequests.remove(feedRowId);
+                                        syncScheduler.onFeedFailed(feedRowId);
+                                        scheduleNextSync();
+                                    }
+                                }));
+                    }
+
+                    @Override
+                    public void onError(String errorMessage) {
+                        syncRequests.remove(feedRowId);
+                        syncScheduler.onFeedFailed(feedRowId);
+                        scheduleNextSync();
+                    }
+                });
+        syncRequests.put(feedRowId, refreshRequest);
+    }
+
+    // Wakes up when the earliest refresh is due
+    private void scheduleNextSync() {
+        handler.removeCallbacks(syncDueFeeds);
+        long nextRefreshMillis = syncScheduler.getNextRefreshMillis();
+        if (!started || nextRefreshMillis == Long.MAX_VALUE) {
+            return;
+        }
+        handler.postDelayed(syncDueFeeds, Math.max(0l, nextRefreshMillis - clock.currentTimeMillis()));
+    }
+}
@@ -0,0 +1,155 @@
+package io.bloc.android.blocly.api;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * SyncScheduler decides when each feed should next be refreshed. A feed's interval follows how
+ * often it publishes, judged from the dates of its newest items, so a feed posting every hour is
+ * checked far more often than one which has been quiet for weeks. Failed refreshes back off.
+ * Every interval is jittered so feeds added together drift apart instead of refreshing at once.
+ *
+ * SyncScheduler holds no threads and reads the time only through its Clock, it is not thread safe
+ * and is meant to be driven from a single thread.
+ */
+public class SyncScheduler {
+
+    public static interface Clock {
+        public long currentTimeMillis();
+    }
+
+    public static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    static final long MIN_INTERVAL_MILLIS = 15l * 60l * 1000l;
+    static final long MAX_INTERVAL_MILLIS = 24l * 60l * 60l * 1000l;
+    // Used until a feed has published at least two items
+    static final long DEFAULT_INTERVAL_MILLIS = 60l * 60l * 1000l;
+    // Intervals are moved by up to this fraction in either direction
+    static final double JITTER_FRACTION = 0.1;
+    // Items published this close together were posted in one go, or are undated items placed
+    //      a millisecond apart, and say nothing about the cadence
+    static final long MIN_PUBLISHING_GAP_MILLIS = 60l * 1000l;
+
+    private final Clock clock;
+    private final Random random;
+    private final Map<Long, FeedSchedule> feedSchedules = new HashMap<Long, FeedSchedule>();
+
+    public SyncScheduler(Clock clock, Random random) {
+        this.clock = clock;
+        this.random = random;
+    }
+
+    // Starts scheduling a feed. Its first refresh happens at a random point within the shortest
+    //      interval, so feeds loaded together are spread out
+    public void addFeed(long feedRowId) {
+        if (feedSchedules.containsKey(feedRowId)) {
+            return;
+        }
+        FeedSchedule feedSchedule = new FeedSchedule();
+        feedSchedule.intervalMillis = DEFAULT_INTERVAL_MILLIS;
+        feedSchedule.nextRefreshMillis = clock.currentTimeMillis() + (long) (random.nextDouble() * MIN_INTERVAL_MILLIS);
+        feedSchedules.put(feedRowId, feedSchedule);
+    }
+
+    public void removeFeed(long feedRowId) {
+        feedSchedules.remove(feedRowId);
+    }
+
+    // Returns the feeds whose refresh is due. They are not returned again until
+    //      onFeedRefreshed() or onFeedFailed() reports the outcome
+    public List<Long> takeDueFeeds() {
+        long now = clock.currentTimeMillis();
+        List<Long> dueFeeds = new ArrayList<Long>();
+        for (Map.Entry<Long, FeedSchedule> entry : feedSchedules.entrySet()) {
+            FeedSchedule feedSchedule = entry.getValue();
+            if (!feedSchedule.refreshing && feedSchedule.nextRefreshMillis <= now) {
+                feedSchedule.refreshing = true;
+                dueFeeds.add(entry.getKey());
+            }
+        }
+        return dueFeeds;
+    }
+
+    // Schedules the next refresh from the pub_date of the feed's newest items, newest first
+    public void onFeedRefreshed(long feedRowId, List<Long> recentPubDates) {
+        FeedSchedule feedSchedule = feedSchedules.get(feedRowId);
+        if (feedSchedule == null) {
+            return;
+        }
+        feedSchedule.refreshing = false;
+        feedSchedule.intervalMillis = publishingInterval(recentPubDates);
+        feedSchedule.nextRefreshMillis = clock.currentTimeMillis() + jitter(feedSchedule.intervalMillis);
+    }
+
+    // Doubles the feed's interval, up to the longest allowed
+    public void onFeedFailed(long feedRowId) {
+        FeedSchedule feedSchedule = feedSchedules.get(feedRowId);
+        if (feedSchedule == null) {
+            return;
+        }
+        feedSchedule.refreshing = false;
+        feedSchedule.intervalMillis = clamp(feedSchedule.intervalMillis * 2);
+        feedSchedule.nextRefreshMillis = clock.currentTimeMillis() + jitter(feedSchedule.intervalMillis);
+    }
+
+    // Returns the time of the earliest refresh not yet taken, or Long.MAX_VALUE if there is none
+    public long getNextRefreshMillis() {
+        long next = Long.MAX_VALUE;
+        for (FeedSchedule feedSchedule : feedSchedules.values()) {
+            if (!feedSchedule.refreshing && feedSchedule.nextRefreshMillis < next) {
+                next = feedSchedule.nextRefreshMillis;
+            }
+        }
+        return next;
+    }
+
+    // Returns the feed's interval before jitter, or -1 if the feed is not scheduled
+    public long getIntervalMillis(long feedRowId) {
+        FeedSchedule feedSchedule = feedSchedules.get(feedRowId);
+        return feedSchedule == null ? -1l : feedSchedule.intervalMillis;
+    }
+
+    // A feed is checked twice per expected post. The expected gap is the average gap between its
+    //      newest items, or the time since its newest item if the feed has gone quiet for longer
+    private long publishingInterval(List<Long> recentPubDates) {
+        long gapTotal = 0;
+        int gapCount = 0;
+        for (int i = 1; i < recentPubDates.size(); i++) {
+            long gap = recentPubDates.get(i - 1) - recentPubDates.get(i);
+            if (gap >= MIN_PUBLISHING_GAP_MILLIS) {
+                gapTotal += gap;
+                gapCount++;
+            }
+        }
+        if (gapCount == 0) {
+            return DEFAULT_INTERVAL_MILLIS;
+        }
+        long expectedGap = gapTotal / gapCount;
+        long silence = clock.currentTimeMillis() - recentPubDates.get(0);
+        return clamp(Math.max(expectedGap, silence) / 2);
+    }
+
+    private long jitter(long intervalMillis) {
+        double offset = (random.nextDouble() * 2 - 1) * JITTER_FRACTION;
+        return (long) (intervalMillis * (1 + offset));
+    }
+
+    private static long clamp(long intervalMillis) {
+        return Math.max(MIN_INTERVAL_MILLIS, Math.min(MAX_INTERVAL_MILLIS, intervalMillis));
+    }
+
+    private static class FeedSchedule {
+        long intervalMillis;
+        long nextRefreshMillis;
+        // Taken by takeDueFeeds() and not yet reported on
+        boolean refreshing;
+    }
+}
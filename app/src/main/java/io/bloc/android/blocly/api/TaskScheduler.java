@@ -0,0 +1,167 @@
+package io.bloc.android.blocly.api;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TaskScheduler runs DataSource's work on separate lanes, each a fixed number of threads, so a
+ * backlog of downloads never delays a database read. Within a lane, tasks the user is waiting on
+ * run before background work, and tasks of equal priority run in the order they arrived.
+ * Each lane reports its queue depth and how long tasks waited before they started.
+ */
+public class TaskScheduler {
+
+    public static enum Lane {
+        // Downloading and parsing feeds
+        NETWORK(4),
+        // Seeing a feed through from download to stored items, mostly waiting on the other lanes
+        FEED_INGESTION(4),
+        // Queries, which may run alongside the writer in write-ahead-logging mode
+        DATABASE_READ(2),
+        // Inserts and updates, SQLite allows a single writer at a time
+        DATABASE_WRITE(1);
+
+        private final int threadCount;
+
+        Lane(int threadCount) {
+            this.threadCount = threadCount;
+        }
+    }
+
+    // Declared in the order tasks are taken from a lane's queue
+    public static enum Priority {
+        USER_VISIBLE,
+        BACKGROUND
+    }
+
+    private final Map<Lane, LaneExecutor> laneExecutors = new EnumMap<Lane, LaneExecutor>(Lane.class);
+    // Breaks ties between tasks of equal priority, in order of arrival
+    private final AtomicLong sequence = new AtomicLong();
+
+    public TaskScheduler() {
+        for (Lane lane : Lane.values()) {
+            laneExecutors.put(lane, new LaneExecutor(lane));
+        }
+    }
+
+    public Future<?> submit(Lane lane, Priority priority, Runnable task) {
+        return submit(lane, priority, Executors.callable(task));
+    }
+
+    public <Result> Future<Result> submit(Lane lane, Priority priority, Callable<Result> task) {
+        PrioritizedTask<Result> prioritizedTask =
+                new PrioritizedTask<Result>(task, priority, sequence.getAndIncrement());
+        // execute() rather than submit(), the queue must hold the Comparable task itself
+        laneExecutors.get(lane).execute(prioritizedTask);
+        return prioritizedTask;
+    }
+
+    // Returns a snapshot of the lane's queue and timing figures
+    public LaneMetrics getMetrics(Lane lane) {
+        return laneExecutors.get(lane).getMetrics();
+    }
+
+    // Stops accepting tasks, queued tasks still run
+    public void shutdown() {
+        for (LaneExecutor laneExecutor : laneExecutors.values()) {
+            laneExecutor.shutdown();
+        }
+    }
+
+    public static class LaneMetrics {
+        // Tasks waiting for a thread
+        public final int queueDepth;
+        // Tasks running right now
+        public final int activeCount;
+        // Tasks which have started since the scheduler was created
+        public final long startedCount;
+        public final long averageWaitMillis;
+        public final long maxWaitMillis;
+
+        LaneMetrics(int queueDepth, int activeCount, long startedCount, long averageWaitMillis,
+                    long maxWaitMillis) {
+            this.queueDepth = queueDepth;
+            this.activeCount = activeCount;
+            this.startedCount = startedCount;
+            this.averageWaitMillis = averageWaitMillis;
+            this.maxWaitMillis = maxWaitMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "queued " + queueDepth + ", active " + activeCount + ", started " + startedCount
+                    + ", wait avg " + averageWaitMillis + "ms max " + maxWaitMillis + "ms";
+        }
+    }
+
+    private static class PrioritizedTask<Result> extends FutureTask<Result>
+            implements Comparable<PrioritizedTask<?>> {
+
+        private final Priority priority;
+        private final long sequence;
+        private final long enqueuedAtNanos = System.nanoTime();
+
+        PrioritizedTask(Callable<Result> callable, Priority priority, long sequence) {
+            super(callable);
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(PrioritizedTask<?> another) {
+            if (priority != another.priority) {
+                return priority.ordinal() < another.priority.ordinal() ? -1 : 1;
+            }
+            return sequence < another.sequence ? -1 : (sequence == another.sequence ? 0 : 1);
+        }
+    }
+
+    private static class LaneExecutor extends ThreadPoolExecutor {
+
+        private final AtomicLong startedCount = new AtomicLong();
+        private final AtomicLong totalWaitNanos = new AtomicLong();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+
+        LaneExecutor(final Lane lane) {
+            super(lane.threadCount, lane.threadCount, 0l, TimeUnit.MILLISECONDS,
+                    new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+                        private int threadNumber;
+
+                        @Override
+                        public synchronized Thread newThread(Runnable runnable) {
+                            return new Thread(runnable, "blocly-" + lane.name().toLowerCase(Locale.US) + "-" + ++threadNumber);
+                        }
+                    });
+        }
+
+        @Override
+        protected void beforeExecute(Thread thread, Runnable runnable) {
+            super.beforeExecute(thread, runnable);
+            long waitNanos = System.nanoTime() - ((PrioritizedTask<?>) runnable).enqueuedAtNanos;
+            startedCount.incrementAndGet();
+            totalWaitNanos.addAndGet(waitNanos);
+            long max = maxWaitNanos.get();
+            while (waitNanos > max && !maxWaitNanos.compareAndSet(max, waitNanos)) {
+                max = maxWaitNanos.get();
+            }
+        }
+
+        LaneMetrics getMetrics() {
+            long started = startedCount.get();
+            long averageWaitNanos = started == 0 ? 0 : totalWaitNanos.get() / started;
+            return new LaneMetrics(getQueue().size(), getActiveCount(), started,
+                    TimeUnit.NANOSECONDS.toMillis(averageWaitNanos),
+                    TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()));
+        }
+    }
+}
@@ -16,7 +16,7 @@ public class RssItem extends Model {
     private boolean archived;
 
     public RssItem(long rowId, String guid, String title, String description, String url, String imageUrl,
-                   long rssFeedId, long datePublished, boolean favorite, boolean archived) {
+                   long rssFeedId, long datePublished, boolean read, boolean favorite, boolean archived) {
         super(rowId);
         this.guid = guid;
         this.title = title;
@@ -25,6 +25,7 @@ public class RssItem extends Model {
         this.imageUrl = imageUrl;
         this.rssFeedId = rssFeedId;
         this.datePublished = datePublished;
+        this.read = read;
         this.favorite = favorite;
         this.archived = archived;
     }
@@ -57,6 +58,10 @@ public class RssItem extends Model {
         return datePublished;
     }
 
+    public boolean isRead() {
+        return read;
+    }
+
     public boolean isFavorite() {
         return favorite;
     }
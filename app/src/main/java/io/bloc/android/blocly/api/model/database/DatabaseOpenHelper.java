@@ -1,6 +1,8 @@
 package io.bloc.android.blocly.api.model.database;
 
 import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
@@ -15,17 +17,49 @@ public class DatabaseOpenHelper extends SQLiteOpenHelper {
     // Applications are allowed to use multiple databases
     private static final String NAME = "blocly_db";
 
-    private static final int VERSION = 1;
+    // Version 4 adds the indexes declared by each Table
+    // Version 5 adds the row id to the index of items by pub_date, for paging
+    // Version 6 adds the full-text index of items and the triggers which maintain it
+    // Version 7 adds the read flag of items
+    // Version 8 adds the item counts of each feed and the triggers which maintain them
+    // Version 9 leaves archived items out of the unread counts and keeps counts for every feed
+    private static final int VERSION = 9;
+
+    // Values of PRAGMA auto_vacuum
+    private static final long AUTO_VACUUM_NONE = 0;
+    private static final long AUTO_VACUUM_INCREMENTAL = 2;
 
     private Table[] tables;
 
     public DatabaseOpenHelper(Context context, Table... tables) {
+        this(context, NAME, tables);
+    }
+
+    // Opens the database under a different name, so tests need not touch the application's own
+    DatabaseOpenHelper(Context context, String name, Table... tables) {
 
         // Pass both the version and name of the database to the super constructor
         // SQLiteOpenHelper will compare the VERSION variable to the version stored
         // in the database; if they differ, an upgrade occurs
-        super(context, NAME, null, VERSION);
+        super(context, name, null, VERSION);
         this.tables = tables;
+
+        // With write-ahead logging, readers use their own connections from SQLiteDatabase's pool and
+        // keep reading the last committed data while a write transaction is open
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    // onConfigure() happens every time the database is opened, before onCreate() or onUpgrade() and
+    //      outside of any transaction
+    // A new database is switched to incremental auto_vacuum before any of our tables exist. Android
+    //      has already created its own metadata table, so the switch takes a VACUUM, which costs
+    //      nothing while the file is empty
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        if (db.getVersion() == 0 && !db.isReadOnly()) {
+            db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+            db.execSQL("VACUUM");
+        }
     }
 
     // onCreate() happens the first time we open the database
@@ -36,14 +70,68 @@ public class DatabaseOpenHelper extends SQLiteOpenHelper {
             // execSQL() ...
             db.execSQL(table.getCreateStatement());
         }
+        for (Table table : tables) {
+            table.createIndexes(db);
+        }
+        for (Table table : tables) {
+            table.createTriggers(db);
+        }
     }
 
     // onUpgrade() happens when an upgrade is triggered
-    // Iterate over our Table objects and invoke the appropriate upgrade method
+    // Step through each version in turn, invoking every Table's migrations for that version, so that
+    // migrations of different tables run in the order they were introduced. Indexes and then triggers
+    // are created last, once every column and table they refer to exists
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        for (int version = oldVersion + 1; version <= newVersion; version++) {
+            for (Table table : tables) {
+                table.migrate(db, version);
+            }
+        }
+        for (Table table : tables) {
+            table.createIndexes(db);
+        }
         for (Table table : tables) {
-            table.onUpgrade(db, oldVersion, newVersion);
+            table.createTriggers(db);
+        }
+    }
+
+    // Bytes taken by pages holding data. Pages freed by deletes are left out, they are reused before
+    //      the file grows again
+    public static long getUsedBytes(SQLiteDatabase database) {
+        return (DatabaseUtils.longForQuery(database, "PRAGMA page_count", null)
+                - DatabaseUtils.longForQuery(database, "PRAGMA freelist_count", null))
+                * DatabaseUtils.longForQuery(database, "PRAGMA page_size", null);
+    }
+
+    // Size of the database file, free pages included
+    public static long getFileBytes(SQLiteDatabase database) {
+        return DatabaseUtils.longForQuery(database, "PRAGMA page_count", null)
+                * DatabaseUtils.longForQuery(database, "PRAGMA page_size", null);
+    }
+
+    // Gives up to maxPages of the database's free pages back to the file system, any left over are
+    //      given back by a later call. Must not be called within a transaction.
+    //      Databases created before auto_vacuum was set in onConfigure() have it off, and switching
+    //      it on takes a full VACUUM, which rewrites the whole file while holding the writer. That is
+    //      only done if rebuildAllowed, e.g. while the device is charging, until then the free pages
+    //      are left for later inserts to reuse. In FULL mode SQLite gives pages back on every commit
+    public static void reclaimFreePages(SQLiteDatabase writableDatabase, int maxPages, boolean rebuildAllowed) {
+        long autoVacuum = DatabaseUtils.longForQuery(writableDatabase, "PRAGMA auto_vacuum", null);
+        if (autoVacuum == AUTO_VACUUM_NONE) {
+            if (rebuildAllowed) {
+                writableDatabase.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+                writableDatabase.execSQL("VACUUM");
+            }
+            return;
+        }
+        if (autoVacuum != AUTO_VACUUM_INCREMENTAL) {
+            return;
         }
+        // Each step of the pragma frees one page, the Cursor steps through them all as it fills
+        Cursor cursor = writableDatabase.rawQuery("PRAGMA incremental_vacuum(" + maxPages + ")", null);
+        cursor.getCount();
+        cursor.close();
     }
 }
@@ -0,0 +1,211 @@
+package io.bloc.android.blocly.api.model.database.table;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ItemCountTable keeps, for each feed, how many items it holds and how many of them are unread,
+ * favorites or archived, with a row under ALL_FEEDS for every feed together. Archived items are
+ * not counted as unread. Triggers on rss_items update the counts within the same statement as every
+ * insert, flag change and delete, and triggers on rss_feeds add and remove each feed's row, so
+ * showing them costs one read of a handful of rows rather than counting items.
+ */
+public class ItemCountTable extends Table {
+
+    // Row id of the row which counts the items of every feed, feed row ids start at 1
+    public static final long ALL_FEEDS = 0l;
+
+    // Retrieves every row of counts, there is one per feed and one per feed id items refer to
+    public static Cursor fetchCounts(SQLiteDatabase readonlyDatabase) {
+        return readonlyDatabase.query(NAME, COUNT_COLUMNS, null, null, null, null, null);
+    }
+
+    // Counts the items of rss_items afresh, in the same columns as fetchCounts()
+    public static Cursor countItems(SQLiteDatabase readonlyDatabase) {
+        return readonlyDatabase.rawQuery(countItemsQuery(), null);
+    }
+
+    // Returns the number of rows which differ between the stored counts and a fresh count of the
+    //      items, a row missing on one side counts as differing. Every row is compared, those of
+    //      feeds without items included
+    public static int countMismatches(SQLiteDatabase readonlyDatabase) {
+        String stored = "SELECT " + COLUMN_LIST + " FROM " + NAME;
+        // Wrapped, as compound SELECTs group from the left and the query ends in a UNION ALL
+        String counted = "SELECT * FROM (" + countItemsQuery() + ")";
+        Cursor cursor = readonlyDatabase.rawQuery("SELECT COUNT(*) FROM ("
+                + "SELECT * FROM (" + stored + " EXCEPT " + counted + ") UNION ALL "
+                + "SELECT * FROM (" + counted + " EXCEPT " + stored + "))", null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Replaces every stored count with a fresh count of the items
+    public static void rebuild(SQLiteDatabase writableDatabase) {
+        writableDatabase.delete(NAME, null, null);
+        writableDatabase.execSQL("INSERT INTO " + NAME + " (" + COLUMN_LIST + ") " + countItemsQuery());
+    }
+
+    public static long getRssFeedId(Cursor cursor) {
+        return getLong(cursor, COLUMN_RSS_FEED);
+    }
+
+    public static long getItemCount(Cursor cursor) {
+        return getLong(cursor, COLUMN_ITEM_COUNT);
+    }
+
+    public static long getUnreadCount(Cursor cursor) {
+        return getLong(cursor, COLUMN_UNREAD_COUNT);
+    }
+
+    public static long getFavoriteCount(Cursor cursor) {
+        return getLong(cursor, COLUMN_FAVORITE_COUNT);
+    }
+
+    public static long getArchivedCount(Cursor cursor) {
+        return getLong(cursor, COLUMN_ARCHIVED_COUNT);
+    }
+
+    private static final String NAME = "rss_item_counts";
+
+    private static final String COLUMN_RSS_FEED = "rss_feed";
+    private static final String COLUMN_ITEM_COUNT = "item_count";
+    private static final String COLUMN_UNREAD_COUNT = "unread_count";
+    private static final String COLUMN_FAVORITE_COUNT = "favorite_count";
+    private static final String COLUMN_ARCHIVED_COUNT = "archived_count";
+
+    private static final String[] COUNT_COLUMNS = {COLUMN_RSS_FEED, COLUMN_ITEM_COUNT, COLUMN_UNREAD_COUNT,
+            COLUMN_FAVORITE_COUNT, COLUMN_ARCHIVED_COUNT};
+    private static final String COLUMN_LIST = COLUMN_RSS_FEED + ", " + COLUMN_ITEM_COUNT + ", "
+            + COLUMN_UNREAD_COUNT + ", " + COLUMN_FAVORITE_COUNT + ", " + COLUMN_ARCHIVED_COUNT;
+
+    // Whether an item counts as unread, favorite and archived, in the order of the count columns.
+    //      A NULL flag reads as false, as it does in RssItemTable. Archived items are put away, they
+    //      are not waiting to be read
+    private static String[] flagConditions(String row) {
+        return new String[]{
+                "(IFNULL(" + row + RssItemTable.COLUMN_READ + ", 0) = 0 AND IFNULL("
+                        + row + RssItemTable.COLUMN_ARCHIVED + ", 0) = 0)",
+                "IFNULL(" + row + RssItemTable.COLUMN_FAVORITE + ", 0) = 1",
+                "IFNULL(" + row + RssItemTable.COLUMN_ARCHIVED + ", 0) = 1"};
+    }
+
+    // One row per feed, with zeros for feeds without items, and per feed id items refer to, then the
+    //      row of every feed together, which is there even when no items are stored
+    private static String countItemsQuery() {
+        String[] conditions = flagConditions("");
+        String counts = "COUNT(*) AS " + COLUMN_ITEM_COUNT + ", "
+                + "IFNULL(SUM(" + conditions[0] + "), 0) AS " + COLUMN_UNREAD_COUNT + ", "
+                + "IFNULL(SUM(" + conditions[1] + "), 0) AS " + COLUMN_FAVORITE_COUNT + ", "
+                + "IFNULL(SUM(" + conditions[2] + "), 0) AS " + COLUMN_ARCHIVED_COUNT;
+        String feedIds = "SELECT " + COLUMN_ID + " AS " + COLUMN_RSS_FEED + " FROM " + RssFeedTable.NAME
+                + " UNION SELECT " + RssItemTable.COLUMN_RSS_FEED + " FROM " + RssItemTable.NAME
+                + " WHERE " + RssItemTable.COLUMN_RSS_FEED + " IS NOT NULL";
+        String feedCounts = "SELECT " + RssItemTable.COLUMN_RSS_FEED + ", " + counts + " FROM " + RssItemTable.NAME
+                + " WHERE " + RssItemTable.COLUMN_RSS_FEED + " IS NOT NULL GROUP BY " + RssItemTable.COLUMN_RSS_FEED;
+        return "SELECT f." + COLUMN_RSS_FEED + ", "
+                + zeroIfNull(COLUMN_ITEM_COUNT) + ", " + zeroIfNull(COLUMN_UNREAD_COUNT) + ", "
+                + zeroIfNull(COLUMN_FAVORITE_COUNT) + ", " + zeroIfNull(COLUMN_ARCHIVED_COUNT)
+                + " FROM (" + feedIds + ") f LEFT JOIN (" + feedCounts + ") c ON c." + COLUMN_RSS_FEED
+                + " = f." + COLUMN_RSS_FEED
+                + " UNION ALL SELECT " + ALL_FEEDS + ", " + counts + " FROM " + RssItemTable.NAME;
+    }
+
+    private static String zeroIfNull(String countColumn) {
+        return "IFNULL(c." + countColumn + ", 0) AS " + countColumn;
+    }
+
+    @Override
+    public String getName() {
+        return "rss_item_counts";
+    }
+
+    @Override
+    public String getCreateStatement() {
+        return "CREATE TABLE " + getName() + " ("
+                + COLUMN_RSS_FEED + " INTEGER PRIMARY KEY,"
+                + COLUMN_ITEM_COUNT + " INTEGER NOT NULL DEFAULT 0,"
+                + COLUMN_UNREAD_COUNT + " INTEGER NOT NULL DEFAULT 0,"
+                + COLUMN_FAVORITE_COUNT + " INTEGER NOT NULL DEFAULT 0,"
+                + COLUMN_ARCHIVED_COUNT + " INTEGER NOT NULL DEFAULT 0)";
+    }
+
+    @Override
+    protected List<Migration> getMigrations() {
+        return Arrays.<Migration>asList(
+                // Version 8 adds the counts, taken from the items already stored
+                new Migration(8) {
+                    @Override
+                    public void migrate(SQLiteDatabase writableDatabase) {
+                        writableDatabase.execSQL(getCreateStatement());
+                        rebuild(writableDatabase);
+                    }
+                },
+                // Version 9 leaves archived items out of the unread counts and keeps a row for every
+                //      feed. The item triggers are replaced, the feed triggers are new
+                new Migration(9) {
+                    @Override
+                    public void migrate(SQLiteDatabase writableDatabase) {
+                        for (String suffix : new String[]{"ai", "au", "ad"}) {
+                            writableDatabase.execSQL("DROP TRIGGER IF EXISTS " + getName() + "_" + suffix);
+                        }
+                        rebuild(writableDatabase);
+                    }
+                });
+    }
+
+    // Each item is counted in its feed's row and in the ALL_FEEDS row. A change of flags or feed takes
+    //      the item's old values off and adds its new ones. Edits to an item's text leave the counts alone.
+    //      A feed's row is added along with the feed, and goes with it
+    @Override
+    protected List<String> getTriggerStatements() {
+        String flagColumns = RssItemTable.COLUMN_READ + ", " + RssItemTable.COLUMN_FAVORITE + ", "
+                + RssItemTable.COLUMN_ARCHIVED + ", " + RssItemTable.COLUMN_RSS_FEED;
+        return Arrays.asList(
+                trigger("ai", "AFTER INSERT ON " + RssItemTable.NAME, addRows("new") + adjust("new", "+")),
+                trigger("au", "AFTER UPDATE OF " + flagColumns + " ON " + RssItemTable.NAME,
+                        adjust("old", "-") + addRows("new") + adjust("new", "+")),
+                trigger("ad", "AFTER DELETE ON " + RssItemTable.NAME, adjust("old", "-")),
+                trigger("fi", "AFTER INSERT ON " + RssFeedTable.NAME, "INSERT OR IGNORE INTO " + getName()
+                        + " (" + COLUMN_RSS_FEED + ") VALUES (new." + COLUMN_ID + ");"),
+                trigger("fd", "AFTER DELETE ON " + RssFeedTable.NAME, "DELETE FROM " + getName()
+                        + " WHERE " + COLUMN_RSS_FEED + " = old." + COLUMN_ID + ";"));
+    }
+
+    // The ALL_FEEDS row is set up along with the triggers, as a fresh count has it even before any item
+    //      is stored
+    @Override
+    public void createTriggers(SQLiteDatabase writableDatabase) {
+        super.createTriggers(writableDatabase);
+        writableDatabase.execSQL("INSERT OR IGNORE INTO " + getName() + " (" + COLUMN_RSS_FEED + ") VALUES ("
+                + ALL_FEEDS + ")");
+    }
+
+    // Makes sure the rows an item is counted in exist
+    private String addRows(String row) {
+        return "INSERT OR IGNORE INTO " + getName() + " (" + COLUMN_RSS_FEED + ") VALUES (" + ALL_FEEDS + ");"
+                + "INSERT OR IGNORE INTO " + getName() + " (" + COLUMN_RSS_FEED + ") SELECT " + row + "."
+                + RssItemTable.COLUMN_RSS_FEED + " WHERE " + row + "." + RssItemTable.COLUMN_RSS_FEED + " IS NOT NULL;";
+    }
+
+    // Adds or takes off an item in the rows it is counted in
+    private String adjust(String row, String sign) {
+        String[] conditions = flagConditions(row + ".");
+        return "UPDATE " + getName() + " SET "
+                + COLUMN_ITEM_COUNT + " = " + COLUMN_ITEM_COUNT + " " + sign + " 1, "
+                + COLUMN_UNREAD_COUNT + " = " + COLUMN_UNREAD_COUNT + " " + sign + " (" + conditions[0] + "), "
+                + COLUMN_FAVORITE_COUNT + " = " + COLUMN_FAVORITE_COUNT + " " + sign + " (" + conditions[1] + "), "
+                + COLUMN_ARCHIVED_COUNT + " = " + COLUMN_ARCHIVED_COUNT + " " + sign + " (" + conditions[2] + ")"
+                + " WHERE " + COLUMN_RSS_FEED + " IN (" + row + "." + RssItemTable.COLUMN_RSS_FEED + ", " + ALL_FEEDS + ");";
+    }
+
+    private String trigger(String suffix, String event, String statements) {
+        return "CREATE TRIGGER IF NOT EXISTS " + getName() + "_" + suffix + " " + event + " BEGIN " + statements + " END";
+    }
+}
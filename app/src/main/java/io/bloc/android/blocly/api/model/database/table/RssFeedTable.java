@@ -4,6 +4,9 @@ import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 
+import java.util.Arrays;
+import java.util.List;
+
 /**
  * Created by namlu on 01-Sep-16.
  */
@@ -36,11 +39,33 @@ public class RssFeedTable extends Table {
             return this;
         }
 
+        // ETag and Last-Modified validators of the most recent response, used for conditional requests
+        public Builder setETag(String eTag) {
+            values.put(COLUMN_ETAG, eTag);
+            return this;
+        }
+
+        public Builder setLastModified(String lastModified) {
+            values.put(COLUMN_LAST_MODIFIED, lastModified);
+            return this;
+        }
+
         // .insert() returns the row ID of newly inserted row, or -1 if error occurred
         @Override
         public long insert(SQLiteDatabase writableDB) {
             return writableDB.insert(NAME, null, values);
         }
+
+        // Only the columns which were set on this Builder are changed
+        @Override
+        public int update(SQLiteDatabase writableDB, long rowId) {
+            return writableDB.update(NAME, values, COLUMN_ID + " = ?", new String[] {String.valueOf(rowId)});
+        }
+
+        @Override
+        public ContentValues getValues() {
+            return values;
+        }
     }
 
     /*
@@ -64,26 +89,93 @@ public class RssFeedTable extends Table {
         return getString(cursor, COLUMN_FEED_URL);
     }
 
+    // Validators are null until the server has supplied them
+    public static String getETag(Cursor cursor) {
+        return getString(cursor, COLUMN_ETAG);
+    }
+
+    public static String getLastModified(Cursor cursor) {
+        return getString(cursor, COLUMN_LAST_MODIFIED);
+    }
+
+    // Positions of a feed Cursor's columns, looked up once when the Cursor is opened rather than for
+    //      every field of every row. Columns missing from the Cursor read as they do above
+    public static class FeedColumns {
+
+        private final int id;
+        private final int title;
+        private final int description;
+        private final int link;
+        private final int feedUrl;
+
+        public FeedColumns(Cursor cursor) {
+            id = cursor.getColumnIndex(COLUMN_ID);
+            title = cursor.getColumnIndex(COLUMN_TITLE);
+            description = cursor.getColumnIndex(COLUMN_DESCRIPTION);
+            link = cursor.getColumnIndex(COLUMN_LINK);
+            feedUrl = cursor.getColumnIndex(COLUMN_FEED_URL);
+        }
+
+        public long getRowId(Cursor cursor) {
+            return getLong(cursor, id);
+        }
+
+        public String getTitle(Cursor cursor) {
+            return getString(cursor, title);
+        }
+
+        public String getDescription(Cursor cursor) {
+            return getString(cursor, description);
+        }
+
+        public String getSiteURL(Cursor cursor) {
+            return getString(cursor, link);
+        }
+
+        public String getFeedUrl(Cursor cursor) {
+            return getString(cursor, feedUrl);
+        }
+    }
+
     // 55: Method to help detect whether a feed already exists on the database
-    // query(boolean distinct, String table, String[] columns, String selection, String[] selectionArgs,
-    //      String groupBy, String having, String orderBy, String limit)
+    // query(String table, String[] columns, String selection, String[] selectionArgs,
+    //      String groupBy, String having, String orderBy)
+    // Every column is read, the validators included. Rows carry their id, so DISTINCT could never
+    //      drop one and is left out
     public static Cursor fetchFeedWithURL(SQLiteDatabase readonlyDatabase, String feedURL) {
-        return readonlyDatabase.query(true, NAME, null, COLUMN_FEED_URL + " = ?", new String[] {feedURL},
-                null, null, null, null);
+        return readonlyDatabase.query(NAME, null, COLUMN_FEED_URL + " = ?", new String[] {feedURL},
+                null, null, null);
+    }
+
+    // Retrieves every subscribed feed, in the order they were added. The validators are only
+    //      needed when a feed is refreshed, so they are left out
+    public static Cursor fetchAllFeeds(SQLiteDatabase readonlyDatabase) {
+        return readonlyDatabase.query(NAME, FEED_PROJECTION, null, null, null, null, COLUMN_ID);
     }
 
-    private static final String NAME = "rss_feeds";
+    static final String NAME = "rss_feeds";
 
     private static final String COLUMN_LINK = "link";
     private static final String COLUMN_TITLE = "title";
     private static final String COLUMN_DESCRIPTION = "description";
     private static final String COLUMN_FEED_URL = "feed_url";
+    private static final String COLUMN_ETAG = "etag";
+    private static final String COLUMN_LAST_MODIFIED = "last_modified";
+
+    // Columns an RssFeed is built from
+    private static final String[] FEED_PROJECTION = {COLUMN_ID, COLUMN_LINK, COLUMN_TITLE, COLUMN_DESCRIPTION,
+            COLUMN_FEED_URL};
 
     @Override
     public String getName() {
         return "rss_feeds";
     }
 
+    @Override
+    protected String[] getProjection() {
+        return FEED_PROJECTION;
+    }
+
     // "id" is initialized as an INTEGER type and specified as the Primary Key
     // Providing a Primary Key column is required for SQLite tables.
     @Override
@@ -93,6 +185,27 @@ public class RssFeedTable extends Table {
                 + COLUMN_LINK + " TEXT,"
                 + COLUMN_TITLE + " TEXT,"
                 + COLUMN_DESCRIPTION + " TEXT,"
-                + COLUMN_FEED_URL + " TEXT)";
+                + COLUMN_FEED_URL + " TEXT,"
+                + COLUMN_ETAG + " TEXT,"
+                + COLUMN_LAST_MODIFIED + " TEXT)";
+    }
+
+    @Override
+    protected List<Migration> getMigrations() {
+        return Arrays.<Migration>asList(
+                // Version 2 stores the validators needed to make conditional requests
+                new Migration(2) {
+                    @Override
+                    public void migrate(SQLiteDatabase writableDatabase) {
+                        writableDatabase.execSQL("ALTER TABLE " + getName() + " ADD COLUMN " + COLUMN_ETAG + " TEXT");
+                        writableDatabase.execSQL("ALTER TABLE " + getName() + " ADD COLUMN " + COLUMN_LAST_MODIFIED + " TEXT");
+                    }
+                });
+    }
+
+    // fetchFeedWithURL() looks feeds up by their URL
+    @Override
+    public List<Index> getIndexDefinitions() {
+        return Arrays.asList(new Index("rss_feeds_feed_url", false, COLUMN_FEED_URL));
     }
 }
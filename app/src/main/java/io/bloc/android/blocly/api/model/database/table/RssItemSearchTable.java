@@ -0,0 +1,99 @@
+package io.bloc.android.blocly.api.model.database.table;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * RssItemSearchTable is a full-text index over the title and description of every RSS item. It is
+ * an FTS4 table whose content is rss_items itself, so the text is not stored twice, and triggers
+ * on rss_items keep the index in step with every insert, edit and delete.
+ */
+public class RssItemSearchTable extends Table {
+
+    // Builds the MATCH expression for what the user typed. Every word must appear, each as the
+    //      start of a word so results show up while the user is still typing. Words are reduced to
+    //      letters and digits and lower-cased, which keeps quotes and operators such as OR and NEAR
+    //      out of the expression. Returns null if nothing searchable was typed
+    static String matchExpression(String query, String column) {
+        List<String> terms = new ArrayList<String>();
+        for (String word : query.toLowerCase(Locale.US).split("[^\\p{L}\\p{N}]+")) {
+            if (word.length() > 0) {
+                terms.add((column == null ? "" : column + ":") + word + "*");
+            }
+        }
+        return terms.isEmpty() ? null : TextUtils.join(" ", terms);
+    }
+
+    // Retrieves the items matching query, those matching it within their title first, then newest
+    //      first. Returns at most limit items, after skipping offset of them, or null if the query
+    //      holds no words to search for
+    public static Cursor searchItems(SQLiteDatabase readonlyDatabase, String query, int limit, int offset) {
+        String match = matchExpression(query, null);
+        if (match == null) {
+            return null;
+        }
+        // Each subquery is evaluated once into a set of row ids, not once per item
+        String matchingIds = "SELECT docid FROM " + NAME + " WHERE " + NAME + " MATCH ?";
+        return readonlyDatabase.query(RssItemTable.NAME, RssItemTable.ITEM_PROJECTION,
+                COLUMN_ID + " IN (" + matchingIds + ")", new String[]{match, matchExpression(query, COLUMN_TITLE)},
+                null, null,
+                COLUMN_ID + " IN (" + matchingIds + ") DESC, " + RssItemTable.COLUMN_PUB_DATE + " DESC, "
+                        + COLUMN_ID + " DESC",
+                offset + "," + limit);
+    }
+
+    private static final String NAME = "rss_items_search";
+
+    // Named after the rss_items columns they index, as an external content table requires
+    private static final String COLUMN_TITLE = RssItemTable.COLUMN_TITLE;
+    private static final String COLUMN_DESCRIPTION = RssItemTable.COLUMN_DESCRIPTION;
+
+    @Override
+    public String getName() {
+        return "rss_items_search";
+    }
+
+    @Override
+    public String getCreateStatement() {
+        return "CREATE VIRTUAL TABLE " + getName() + " USING fts4(content=\"" + RssItemTable.NAME + "\", "
+                + COLUMN_TITLE + ", " + COLUMN_DESCRIPTION + ")";
+    }
+
+    @Override
+    protected List<Migration> getMigrations() {
+        return Arrays.<Migration>asList(
+                // Version 6 adds the index, built from the items already stored
+                new Migration(6) {
+                    @Override
+                    public void migrate(SQLiteDatabase writableDatabase) {
+                        writableDatabase.execSQL(getCreateStatement());
+                        writableDatabase.execSQL("INSERT INTO " + getName() + " (" + getName() + ") VALUES ('rebuild')");
+                    }
+                });
+    }
+
+    // The index holds a copy of each item's text under the item's row id. The old text is removed
+    //      before rss_items changes, while FTS4 can still read it there. Flag changes leave it alone
+    @Override
+    protected List<String> getTriggerStatements() {
+        String insertNew = "INSERT INTO " + getName() + " (docid, " + COLUMN_TITLE + ", " + COLUMN_DESCRIPTION
+                + ") VALUES (new." + COLUMN_ID + ", new." + COLUMN_TITLE + ", new." + COLUMN_DESCRIPTION + ");";
+        String deleteOld = "DELETE FROM " + getName() + " WHERE docid = old." + COLUMN_ID + ";";
+        String textColumns = COLUMN_TITLE + ", " + COLUMN_DESCRIPTION;
+        return Arrays.asList(
+                trigger("ai", "AFTER INSERT ON " + RssItemTable.NAME, insertNew),
+                trigger("bu", "BEFORE UPDATE OF " + textColumns + " ON " + RssItemTable.NAME, deleteOld),
+                trigger("au", "AFTER UPDATE OF " + textColumns + " ON " + RssItemTable.NAME, insertNew),
+                trigger("bd", "BEFORE DELETE ON " + RssItemTable.NAME, deleteOld));
+    }
+
+    private String trigger(String suffix, String event, String statement) {
+        return "CREATE TRIGGER IF NOT EXISTS " + getName() + "_" + suffix + " " + event + " BEGIN " + statement + " END";
+    }
+}
@@ -2,7 +2,19 @@ package io.bloc.android.blocly.api.model.database.table;
 
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.text.TextUtils;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Created by namlu on 01-Sep-16.
@@ -54,11 +66,33 @@ public class RssItemTable extends Table {
             return this;
         }
 
+        // Identifies the item within its feed, see itemKeyOf()
+        public Builder setItemKey(String itemKey) {
+            values.put(COLUMN_ITEM_KEY, itemKey);
+            return this;
+        }
+
+        public Builder setContentHash(int contentHash) {
+            values.put(COLUMN_CONTENT_HASH, contentHash);
+            return this;
+        }
+
         // .insert() returns the row ID of newly inserted row, or -1 if error occurred
         @Override
         public long insert(SQLiteDatabase writableDB) {
             return writableDB.insert(RssItemTable.NAME, null, values);
         }
+
+        @Override
+        public int update(SQLiteDatabase writableDB, long rowId) {
+            return writableDB.update(RssItemTable.NAME, values, COLUMN_ID + " = ?",
+                    new String[] {String.valueOf(rowId)});
+        }
+
+        @Override
+        public ContentValues getValues() {
+            return values;
+        }
     }
 
     /*
@@ -102,31 +136,384 @@ public class RssItemTable extends Table {
         return getBoolean(cursor, COLUMN_ARCHIVED);
     }
 
+    public static boolean getRead(Cursor cursor) {
+        return getBoolean(cursor, COLUMN_READ);
+    }
+
+    // Positions of an item Cursor's columns, looked up once when the Cursor is opened rather than for
+    //      every field of every row. Columns missing from the Cursor read as they do above
+    public static class ItemColumns {
+
+        private final int id;
+        private final int guid;
+        private final int title;
+        private final int description;
+        private final int link;
+        private final int enclosure;
+        private final int rssFeed;
+        private final int pubDate;
+        private final int favorite;
+        private final int archived;
+        private final int read;
+        private final int itemKey;
+        private final int contentHash;
+
+        public ItemColumns(Cursor cursor) {
+            id = cursor.getColumnIndex(COLUMN_ID);
+            guid = cursor.getColumnIndex(COLUMN_GUID);
+            title = cursor.getColumnIndex(COLUMN_TITLE);
+            description = cursor.getColumnIndex(COLUMN_DESCRIPTION);
+            link = cursor.getColumnIndex(COLUMN_LINK);
+            enclosure = cursor.getColumnIndex(COLUMN_ENCLOSURE);
+            rssFeed = cursor.getColumnIndex(COLUMN_RSS_FEED);
+            pubDate = cursor.getColumnIndex(COLUMN_PUB_DATE);
+            favorite = cursor.getColumnIndex(COLUMN_FAVORITE);
+            archived = cursor.getColumnIndex(COLUMN_ARCHIVED);
+            read = cursor.getColumnIndex(COLUMN_READ);
+            itemKey = cursor.getColumnIndex(COLUMN_ITEM_KEY);
+            contentHash = cursor.getColumnIndex(COLUMN_CONTENT_HASH);
+        }
+
+        public long getRowId(Cursor cursor) {
+            return getLong(cursor, id);
+        }
+
+        public String getGUID(Cursor cursor) {
+            return getString(cursor, guid);
+        }
+
+        public String getTitle(Cursor cursor) {
+            return getString(cursor, title);
+        }
+
+        public String getDescription(Cursor cursor) {
+            return getString(cursor, description);
+        }
+
+        public String getLink(Cursor cursor) {
+            return getString(cursor, link);
+        }
+
+        public String getEnclosure(Cursor cursor) {
+            return getString(cursor, enclosure);
+        }
+
+        public long getRssFeedId(Cursor cursor) {
+            return getLong(cursor, rssFeed);
+        }
+
+        public long getPubDate(Cursor cursor) {
+            return getLong(cursor, pubDate);
+        }
+
+        public boolean getFavorite(Cursor cursor) {
+            return getLong(cursor, favorite) == 1l;
+        }
+
+        public boolean getArchived(Cursor cursor) {
+            return getLong(cursor, archived) == 1l;
+        }
+
+        public boolean getRead(Cursor cursor) {
+            return getLong(cursor, read) == 1l;
+        }
+
+        public String getItemKey(Cursor cursor) {
+            return getString(cursor, itemKey);
+        }
+
+        public long getContentHash(Cursor cursor) {
+            return getLong(cursor, contentHash);
+        }
+    }
+
+    public static String getItemKey(Cursor cursor) {
+        return getString(cursor, COLUMN_ITEM_KEY);
+    }
+
+    public static long getContentHash(Cursor cursor) {
+        return getLong(cursor, COLUMN_CONTENT_HASH);
+    }
+
+    // Items are identified within their feed by their guid. Items without one fall back to a hash of
+    //      their link, which keeps the unique index small. Returns null for items with neither,
+    //      these cannot be told apart and are always inserted
+    public static String itemKeyOf(String guid, String link) {
+        if (guid != null && guid.trim().length() > 0) {
+            return guid.trim();
+        }
+        if (link != null && link.trim().length() > 0) {
+            return LINK_KEY_PREFIX + sha1(link.trim());
+        }
+        return null;
+    }
+
+    private static String sha1(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(value.getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android device provides SHA-1
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     // 55: fetchItemsForFeed() method retrieves every item associated with a feed
+    // Rows are unique by their id, so the query is not DISTINCT, which would make SQLite sort
+    //      every row of the feed to compare them
     public static Cursor fetchItemsForFeed(SQLiteDatabase readonlyDatabase, long feedRowId) {
-        return readonlyDatabase.query(true, NAME, null, COLUMN_RSS_FEED + " = ?",
+        return readonlyDatabase.query(NAME, ITEM_PROJECTION, COLUMN_RSS_FEED + " = ?",
                 new String[]{String.valueOf(feedRowId)},
-                null, null, COLUMN_PUB_DATE + " DESC", null);
+                null, null, COLUMN_PUB_DATE + " DESC, " + COLUMN_ID + " DESC");
     }
 
-    private static final String NAME = "rss_items";
+    // Retrieves a feed's newest items, at most limit of them
+    public static Cursor fetchFirstItemPage(SQLiteDatabase readonlyDatabase, long feedRowId, int limit) {
+        return readonlyDatabase.query(NAME, ITEM_PROJECTION, COLUMN_RSS_FEED + " = ?",
+                new String[]{String.valueOf(feedRowId)},
+                null, null, COLUMN_PUB_DATE + " DESC, " + COLUMN_ID + " DESC", String.valueOf(limit));
+    }
+
+    // Retrieves the items which follow the given item in a feed's list, at most limit of them.
+    //      The page starts from the position of the last item read, not from an offset, so the
+    //      index takes it straight there however deep into the list it is, and items inserted
+    //      above it do not shift the page
+    public static Cursor fetchItemPageAfter(SQLiteDatabase readonlyDatabase, long feedRowId,
+                                            long lastPubDate, long lastRowId, int limit) {
+        String pubDate = String.valueOf(lastPubDate);
+        return readonlyDatabase.query(NAME, ITEM_PROJECTION,
+                COLUMN_RSS_FEED + " = ? AND " + COLUMN_PUB_DATE + " <= ? AND (" + COLUMN_PUB_DATE + " < ? OR "
+                        + COLUMN_ID + " < ?)",
+                new String[]{String.valueOf(feedRowId), pubDate, pubDate, String.valueOf(lastRowId)},
+                null, null, COLUMN_PUB_DATE + " DESC, " + COLUMN_ID + " DESC", String.valueOf(limit));
+    }
+
+    // Retrieves the items with the given row ids, newest first. Row ids are numbers, so they are
+    //      written into the query rather than bound, which keeps large sets under SQLite's
+    //      limit on bound arguments
+    public static Cursor fetchItemsWithIds(SQLiteDatabase readonlyDatabase, Collection<Long> itemRowIds) {
+        return readonlyDatabase.query(NAME, ITEM_PROJECTION,
+                COLUMN_ID + " IN (" + TextUtils.join(",", itemRowIds) + ")", null,
+                null, null, COLUMN_PUB_DATE + " DESC, " + COLUMN_ID + " DESC");
+    }
+
+    // Retrieves the pub_date of a feed's newest items, read straight from the feed's pub_date index
+    public static Cursor fetchRecentPubDates(SQLiteDatabase readonlyDatabase, long feedRowId, int limit) {
+        return readonlyDatabase.query(NAME, new String[]{COLUMN_PUB_DATE},
+                COLUMN_RSS_FEED + " = ?", new String[]{String.valueOf(feedRowId)},
+                null, null, COLUMN_PUB_DATE + " DESC", String.valueOf(limit));
+    }
+
+    // Retrieves only the item key and content hash of every item associated with a feed, enough
+    //      to tell which downloaded items are already stored and unchanged
+    public static Cursor fetchItemKeysForFeed(SQLiteDatabase readonlyDatabase, long feedRowId) {
+        return readonlyDatabase.query(NAME, new String[]{COLUMN_ITEM_KEY, COLUMN_CONTENT_HASH},
+                COLUMN_RSS_FEED + " = ?", new String[]{String.valueOf(feedRowId)},
+                null, null, null);
+    }
+
+    // Removes every item associated with a feed and returns the number of rows removed
+    public static int deleteItemsForFeed(SQLiteDatabase writableDatabase, long feedRowId) {
+        return writableDatabase.delete(NAME, COLUMN_RSS_FEED + " = ?", new String[]{String.valueOf(feedRowId)});
+    }
+
+    // Retrieves the row id and feed of a feed's items which lie beyond its newest keepCount items, or
+    //      were published before publishedBefore, oldest first and at most limit of them. Favorites
+    //      are never returned. Pass -1 for keepCount and Long.MIN_VALUE for publishedBefore to leave
+    //      either limit out. Both walk the feed's pub_date index, from either end
+    public static Cursor fetchExpiredItems(SQLiteDatabase database, long feedRowId, int keepCount,
+                                           long publishedBefore, int limit) {
+        return fetchExpiredItems(database, feedRowId, keepCount, publishedBefore, Collections.<Long>emptyList(),
+                limit);
+    }
+
+    // As above, also leaving out the items with row ids in keptRowIds, which then count towards the
+    //      newest keepCount items like favorites do
+    public static Cursor fetchExpiredItems(SQLiteDatabase database, long feedRowId, int keepCount,
+                                           long publishedBefore, Collection<Long> keptRowIds, int limit) {
+        String feed = String.valueOf(feedRowId);
+        return database.query(NAME, new String[]{COLUMN_ID, COLUMN_RSS_FEED},
+                COLUMN_RSS_FEED + " = ? AND " + COLUMN_FAVORITE + " = 0" + excluding(keptRowIds) + " AND ("
+                        + COLUMN_PUB_DATE + " < ? OR "
+                        + COLUMN_ID + " NOT IN (SELECT " + COLUMN_ID + " FROM " + NAME + " WHERE "
+                        + COLUMN_RSS_FEED + " = ? ORDER BY " + COLUMN_PUB_DATE + " DESC, " + COLUMN_ID
+                        + " DESC LIMIT ?))",
+                new String[]{feed, String.valueOf(publishedBefore), feed, String.valueOf(keepCount)},
+                null, null, COLUMN_PUB_DATE + ", " + COLUMN_ID, String.valueOf(limit));
+    }
+
+    // Retrieves the row id and feed of the oldest items of every feed, favorites aside, at most limit
+    //      of them. This sorts the whole table, it is meant for occasional clean-ups only
+    public static Cursor fetchOldestItems(SQLiteDatabase database, int limit) {
+        return fetchOldestItems(database, Collections.<Long>emptyList(), limit);
+    }
+
+    // As above, also leaving out the items with row ids in keptRowIds
+    public static Cursor fetchOldestItems(SQLiteDatabase database, Collection<Long> keptRowIds, int limit) {
+        return database.query(NAME, new String[]{COLUMN_ID, COLUMN_RSS_FEED},
+                COLUMN_FAVORITE + " = 0" + excluding(keptRowIds),
+                null, null, null, COLUMN_PUB_DATE + ", " + COLUMN_ID, String.valueOf(limit));
+    }
+
+    // A condition leaving out the given row ids, written into the statement as deleteItems() does
+    private static String excluding(Collection<Long> itemRowIds) {
+        if (itemRowIds.isEmpty()) {
+            return "";
+        }
+        return " AND " + COLUMN_ID + " NOT IN (" + TextUtils.join(",", itemRowIds) + ")";
+    }
+
+    // Removes the items with the given row ids, unless they have become favorites, and returns the
+    //      number of rows removed. Row ids are written into the statement as fetchItemsWithIds() does
+    public static int deleteItems(SQLiteDatabase writableDatabase, Collection<Long> itemRowIds) {
+        return writableDatabase.delete(NAME, COLUMN_ID + " IN (" + TextUtils.join(",", itemRowIds) + ") AND "
+                + COLUMN_FAVORITE + " = 0", null);
+    }
+
+    // Each of these sets one flag on every item with the given row ids and returns the number of rows
+    //      changed, so a batch of toggles costs a single statement per flag and value
+    public static int setFavorite(SQLiteDatabase writableDatabase, Collection<Long> itemRowIds, boolean favorite) {
+        return setFlag(writableDatabase, COLUMN_FAVORITE, itemRowIds, favorite);
+    }
+
+    public static int setArchived(SQLiteDatabase writableDatabase, Collection<Long> itemRowIds, boolean archived) {
+        return setFlag(writableDatabase, COLUMN_ARCHIVED, itemRowIds, archived);
+    }
+
+    public static int setRead(SQLiteDatabase writableDatabase, Collection<Long> itemRowIds, boolean read) {
+        return setFlag(writableDatabase, COLUMN_READ, itemRowIds, read);
+    }
+
+    // Rows already holding the value are skipped rather than rewritten
+    private static int setFlag(SQLiteDatabase writableDatabase, String column, Collection<Long> itemRowIds,
+                               boolean value) {
+        ContentValues values = new ContentValues();
+        values.put(column, value ? 1 : 0);
+        return writableDatabase.update(NAME, values, COLUMN_ID + " IN (" + TextUtils.join(",", itemRowIds) + ") AND "
+                + column + " != " + (value ? 1 : 0), null);
+    }
+
+    // Inserts or updates every Builder, matching them to stored items on their feed and item key,
+    //      all within one transaction. Items whose content hash is unchanged are left alone, edited
+    //      items are updated in place so their favorite and archived flags survive. The pub_date of
+    //      a stored item is never changed, it keeps the item's position in the list.
+    public UpsertResult upsertItems(SQLiteDatabase writableDB, List<Builder> builders) {
+        UpsertResult result = new UpsertResult();
+        writableDB.beginTransactionNonExclusive();
+        SQLiteStatement insertStatement = writableDB.compileStatement(
+                "INSERT OR IGNORE INTO " + NAME + " (" + TextUtils.join(",", getBulkInsertColumns())
+                        + ") VALUES (" + placeholders(getBulkInsertColumns().length) + ")");
+        SQLiteStatement updateStatement = writableDB.compileStatement(
+                "UPDATE " + NAME + " SET " + TextUtils.join(" = ?,", UPSERT_UPDATE_COLUMNS) + " = ?"
+                        + " WHERE " + COLUMN_RSS_FEED + " = ? AND " + COLUMN_ITEM_KEY + " = ?"
+                        + " AND " + COLUMN_CONTENT_HASH + " IS NOT ?");
+        SQLiteStatement rowIdStatement = writableDB.compileStatement(
+                "SELECT " + COLUMN_ID + " FROM " + NAME
+                        + " WHERE " + COLUMN_RSS_FEED + " = ? AND " + COLUMN_ITEM_KEY + " = ?");
+        try {
+            for (Builder builder : builders) {
+                // Most items reaching this point are new, so attempt the insert first.
+                //      executeInsert() returns -1 when the unique index ignored the row
+                insertStatement.clearBindings();
+                bindColumns(insertStatement, 1, builder.values, getBulkInsertColumns());
+                long rowId = insertStatement.executeInsert();
+                if (rowId != -1l) {
+                    result.insertedIds.add(rowId);
+                    result.insertedPubDates.add(builder.values.getAsLong(COLUMN_PUB_DATE));
+                    continue;
+                }
+
+                updateStatement.clearBindings();
+                bindColumns(updateStatement, 1, builder.values, UPSERT_UPDATE_COLUMNS);
+                bindColumns(updateStatement, UPSERT_UPDATE_COLUMNS.length + 1, builder.values,
+                        COLUMN_RSS_FEED, COLUMN_ITEM_KEY, COLUMN_CONTENT_HASH);
+                if (updateStatement.executeUpdateDelete() == 0) {
+                    result.unchangedCount++;
+                    continue;
+                }
+                rowIdStatement.clearBindings();
+                bindColumns(rowIdStatement, 1, builder.values, COLUMN_RSS_FEED, COLUMN_ITEM_KEY);
+                result.updatedIds.add(rowIdStatement.simpleQueryForLong());
+            }
+            writableDB.setTransactionSuccessful();
+        } finally {
+            insertStatement.close();
+            updateStatement.close();
+            rowIdStatement.close();
+            writableDB.endTransaction();
+        }
+        return result;
+    }
+
+    // Reports what upsertItems() did with each Builder
+    public static class UpsertResult {
+        public final List<Long> insertedIds = new ArrayList<Long>();
+        // The pub_date of each inserted item, in the same order as insertedIds
+        public final List<Long> insertedPubDates = new ArrayList<Long>();
+        public final List<Long> updatedIds = new ArrayList<Long>();
+        public int unchangedCount;
+    }
+
+    // Package-private for RssItemSearchTable, which indexes this table, and ItemCountTable, which
+    //      counts its items
+    static final String NAME = "rss_items";
 
     private static final String COLUMN_LINK = "link";
-    private static final String COLUMN_TITLE = "title";
-    private static final String COLUMN_DESCRIPTION = "description";
+    static final String COLUMN_TITLE = "title";
+    static final String COLUMN_DESCRIPTION = "description";
     private static final String COLUMN_GUID = "guid";
-    private static final String COLUMN_PUB_DATE = "pub_date";
+    static final String COLUMN_PUB_DATE = "pub_date";
     private static final String COLUMN_ENCLOSURE = "enclosure";
     private static final String COLUMN_MIME_TYPE = "mime_type";
-    private static final String COLUMN_RSS_FEED = "rss_feed";
-    private static final String COLUMN_FAVORITE = "is_favorite";
-    private static final String COLUMN_ARCHIVED = "is_archived";
+    static final String COLUMN_RSS_FEED = "rss_feed";
+    static final String COLUMN_FAVORITE = "is_favorite";
+    static final String COLUMN_ARCHIVED = "is_archived";
+    static final String COLUMN_READ = "is_read";
+    private static final String COLUMN_ITEM_KEY = "item_key";
+    private static final String COLUMN_CONTENT_HASH = "content_hash";
+
+    private static final String INDEX_FEED_ITEM_KEY = "rss_items_feed_item_key";
+    // Replaced by INDEX_FEED_PUB_DATE_ID in version 5
+    private static final String INDEX_FEED_PUB_DATE = "rss_items_feed_pub_date";
+    private static final String INDEX_FEED_PUB_DATE_ID = "rss_items_feed_pub_date_id";
+
+    // Columns an RssItem is built from. The MIME type, item key and content hash are only used
+    //      when storing items, so the queries behind lists leave them out
+    static final String[] ITEM_PROJECTION = {COLUMN_ID, COLUMN_GUID, COLUMN_TITLE, COLUMN_DESCRIPTION,
+            COLUMN_LINK, COLUMN_ENCLOSURE, COLUMN_RSS_FEED, COLUMN_PUB_DATE, COLUMN_FAVORITE, COLUMN_ARCHIVED,
+            COLUMN_READ};
+
+    // Prefix of item keys derived from an item's link, it keeps them apart from guids
+    private static final String LINK_KEY_PREFIX = "link:";
+
+    // Columns an upsert overwrites on an edited item
+    private static final String[] UPSERT_UPDATE_COLUMNS = {COLUMN_LINK, COLUMN_TITLE, COLUMN_DESCRIPTION,
+            COLUMN_GUID, COLUMN_ENCLOSURE, COLUMN_MIME_TYPE, COLUMN_CONTENT_HASH};
 
     @Override
     public String getName() {
         return "rss_items";
     }
 
+    @Override
+    protected String[] getProjection() {
+        return ITEM_PROJECTION;
+    }
+
+    // is_favorite, is_archived and is_read are left out so new items keep their defaults
+    @Override
+    protected String[] getBulkInsertColumns() {
+        return new String[] {COLUMN_LINK, COLUMN_TITLE, COLUMN_DESCRIPTION, COLUMN_GUID,
+                COLUMN_PUB_DATE, COLUMN_ENCLOSURE, COLUMN_MIME_TYPE, COLUMN_RSS_FEED, COLUMN_ITEM_KEY,
+                COLUMN_CONTENT_HASH};
+    }
+
     @Override
     public String getCreateStatement() {
         return "CREATE TABLE " + getName() + " ("
@@ -143,6 +530,83 @@ public class RssItemTable extends Table {
                 // Columns may be created with default values
                 // Both COLUMN_FAVORITE and COLUMN_ARCHIVE are initialized to 0, interpreted as 'false'
                 + COLUMN_FAVORITE + " INTEGER DEFAULT 0,"
-                + COLUMN_ARCHIVED + " INTEGER DEFAULT 0)";
+                + COLUMN_ARCHIVED + " INTEGER DEFAULT 0,"
+                + COLUMN_READ + " INTEGER DEFAULT 0,"
+                + COLUMN_ITEM_KEY + " TEXT,"
+                + COLUMN_CONTENT_HASH + " INTEGER)";
+    }
+
+    @Override
+    protected List<Migration> getMigrations() {
+        return Arrays.<Migration>asList(
+                // Version 3 identifies each item by its feed and item key
+                new Migration(3) {
+                    @Override
+                    public void migrate(SQLiteDatabase writableDatabase) {
+                        addItemKeys(writableDatabase);
+                    }
+                },
+                // Version 5 orders items of the same pub_date by row id, in the index as well
+                new Migration(5) {
+                    @Override
+                    public void migrate(SQLiteDatabase writableDatabase) {
+                        writableDatabase.execSQL("DROP INDEX IF EXISTS " + INDEX_FEED_PUB_DATE);
+                    }
+                },
+                // Version 7 records which items have been read
+                new Migration(7) {
+                    @Override
+                    public void migrate(SQLiteDatabase writableDatabase) {
+                        writableDatabase.execSQL("ALTER TABLE " + getName() + " ADD COLUMN " + COLUMN_READ
+                                + " INTEGER DEFAULT 0");
+                    }
+                });
+    }
+
+    // The unique index makes each item key appear once per feed, the second serves
+    //      fetchItemsForFeed() and each page of items without a separate sort
+    @Override
+    public List<Index> getIndexDefinitions() {
+        return Arrays.asList(
+                new Index(INDEX_FEED_ITEM_KEY, true, COLUMN_RSS_FEED + ", " + COLUMN_ITEM_KEY),
+                new Index(INDEX_FEED_PUB_DATE_ID, false,
+                        COLUMN_RSS_FEED + ", " + COLUMN_PUB_DATE + " DESC, " + COLUMN_ID + " DESC"));
+    }
+
+    private void addItemKeys(SQLiteDatabase writableDatabase) {
+        writableDatabase.execSQL("ALTER TABLE " + getName() + " ADD COLUMN " + COLUMN_ITEM_KEY + " TEXT");
+        writableDatabase.execSQL("ALTER TABLE " + getName() + " ADD COLUMN " + COLUMN_CONTENT_HASH + " INTEGER");
+
+        // Item keys are computed in Java, SQLite has no SHA-1
+        Cursor cursor = writableDatabase.query(getName(), new String[]{COLUMN_ID, COLUMN_GUID, COLUMN_LINK},
+                null, null, null, null, null);
+        SQLiteStatement keyStatement = writableDatabase.compileStatement("UPDATE " + getName()
+                + " SET " + COLUMN_ITEM_KEY + " = ? WHERE " + COLUMN_ID + " = ?");
+        try {
+            while (cursor.moveToNext()) {
+                DatabaseUtils.bindObjectToProgram(keyStatement, 1, itemKeyOf(getGUID(cursor), getLink(cursor)));
+                keyStatement.bindLong(2, getRowId(cursor));
+                keyStatement.executeUpdateDelete();
+            }
+        } finally {
+            keyStatement.close();
+            cursor.close();
+        }
+
+        // Earlier versions stored every item again on each refresh. Keep the oldest copy of each
+        //      item, along with any flag set on one of its copies, before the unique index is created
+        writableDatabase.execSQL("CREATE TEMP TABLE merged_items (" + COLUMN_ID + " INTEGER PRIMARY KEY, "
+                + COLUMN_FAVORITE + " INTEGER, " + COLUMN_ARCHIVED + " INTEGER)");
+        writableDatabase.execSQL("INSERT INTO merged_items SELECT MIN(" + COLUMN_ID + "), MAX(" + COLUMN_FAVORITE
+                + "), MAX(" + COLUMN_ARCHIVED + ") FROM " + getName() + " WHERE " + COLUMN_ITEM_KEY
+                + " IS NOT NULL GROUP BY " + COLUMN_RSS_FEED + ", " + COLUMN_ITEM_KEY);
+        writableDatabase.execSQL("DELETE FROM " + getName() + " WHERE " + COLUMN_ITEM_KEY + " IS NOT NULL AND "
+                + COLUMN_ID + " NOT IN (SELECT " + COLUMN_ID + " FROM merged_items)");
+        String mergedItem = " FROM merged_items WHERE merged_items." + COLUMN_ID + " = " + getName() + "." + COLUMN_ID;
+        writableDatabase.execSQL("UPDATE " + getName() + " SET "
+                + COLUMN_FAVORITE + " = (SELECT " + COLUMN_FAVORITE + mergedItem + "), "
+                + COLUMN_ARCHIVED + " = (SELECT " + COLUMN_ARCHIVED + mergedItem + ")"
+                + " WHERE " + COLUMN_ITEM_KEY + " IS NOT NULL");
+        writableDatabase.execSQL("DROP TABLE merged_items");
     }
 }
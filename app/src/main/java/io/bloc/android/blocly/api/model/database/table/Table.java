@@ -1,18 +1,79 @@
 package io.bloc.android.blocly.api.model.database.table;
 
+import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteProgram;
+import android.database.sqlite.SQLiteStatement;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Created by namlu on 01-Sep-16.
  */
 public abstract class Table {
 
+    private static String TAG = Table.class.getSimpleName();
+
     // Establish a Builder pattern for the class
     public static interface Builder {
         // each class implementing Builder must be capable of inserting its data into a
         //      SQLiteDatabase object and return the row identifier of the new object
         public long insert(SQLiteDatabase writableDB);
+
+        // Writes the Builder's values over the row with the given id and returns the number
+        //      of rows affected
+        public int update(SQLiteDatabase writableDB, long rowId);
+
+        // The values set on the Builder so far, keyed by column name
+        public ContentValues getValues();
+    }
+
+    // A single step of a Table's schema history, it brings the table from the previous database
+    //      version up to getVersion()
+    public static abstract class Migration {
+
+        private final int version;
+
+        public Migration(int version) {
+            this.version = version;
+        }
+
+        public int getVersion() {
+            return version;
+        }
+
+        public abstract void migrate(SQLiteDatabase writableDatabase);
+    }
+
+    // Describes a secondary index. Indexes are created after the tables on a new database, and after
+    //      every Migration when upgrading, so they may cover columns which migrations add
+    public static class Index {
+
+        private final String name;
+        private final boolean unique;
+        // Column list as written within the parentheses of CREATE INDEX, e.g. "rss_feed, pub_date DESC"
+        private final String columns;
+
+        public Index(String name, boolean unique, String columns) {
+            this.name = name;
+            this.unique = unique;
+            this.columns = columns;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getCreateStatement(String tableName) {
+            return "CREATE " + (unique ? "UNIQUE " : "") + "INDEX IF NOT EXISTS " + name
+                    + " ON " + tableName + " (" + columns + ")";
+        }
     }
 
     // Each table must possess an id column
@@ -23,17 +84,131 @@ public abstract class Table {
 
     public abstract String getCreateStatement();
 
-    // Each Table is responsible for executing its own upgrades
-    public void onUpgrade(SQLiteDatabase writableDatabase, int oldVersion, int newVersion) {
-        // Nothing
+    // Columns written by bulkInsert(), in the order they are bound. Tables which return null
+    //      insert each Builder on its own instead
+    protected String[] getBulkInsertColumns() {
+        return null;
+    }
+
+    // Each Table is responsible for its own upgrades. Migrations are listed in ascending order of
+    //      version, the create statement must always describe the latest version
+    protected List<Migration> getMigrations() {
+        return Collections.emptyList();
+    }
+
+    public List<Index> getIndexDefinitions() {
+        return Collections.emptyList();
+    }
+
+    // CREATE TRIGGER statements which keep this Table in step with others. They are created after
+    //      every table and index, so they may refer to any table
+    protected List<String> getTriggerStatements() {
+        return Collections.emptyList();
+    }
+
+    // Columns read by fetchRow(), or null for every column. Tables with bookkeeping columns their
+    //      models never use leave those out
+    protected String[] getProjection() {
+        return null;
+    }
+
+    // Runs the Migrations which bring this Table up to version, if any
+    public void migrate(SQLiteDatabase writableDatabase, int version) {
+        for (Migration migration : getMigrations()) {
+            if (migration.getVersion() == version) {
+                migration.migrate(writableDatabase);
+            }
+        }
+    }
+
+    // Creates every index which does not exist yet
+    public void createIndexes(SQLiteDatabase writableDatabase) {
+        for (Index index : getIndexDefinitions()) {
+            writableDatabase.execSQL(index.getCreateStatement(getName()));
+        }
+    }
+
+    // Creates every trigger which does not exist yet
+    public void createTriggers(SQLiteDatabase writableDatabase) {
+        for (String triggerStatement : getTriggerStatements()) {
+            writableDatabase.execSQL(triggerStatement);
+        }
     }
 
     // 54: Returns a Cursor object, which points to a specific row for the given rowId
     public Cursor fetchRow(SQLiteDatabase readOnlyDatabase, long rowId) {
-        // query(boolean distinct, String table, String[] columns, String selection,
-        //      String[] selectionArgs, String groupBy, String having, String orderBy, String limit)
-        return readOnlyDatabase.query(true, getName(), null, COLUMN_ID + " = ?",
-                new String[] {String.valueOf(rowId)}, null, null, null, null);
+        // query(String table, String[] columns, String selection, String[] selectionArgs,
+        //      String groupBy, String having, String orderBy)
+        // The id is the primary key, so at most one row matches and DISTINCT would only add a sort
+        return readOnlyDatabase.query(getName(), getProjection(), COLUMN_ID + " = ?",
+                new String[] {String.valueOf(rowId)}, null, null, null);
+    }
+
+    // Inserts every Builder within a single transaction, reusing one compiled statement for all rows.
+    //      Returns the row id of each new row in the order of builders, or -1 for rows which broke a
+    //      constraint. Those rows are skipped, the others are still inserted.
+    //      Columns missing from a Builder are written as NULL rather than the column's default.
+    public long[] bulkInsert(SQLiteDatabase writableDB, List<? extends Builder> builders) {
+        long[] rowIds = new long[builders.size()];
+        String[] columns = getBulkInsertColumns();
+
+        writableDB.beginTransactionNonExclusive();
+        try {
+            if (columns == null) {
+                for (int i = 0; i < rowIds.length; i++) {
+                    rowIds[i] = builders.get(i).insert(writableDB);
+                }
+            } else {
+                SQLiteStatement statement = writableDB.compileStatement(bulkInsertStatement(columns));
+                try {
+                    for (int i = 0; i < rowIds.length; i++) {
+                        ContentValues values = builders.get(i).getValues();
+                        statement.clearBindings();
+                        bindColumns(statement, 1, values, columns);
+                        try {
+                            rowIds[i] = statement.executeInsert();
+                        } catch (SQLiteConstraintException e) {
+                            // As SQLiteDatabase.insert() does, the failed row is skipped and the others kept
+                            Log.e(TAG, "Row not inserted into " + getName(), e);
+                            rowIds[i] = -1;
+                        }
+                    }
+                } finally {
+                    statement.close();
+                }
+            }
+            writableDB.setTransactionSuccessful();
+        } finally {
+            writableDB.endTransaction();
+        }
+        return rowIds;
+    }
+
+    private String bulkInsertStatement(String[] columns) {
+        return "INSERT INTO " + getName() + " (" + TextUtils.join(",", columns) + ") VALUES ("
+                + placeholders(columns.length) + ")";
+    }
+
+    // Binds the value of each column in turn, starting at firstIndex. Bind indexes start at 1
+    protected static void bindColumns(SQLiteProgram program, int firstIndex, ContentValues values,
+                                      String... columns) {
+        for (int i = 0; i < columns.length; i++) {
+            DatabaseUtils.bindObjectToProgram(program, firstIndex + i, values.get(columns[i]));
+        }
+    }
+
+    // Returns "?,?,...,?" with count placeholders
+    protected static String placeholders(int count) {
+        StringBuilder placeholders = new StringBuilder(count * 2);
+        for (int i = 0; i < count; i++) {
+            placeholders.append(i == 0 ? "?" : ",?");
+        }
+        return placeholders.toString();
+    }
+
+    // Deletes the row with the given rowId and returns the number of rows removed
+    public int deleteRow(SQLiteDatabase writableDatabase, long rowId) {
+        return writableDatabase.delete(getName(), COLUMN_ID + " = ?", new String[] {String.valueOf(rowId)});
     }
 
     // 55: Returns a row id under the column named "id"
@@ -43,8 +218,11 @@ public abstract class Table {
 
     // 54: Returns a String object for the specified column parameter
     protected static String getString(Cursor cursor, String column) {
-        int columnIndex = cursor.getColumnIndex(column);
+        return getString(cursor, cursor.getColumnIndex(column));
+    }
 
+    // Returns the String at a column index found earlier
+    protected static String getString(Cursor cursor, int columnIndex) {
         // Verify whether the column is present in the Cursor before recovering its respective data
         if (columnIndex == -1) {
             return "";
@@ -54,8 +232,11 @@ public abstract class Table {
 
     // 54: Returns a Long object for the specified column parameter
     protected static long getLong(Cursor cursor, String column) {
-        int columnIndex = cursor.getColumnIndex(column);
+        return getLong(cursor, cursor.getColumnIndex(column));
+    }
 
+    // Returns the long at a column index found earlier
+    protected static long getLong(Cursor cursor, int columnIndex) {
         // Verify whether the column is present in the Cursor before recovering its respective data
         if (columnIndex == -1) {
             return -1l;
@@ -0,0 +1,342 @@
+package io.bloc.android.blocly.api.network;
+
+import android.util.Xml;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+
+/**
+ * FeedPullParser reads an RSS or Atom document one event at a time instead of building a DOM tree.
+ * Each <item>...</item>, or Atom <entry>...</entry>, is handed to an ItemHandler as soon as its
+ * closing tag has been read, so only the item currently being parsed is held in memory.
+ */
+public class FeedPullParser {
+
+    // Receives every item in the order it appears within the feed
+    public static interface ItemHandler {
+        // Return false to stop parsing, the remainder of the stream is left unread
+        public boolean onItem(GetFeedsNetworkRequest.ItemResponse itemResponse);
+    }
+
+    // Identifies items which have already been stored, so they need not be extracted again
+    public static interface ItemFilter {
+        // guid and link are the raw values of the item's tags, either may be null. contentHash is
+        // the ItemResponse's itemContentHash, it changes whenever the item is edited
+        public boolean isKnownItem(String guid, String link, int contentHash);
+    }
+
+    // String references for each tag and attribute we require
+    private static final String XML_TAG_TITLE = "title";
+    private static final String XML_TAG_DESCRIPTION = "description";
+    private static final String XML_TAG_LINK = "link";
+    private static final String XML_TAG_ITEM = "item";
+    private static final String XML_TAG_PUB_DATE = "pubDate";
+    private static final String XML_TAG_GUID = "guid";
+    private static final String XML_TAG_ENCLOSURE = "enclosure";
+    private static final String XML_TAG_CHANNEL = "channel";
+
+    // 56.5: The <content:encoded> and <media:content> tags are used similar to <description>
+    // and <enclosure> respectively. Namespace processing is disabled, so the prefix is part of the name
+    private static final String XML_TAG_CONTENT_ENCODED = "content:encoded";
+    private static final String XML_TAG_MEDIA_CONTENT = "media:content";
+
+    private static final String XML_ATTRIBUTE_URL = "url";
+    private static final String XML_ATTRIBUTE_TYPE = "type";
+
+    // Atom names its feed, items and their fields differently. Its <link> is an empty tag whose
+    // href is the address, the page itself has rel="alternate" or no rel at all
+    private static final String ATOM_TAG_FEED = "feed";
+    private static final String ATOM_TAG_ENTRY = "entry";
+    private static final String ATOM_TAG_SUBTITLE = "subtitle";
+    private static final String ATOM_TAG_ID = "id";
+    private static final String ATOM_TAG_SUMMARY = "summary";
+    private static final String ATOM_TAG_CONTENT = "content";
+    private static final String ATOM_TAG_PUBLISHED = "published";
+    private static final String ATOM_TAG_UPDATED = "updated";
+
+    private static final String ATOM_ATTRIBUTE_HREF = "href";
+    private static final String ATOM_ATTRIBUTE_REL = "rel";
+    private static final String ATOM_REL_ALTERNATE = "alternate";
+
+    private final ItemHandler itemHandler;
+    private final ItemFilter itemFilter;
+    // Parsing stops once this many known items have been read in a row, 0 reads the whole feed
+    private final int maxKnownItemRun;
+
+    public FeedPullParser(ItemHandler itemHandler) {
+        this(itemHandler, null, 0);
+    }
+
+    // Items which itemFilter recognizes are skipped rather than handed to itemHandler. Feeds list
+    // their newest items first, so a run of maxKnownItemRun known items means the rest are known too
+    public FeedPullParser(ItemHandler itemHandler, ItemFilter itemFilter, int maxKnownItemRun) {
+        this.itemHandler = itemHandler;
+        this.itemFilter = itemFilter;
+        this.maxKnownItemRun = maxKnownItemRun;
+    }
+
+    // Parses the feed found in inputStream, passing each item to the ItemHandler.
+    // The FeedResponse returned describes the channel only, its channelItems list is always empty.
+    public GetFeedsNetworkRequest.FeedResponse parse(String feedURL, InputStream inputStream)
+            throws XmlPullParserException, IOException {
+        return parse(feedURL, inputStream, Xml.newPullParser());
+    }
+
+    // Parses with the XmlPullParser given, which the JVM tests supply as android.util.Xml is not there
+    GetFeedsNetworkRequest.FeedResponse parse(String feedURL, InputStream inputStream, XmlPullParser parser)
+            throws XmlPullParserException, IOException {
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
+        parser.setInput(inputStream, null);
+
+        String channelTitle = null;
+        String channelDescription = null;
+        String channelURL = null;
+        // Depth of the <channel> or Atom <feed>, -1 until it is found
+        int channelDepth = -1;
+        int knownItemRun = 0;
+
+        int eventType = parser.getEventType();
+        while (eventType != XmlPullParser.END_DOCUMENT) {
+            if (eventType == XmlPullParser.START_TAG) {
+                String tag = parser.getName();
+
+                if (XML_TAG_ITEM.equals(tag) || ATOM_TAG_ENTRY.equals(tag)) {
+                    GetFeedsNetworkRequest.ItemResponse itemResponse = readItem(parser);
+                    if (itemResponse == null) {
+                        knownItemRun++;
+                        if (maxKnownItemRun > 0 && knownItemRun >= maxKnownItemRun) {
+                            break;
+                        }
+                    } else {
+                        knownItemRun = 0;
+                        if (!itemHandler.onItem(itemResponse)) {
+                            break;
+                        }
+                    }
+                } else if (channelDepth == -1 && (XML_TAG_CHANNEL.equals(tag) || ATOM_TAG_FEED.equals(tag))) {
+                    channelDepth = parser.getDepth();
+                } else if (parser.getDepth() == channelDepth + 1) {
+                    // The channel's title, link and description are the first of each tag found
+                    //      directly within it. Other tags are skipped whole, so that those nested in
+                    //      them, such as the <title> of an <image>, are not taken for the channel's
+                    if (channelTitle == null && XML_TAG_TITLE.equals(tag)) {
+                        channelTitle = readText(parser);
+                    } else if (channelDescription == null
+                            && (XML_TAG_DESCRIPTION.equals(tag) || ATOM_TAG_SUBTITLE.equals(tag))) {
+                        channelDescription = readText(parser);
+                    } else if (channelURL == null && XML_TAG_LINK.equals(tag)) {
+                        channelURL = readLink(parser);
+                    } else {
+                        skip(parser);
+                    }
+                }
+            }
+            eventType = parser.next();
+        }
+
+        return new GetFeedsNetworkRequest.FeedResponse(feedURL, channelTitle, channelURL,
+                channelDescription, Collections.<GetFeedsNetworkRequest.ItemResponse>emptyList());
+    }
+
+    // Reads the children of the <item> the parser is positioned on, leaving the parser on its end tag.
+    // Returns null if the ItemFilter recognizes the item
+    private GetFeedsNetworkRequest.ItemResponse readItem(XmlPullParser parser)
+            throws XmlPullParserException, IOException {
+        String itemURL = null;
+        String itemTitle = null;
+
+        // 56.3a: Stores the first image recovered from the HTML body, if any
+        String itemImageURL = null;
+
+        // 56.6: HTML bodies are only extracted once the item is known to be new, since the <guid>
+        // may follow them
+        String itemDescriptionHtml = null;
+        String itemContentEncodedHtml = null;
+        // The image comes from whichever of the two bodies appears last
+        boolean descriptionIsLast = false;
+        String itemMediaURL = null;
+        String itemMediaMIMEType = null;
+
+        String itemDescription = null;
+        String itemGUID = null;
+        String itemPubDate = null;
+        String itemEnclosureURL = null;
+        String itemEnclosureMIMEType = null;
+        // Atom's <updated> stands in for the date when there is no <published>
+        String itemUpdated = null;
+
+        int itemDepth = parser.getDepth();
+        int eventType = parser.next();
+        while (!(eventType == XmlPullParser.END_TAG && parser.getDepth() == itemDepth)) {
+            if (eventType == XmlPullParser.END_DOCUMENT) {
+                throw new XmlPullParserException("Unexpected end of document inside <item>");
+            }
+            if (eventType != XmlPullParser.START_TAG) {
+                eventType = parser.next();
+                continue;
+            }
+            String tag = parser.getName();
+
+            if (XML_TAG_LINK.equalsIgnoreCase(tag)) {
+                String link = readLink(parser);
+                if (link != null) {
+                    itemURL = link;
+                }
+            } else if (XML_TAG_TITLE.equalsIgnoreCase(tag)) {
+                itemTitle = readText(parser);
+            } else if (XML_TAG_DESCRIPTION.equalsIgnoreCase(tag) || ATOM_TAG_SUMMARY.equalsIgnoreCase(tag)) {
+                itemDescriptionHtml = readText(parser);
+                descriptionIsLast = true;
+            } else if (XML_TAG_ENCLOSURE.equalsIgnoreCase(tag)) {
+                // Enclosure tag is different, its data comes in the form of attributes
+                itemEnclosureURL = parser.getAttributeValue(null, XML_ATTRIBUTE_URL);
+                itemEnclosureMIMEType = parser.getAttributeValue(null, XML_ATTRIBUTE_TYPE);
+                skip(parser);
+            } else if (XML_TAG_PUB_DATE.equalsIgnoreCase(tag) || ATOM_TAG_PUBLISHED.equalsIgnoreCase(tag)) {
+                itemPubDate = readText(parser);
+            } else if (ATOM_TAG_UPDATED.equalsIgnoreCase(tag)) {
+                itemUpdated = readText(parser);
+            } else if (XML_TAG_GUID.equalsIgnoreCase(tag) || ATOM_TAG_ID.equalsIgnoreCase(tag)) {
+                itemGUID = readText(parser);
+            }
+            // 56.7: Treat <content:encoded> tag exactly like the <description> tag. Assume
+            // it is composed of HTML content. Atom's <content> holds the same
+            else if (XML_TAG_CONTENT_ENCODED.equalsIgnoreCase(tag) || ATOM_TAG_CONTENT.equalsIgnoreCase(tag)) {
+                itemContentEncodedHtml = readText(parser);
+                descriptionIsLast = false;
+            }
+            // 56.8: Treat <media:content> tag exactly like the <enclosure> tag.
+            else if (XML_TAG_MEDIA_CONTENT.equalsIgnoreCase(tag)) {
+                itemMediaURL = parser.getAttributeValue(null, XML_ATTRIBUTE_URL);
+                itemMediaMIMEType = parser.getAttributeValue(null, XML_ATTRIBUTE_TYPE);
+                skip(parser);
+            } else {
+                skip(parser);
+            }
+            eventType = parser.next();
+        }
+        if (itemPubDate == null) {
+            itemPubDate = itemUpdated;
+        }
+
+        // Hashing the raw values is far cheaper than extracting the HTML, and tells edited items apart
+        int itemContentHash = contentHash(itemURL, itemTitle, itemDescriptionHtml, itemContentEncodedHtml,
+                itemGUID, itemPubDate, itemEnclosureURL, itemEnclosureMIMEType, itemMediaURL, itemMediaMIMEType);
+        if (itemFilter != null && itemFilter.isKnownItem(itemGUID, itemURL, itemContentHash)) {
+            return null;
+        }
+
+        // 56.4: Strip unnecessary HTML tags and attributes, leaving only text, and recover
+        // the first image from the same scan
+        String itemContentEncodedText = null;
+        HtmlExtractor.Content description = null;
+        HtmlExtractor.Content contentEncoded = null;
+        if (itemDescriptionHtml != null) {
+            description = HtmlExtractor.extract(itemDescriptionHtml);
+            itemDescription = description.text;
+        }
+        if (itemContentEncodedHtml != null) {
+            contentEncoded = HtmlExtractor.extract(itemContentEncodedHtml);
+            itemContentEncodedText = contentEncoded.text;
+        }
+        if (descriptionIsLast) {
+            itemImageURL = description.imageURL;
+        } else if (contentEncoded != null) {
+            itemImageURL = contentEncoded.imageURL;
+        }
+
+        // 56.3b: Use itemImageURL if and only if the RSS item did not provide enclosure
+        if (itemEnclosureURL == null) {
+            itemEnclosureURL = itemImageURL;
+        }
+        // 56.9: Catches the case where an image was not retrieved from the description
+        // or content. We assign the values, if any, discovered within the <media:content> tag
+        if (itemEnclosureURL == null) {
+            itemEnclosureURL = itemImageURL;
+            itemEnclosureMIMEType = itemMediaMIMEType;
+        }
+        // 56.10: Replace the description with the content encoded text. We make the
+        // assumption that the data found in <content:encoded> is more robust than
+        // what was provided in <description>.
+        if (itemContentEncodedText != null) {
+            itemDescription = itemContentEncodedText;
+        }
+
+        return new GetFeedsNetworkRequest.ItemResponse(itemURL, itemTitle, itemDescription,
+                itemGUID, itemPubDate, itemEnclosureURL, itemEnclosureMIMEType, itemContentHash);
+    }
+
+    private static int contentHash(String... values) {
+        int hash = 1;
+        for (String value : values) {
+            hash = 31 * hash + (value == null ? 0 : value.hashCode());
+        }
+        return hash;
+    }
+
+    // Returns all text found between the current start tag and its matching end tag, including the
+    // text of any nested tags, the same way Node.getTextContent() did for the DOM parser
+    private static String readText(XmlPullParser parser) throws XmlPullParserException, IOException {
+        int depth = parser.getDepth();
+        String firstText = null;
+        StringBuilder text = null;
+
+        int eventType = parser.next();
+        while (!(eventType == XmlPullParser.END_TAG && parser.getDepth() == depth)) {
+            if (eventType == XmlPullParser.END_DOCUMENT) {
+                throw new XmlPullParserException("Unexpected end of document");
+            }
+            if (eventType == XmlPullParser.TEXT) {
+                // Most tags hold a single run of text, only allocate a builder when there are several
+                if (firstText == null) {
+                    firstText = parser.getText();
+                } else {
+                    if (text == null) {
+                        text = new StringBuilder(firstText);
+                    }
+                    text.append(parser.getText());
+                }
+            }
+            eventType = parser.next();
+        }
+
+        if (text != null) {
+            return text.toString();
+        }
+        return firstText == null ? "" : firstText;
+    }
+
+    // Returns the address of the <link> the parser is positioned on, leaving the parser on its end
+    // tag. RSS holds it as text, Atom in the href attribute. Atom links to anything other than the
+    // page itself, such as rel="self" or rel="enclosure", return null
+    private static String readLink(XmlPullParser parser) throws XmlPullParserException, IOException {
+        String href = parser.getAttributeValue(null, ATOM_ATTRIBUTE_HREF);
+        if (href == null) {
+            return readText(parser);
+        }
+        String rel = parser.getAttributeValue(null, ATOM_ATTRIBUTE_REL);
+        skip(parser);
+        return rel == null || ATOM_REL_ALTERNATE.equals(rel) ? href : null;
+    }
+
+    // Advances the parser past the end tag matching the current start tag
+    private static void skip(XmlPullParser parser) throws XmlPullParserException, IOException {
+        int depth = 1;
+        while (depth != 0) {
+            switch (parser.next()) {
+                case XmlPullParser.START_TAG:
+                    depth++;
+                    break;
+                case XmlPullParser.END_TAG:
+                    depth--;
+                    break;
+                case XmlPullParser.END_DOCUMENT:
+                    throw new XmlPullParserException("Unexpected end of document");
+            }
+        }
+    }
+}
@@ -1,229 +1,274 @@
 package io.bloc.android.blocly.api.network;
 
-import org.jsoup.Jsoup;
-import org.jsoup.select.Elements;
-import org.w3c.dom.Document;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
+import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Created by namlu on 27-Aug-16.
  */
 public class GetFeedsNetworkRequest extends NetworkRequest <List<GetFeedsNetworkRequest.FeedResponse>>{
 
-    // Error code thrown by Document parsing
+    // Error code thrown by feed parsing
     public static final int ERROR_PARSING = 3;
 
-    // String references for each tag and attribute we require
-    private static final String XML_TAG_TITLE = "title";
-    private static final String XML_TAG_DESCRIPTION = "description";
-    private static final String XML_TAG_LINK = "link";
-    private static final String XML_TAG_ITEM = "item";
-    private static final String XML_TAG_PUB_DATE = "pubDate";
-    private static final String XML_TAG_GUID = "guid";
-    private static final String XML_TAG_ENCLOSURE = "enclosure";
-
-    // 56.5: The <content:encoded> and <media:content> tags are used similar to <description>
-    // and <enclosure> respectively
-    private static final String XML_TAG_CONTENT_ENCODED = "content:encoded";
-    private static final String XML_TAG_MEDIA_CONTENT = "media:content";
+    // By default up to four feeds download at once, but never more than two from the same host
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 4;
+    public static final int DEFAULT_MAX_REQUESTS_PER_HOST = 2;
 
-    private static final String XML_ATTRIBUTE_URL = "url";
-    private static final String XML_ATTRIBUTE_TYPE = "type";
+    // An incremental refresh stops reading a feed after this many already-stored items in a row
+    public static final int DEFAULT_MAX_KNOWN_ITEM_RUN = 3;
 
     // Recover multiple RSS feeds and store each feed's address
     String [] feedUrls;
 
+    // Validators saved from an earlier response of each feed, keyed by feed URL
+    private Map<String, String> eTags = new HashMap<String, String>();
+    private Map<String, String> lastModifieds = new HashMap<String, String>();
+
+    // Recognizes the items already stored for each feed, keyed by feed URL
+    private Map<String, FeedPullParser.ItemFilter> itemFilters = new HashMap<String, FeedPullParser.ItemFilter>();
+    private int maxKnownItemRun = DEFAULT_MAX_KNOWN_ITEM_RUN;
+
+    private int maxConcurrentRequests = DEFAULT_MAX_CONCURRENT_REQUESTS;
+    private int maxRequestsPerHost = DEFAULT_MAX_REQUESTS_PER_HOST;
+
     public GetFeedsNetworkRequest(String... feedUrls){
         this.feedUrls = feedUrls;
     }
 
-    // Method requests a BufferedReader for each URL found in feedUrls
+    // Makes the request for feedUrl conditional. If the server answers 304 Not Modified, the feed's
+    // FeedResponse is marked notModified and the feed is neither downloaded nor parsed.
+    public void setValidators(String feedUrl, String eTag, String lastModified) {
+        eTags.put(feedUrl, eTag);
+        lastModifieds.put(feedUrl, lastModified);
+    }
+
+    // Makes the request for feedUrl incremental. Items which itemFilter recognizes are skipped
+    // without extracting their HTML, and the feed stops downloading after a run of them.
+    public void setItemFilter(String feedUrl, FeedPullParser.ItemFilter itemFilter) {
+        itemFilters.put(feedUrl, itemFilter);
+    }
+
+    // Number of known items in a row which ends an incremental refresh, 0 reads every item
+    public void setMaxKnownItemRun(int maxKnownItemRun) {
+        this.maxKnownItemRun = Math.max(0, maxKnownItemRun);
+    }
+
+    // Size of the worker pool used when more than one feed is requested, 1 fetches them in order
+    public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+        this.maxConcurrentRequests = Math.max(1, maxConcurrentRequests);
+    }
+
+    // Limits how many workers may download from a single host at the same time
+    public void setMaxRequestsPerHost(int maxRequestsPerHost) {
+        this.maxRequestsPerHost = Math.max(1, maxRequestsPerHost);
+    }
+
+    // Method fetches every URL found in feedUrls and returns one FeedResponse per URL, in the same order.
+    // Each FeedResponse carries its own errorCode, so one failing feed does not discard the others.
+    // The request's own error code is only set when no feed could be fetched at all.
     // Using a custom List<FeedResponse> decouples networking elements of application from model
     @Override
     public List<FeedResponse> performRequest() {
-
-        // Variable which performRequest will ultimately return
-        List<FeedResponse> responseFeeds = new ArrayList<FeedResponse>(feedUrls.length);
-
-        for (String feedUrlString : feedUrls) {
-            // openStream(String urlString), a method of NetworkRequest which takes a URL and returns an InputStream
-            InputStream inputStream = openStream(feedUrlString);
-            if (inputStream == null) {
-                return null;
+        List<FeedResponse> responseFeeds;
+        if (feedUrls.length <= 1 || maxConcurrentRequests <= 1) {
+            responseFeeds = new ArrayList<FeedResponse>(feedUrls.length);
+            for (String feedUrlString : feedUrls) {
+                responseFeeds.add(fetchFeed(feedUrlString));
             }
-            try {
-                // DocumentBuilder parses an InputStream directly into a new Document
-                DocumentBuilder documentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-
-                // Document class organizes raw XML String info into a manageable form, converting
-                // each tag and attribute into a Node
-                Document xmlDocument = documentBuilder.parse(inputStream);
-
-                // Recover the title, link and description of the feed
-                // .optFirstTagFromDocument(Document document, String tagName)
-                String channelTitle = optFirstTagFromDocument(xmlDocument, XML_TAG_TITLE);
-                String channelDescription = optFirstTagFromDocument(xmlDocument, XML_TAG_DESCRIPTION);
-                String channelURL = optFirstTagFromDocument(xmlDocument, XML_TAG_LINK);
-
-                // Each Node in list represents a single XML item (<item>...</item>) from feed
-                NodeList allItemsNodes = xmlDocument.getElementsByTagName(XML_TAG_ITEM);
-                List<ItemResponse> responseItems = new ArrayList<ItemResponse>(allItemsNodes.getLength());
-
-                // Prepare a temporary variable for each field we hope to recover
-                for (int itemIndex = 0; itemIndex < allItemsNodes.getLength(); itemIndex++) {
-                    String itemURL = null;
-                    String itemTitle = null;
-
-                    // 56.3a: Stores the first image recovered from the HTML body, if any
-                    String itemImageURL = null;
-
-                    // 56.6:
-                    String itemContentEncodedText = null;
-                    String itemMediaURL = null;
-                    String itemMediaMIMEType = null;
-
-                    String itemDescription = null;
-                    String itemGUID = null;
-                    String itemPubDate = null;
-                    String itemEnclosureURL = null;
-                    String itemEnclosureMIMEType = null;
-
-                    // Parse each item's tag
-                    // Recover the Node representing the individual RSS item before
-                    // extracting a list of its child Nodes
-                    Node itemNode = allItemsNodes.item(itemIndex);
-                    // .getChildNodes() returns a NodeList item
-                    NodeList tagNodes = itemNode.getChildNodes();
-
-                    for (int tagIndex = 0; tagIndex < tagNodes.getLength(); tagIndex++) {
-                        Node tagNode = tagNodes.item(tagIndex);
-                        String tag = tagNode.getNodeName();
-
-                        //  Iterate across all tags to find those we wish to parse.
-                        // .getTextContent() returns whatever is between the two XML tags as a String
-                        if (XML_TAG_LINK.equalsIgnoreCase(tag)) {
-                            itemURL = tagNode.getTextContent();
-                        } else if (XML_TAG_TITLE.equalsIgnoreCase(tag)) {
-                            itemTitle = tagNode.getTextContent();
-                        } else if (XML_TAG_DESCRIPTION.equalsIgnoreCase(tag)) {
-                            String descriptionText = tagNode.getTextContent();
-                            itemImageURL = parseImageFromHTML(descriptionText);
-                            // 56.4: Use parseTextFromHTML to strip unnecessary HTML tags and attributes,
-                            // leaving only text
-                            itemDescription = parseTextFromHTML(descriptionText);
-                        } else if (XML_TAG_ENCLOSURE.equalsIgnoreCase(tag)) {
-                            // Retrieve a map of all attributes and recover both the url and type entries
-                            // Enclosure tag is different, its data comes in the form of attributes
-                            NamedNodeMap enclosureAttributes = tagNode.getAttributes();
-                            itemEnclosureURL = enclosureAttributes.getNamedItem(XML_ATTRIBUTE_URL).getTextContent();
-                            itemEnclosureMIMEType = enclosureAttributes.getNamedItem(XML_ATTRIBUTE_TYPE).getTextContent();
-                        } else if (XML_TAG_PUB_DATE.equalsIgnoreCase(tag)) {
-                            itemPubDate = tagNode.getTextContent();
-                        } else if (XML_TAG_GUID.equalsIgnoreCase(tag)) {
-                            itemGUID = tagNode.getTextContent();
-                        }
-                        // 56.7: Treat <content:encoded> tag exactly like the <description> tag. Assume
-                        // it is composed of HTML content and parse its plain text and first image
-                        else if (XML_TAG_CONTENT_ENCODED.equalsIgnoreCase(tag)) {
-                            String contentEncoded = tagNode.getTextContent();
-                            itemImageURL = parseImageFromHTML(contentEncoded);
-                            itemContentEncodedText = parseTextFromHTML(contentEncoded);
-                        }
-                        // 56.8: Treat <media:content> tag exactly like the <enclosure> tag.
-                        else if (XML_TAG_MEDIA_CONTENT.equalsIgnoreCase(tag)) {
-                            NamedNodeMap mediaAttributes = tagNode.getAttributes();
-                            itemMediaURL = mediaAttributes.getNamedItem(XML_ATTRIBUTE_URL).getTextContent();
-                            itemMediaMIMEType = mediaAttributes.getNamedItem(XML_ATTRIBUTE_TYPE).getTextContent();
-                        }
-                    }
-                    // 56.3b: Use itemImageURL if and only if the RSS item did not provide enclosure
-                    if (itemEnclosureURL == null) {
-                        itemEnclosureURL = itemImageURL;
-                    }
-                    // 56.9: catches the case where an image was not retrieved from the description
-                    // or content. We assign the values, if any, discovered within the  <media:content> tag
-                    if (itemEnclosureURL == null) {
-                        itemEnclosureURL = itemImageURL;
-                        itemEnclosureMIMEType = itemMediaMIMEType;
-                    }
-                    // 56.10: replace the description with the content encoded text. We make the
-                    // assumption that the data found in <content:encoded> is more robust than
-                    // what was provided in <description>.
-                    if (itemContentEncodedText != null) {
-                        itemDescription = itemContentEncodedText;
-                    }
+        } else {
+            responseFeeds = fetchFeedsConcurrently();
+        }
 
-                    // List<ItemResponse> needed for FeedResponse
-                    responseItems.add(new ItemResponse(itemURL, itemTitle, itemDescription,
-                            itemGUID, itemPubDate, itemEnclosureURL, itemEnclosureMIMEType));
-                }
-                // Add parsed items to responseFeeds and close InputStream
-                responseFeeds.add(new FeedResponse(feedUrlString, channelTitle, channelURL,
-                        channelDescription, responseItems));
-                inputStream.close();
-                // documentBuilder.parse throws IOException, SAXException
-            } catch (IOException e) {
-                e.printStackTrace();
-                setErrorCode(ERROR_IO);
-                return null;
-            } catch (SAXException e) {
-                e.printStackTrace();
-                setErrorCode(ERROR_PARSING);
-                return null;
-                // DocumentBuilderFactory throws ParserConfigurationException
-            } catch (ParserConfigurationException e) {
-                e.printStackTrace();
-                setErrorCode(ERROR_PARSING);
-                return null;
+        for (FeedResponse feedResponse : responseFeeds) {
+            if (feedResponse.errorCode == 0) {
+                return responseFeeds;
             }
         }
+        if (!responseFeeds.isEmpty()) {
+            setErrorCode(responseFeeds.get(0).errorCode);
+        }
         return responseFeeds;
     }
 
-    // Method recovers every Node within the document representing a tag whose name matches tagName.
-    // If one or more tags are found by that name, the first tag's content is returned
-    private String optFirstTagFromDocument(Document document, String tagName){
-        // NodeList provides the abstraction of an ordered collection of nodes
-        // .getElementsByTagName(String tagName)
-        NodeList elementsByTagName = document.getElementsByTagName(tagName);
-        if (elementsByTagName.getLength() > 0) {
-            // .getTextContent() returns the text content of the node
-            return elementsByTagName.item(0).getTextContent();
+    // Fetches feedUrls on a bounded pool of workers. Feeds wait in a queue for their host and are
+    // only handed to the pool while the host is below its limit, so a worker never sits blocked
+    // behind a busy host while feeds from other hosts are waiting
+    private List<FeedResponse> fetchFeedsConcurrently() {
+        ExecutorService workers = Executors.newFixedThreadPool(Math.min(maxConcurrentRequests, feedUrls.length));
+        HostQueues hostQueues = new HostQueues(workers);
+        for (int i = 0; i < feedUrls.length; i++) {
+            hostQueues.add(i);
         }
-        return null;
+
+        try {
+            hostQueues.awaitResponses();
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        workers.shutdown();
+
+        // Feeds which never finished are reported as failed
+        List<FeedResponse> responseFeeds = new ArrayList<FeedResponse>(Arrays.asList(hostQueues.getResponses()));
+        for (int i = 0; i < responseFeeds.size(); i++) {
+            if (responseFeeds.get(i) == null) {
+                responseFeeds.set(i, new FeedResponse(feedUrls[i], ERROR_IO));
+            }
+        }
+        return responseFeeds;
     }
 
-    // 56.1: Strips the HTML body of any text that's not displayed to user, including tag,
-    // attribute, etc. This is the text to be presented to user as RSS item's content
-    static String parseTextFromHTML(String htmlString) {
-        org.jsoup.nodes.Document document = Jsoup.parse(htmlString);
-        return document.body().text();
+    // Holds back the feeds of each host beyond maxRequestsPerHost, submitting the next of them as
+    // soon as one of the host's downloads completes
+    private class HostQueues {
+
+        private final ExecutorService workers;
+        private final Map<String, Queue<Integer>> waitingFeeds = new HashMap<String, Queue<Integer>>();
+        private final Map<String, Integer> runningCounts = new HashMap<String, Integer>();
+        private final CountDownLatch remaining = new CountDownLatch(feedUrls.length);
+        // Filled in by the workers, one per feed URL in the same order
+        private final FeedResponse[] responses = new FeedResponse[feedUrls.length];
+
+        HostQueues(ExecutorService workers) {
+            this.workers = workers;
+        }
+
+        synchronized void add(int feedIndex) {
+            String host = hostOf(feedUrls[feedIndex]);
+            Queue<Integer> waiting = waitingFeeds.get(host);
+            if (waiting == null) {
+                waiting = new LinkedList<Integer>();
+                waitingFeeds.put(host, waiting);
+                runningCounts.put(host, 0);
+            }
+            waiting.add(feedIndex);
+            submitWaiting(host);
+        }
+
+        void awaitResponses() throws InterruptedException {
+            remaining.await();
+        }
+
+        synchronized FeedResponse[] getResponses() {
+            return responses.clone();
+        }
+
+        private synchronized void finished(String host, int feedIndex, FeedResponse feedResponse) {
+            responses[feedIndex] = feedResponse;
+            runningCounts.put(host, runningCounts.get(host) - 1);
+            remaining.countDown();
+            submitWaiting(host);
+        }
+
+        private void submitWaiting(final String host) {
+            Queue<Integer> waiting = waitingFeeds.get(host);
+            // Nothing more is started once the request has been abandoned
+            while (!waiting.isEmpty() && runningCounts.get(host) < maxRequestsPerHost && !workers.isShutdown()) {
+                final int feedIndex = waiting.remove();
+                runningCounts.put(host, runningCounts.get(host) + 1);
+                workers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        FeedResponse feedResponse;
+                        try {
+                            feedResponse = fetchFeed(feedUrls[feedIndex]);
+                        } catch (RuntimeException e) {
+                            e.printStackTrace();
+                            feedResponse = new FeedResponse(feedUrls[feedIndex], ERROR_IO);
+                        }
+                        finished(host, feedIndex, feedResponse);
+                    }
+                });
+            }
+        }
     }
 
-    // 56.2: Pulls every img tag from HTML body, then returns source URL of the very first image. The
-    // assumption is the first image in HTML body is the headline image.
-    static String parseImageFromHTML(String htmlString) {
-        org.jsoup.nodes.Document document = Jsoup.parse(htmlString);
-        Elements imgElements = document.select("img");
+    // Downloads and parses a single feed. Never returns null, failures are reported through the
+    // FeedResponse's errorCode
+    FeedResponse fetchFeed(String feedUrlString) {
+        final List<ItemResponse> responseItems = new ArrayList<ItemResponse>();
+        FeedResponse channelResponse = streamFeed(feedUrlString, new FeedPullParser.ItemHandler() {
+            @Override
+            public boolean onItem(ItemResponse itemResponse) {
+                responseItems.add(itemResponse);
+                return true;
+            }
+        });
+        if (channelResponse.errorCode != 0 || channelResponse.notModified) {
+            return channelResponse;
+        }
+        return new FeedResponse(feedUrlString, channelResponse.channelTitle,
+                channelResponse.channelURL, channelResponse.channelDescription, responseItems,
+                channelResponse.eTag, channelResponse.lastModified, false);
+    }
 
-        if (imgElements.isEmpty()) {
-            return null;
+    // Downloads a single feed, passing each item to itemHandler while the stream is still being read.
+    // The FeedResponse returned describes the channel, its errorCode and validators, but its
+    // channelItems list is always empty. Never returns null.
+    public FeedResponse streamFeed(String feedUrlString, FeedPullParser.ItemHandler itemHandler) {
+        // openConditionalStream() returns the InputStream along with the response's validators
+        Response response = openConditionalStream(feedUrlString, eTags.get(feedUrlString),
+                lastModifieds.get(feedUrlString));
+        if (response.errorCode != 0) {
+            return new FeedResponse(feedUrlString, response.errorCode);
+        }
+        if (response.isNotModified()) {
+            return new FeedResponse(feedUrlString, response.eTag, response.lastModified);
+        }
+        InputStream inputStream = response.inputStream;
+        try {
+            // FeedPullParser streams each item to the handler as soon as it has been read. Stopping
+            // early on known items leaves the remainder unread, closing the stream discards it
+            FeedPullParser feedPullParser = new FeedPullParser(itemHandler, itemFilters.get(feedUrlString),
+                    maxKnownItemRun);
+            FeedResponse channelResponse = feedPullParser.parse(feedUrlString, inputStream);
+
+            return new FeedResponse(feedUrlString, channelResponse.channelTitle,
+                    channelResponse.channelURL, channelResponse.channelDescription,
+                    channelResponse.channelItems, response.eTag, response.lastModified, false);
+        } catch (IOException e) {
+            // Cancelling closes the stream underneath the parser
+            if (isCancelled()) {
+                return new FeedResponse(feedUrlString, ERROR_CANCELLED);
+            }
+            e.printStackTrace();
+            return new FeedResponse(feedUrlString, ERROR_IO);
+        } catch (XmlPullParserException e) {
+            if (isCancelled()) {
+                return new FeedResponse(feedUrlString, ERROR_CANCELLED);
+            }
+            e.printStackTrace();
+            return new FeedResponse(feedUrlString, ERROR_PARSING);
+        } finally {
+            closeStream(inputStream);
         }
-        return imgElements.attr("src");
     }
 
+    // Malformed URLs share a single empty host, they fail as soon as they are opened anyway
+    private static String hostOf(String feedUrlString) {
+        try {
+            return new URL(feedUrlString).getHost().toLowerCase(Locale.US);
+        } catch (MalformedURLException e) {
+            return "";
+        }
+    }
 
     // Returns the objects contained underneath the <channel>...<channel> tags of an XML doc
     // and a List<ItemResponse>
@@ -234,13 +279,53 @@ public class GetFeedsNetworkRequest extends NetworkRequest <List<GetFeedsNetwork
         public final String channelDescription;
         public final List<ItemResponse> channelItems;
 
+        // Validators to send with the next request for this feed, either may be null
+        public final String eTag;
+        public final String lastModified;
+
+        // True if the server reported the feed unchanged, in which case only the validators are set
+        public final boolean notModified;
+
+        // 0 if the feed was fetched, otherwise one of the request's error codes
+        public final int errorCode;
+
         public FeedResponse(String channelFeedURL, String channelTitle, String channelURL,
                             String channelDescription, List<ItemResponse> channelItems) {
+            this(channelFeedURL, channelTitle, channelURL, channelDescription, channelItems,
+                    null, null, false);
+        }
+
+        // Describes a feed which has not been modified since the given validators were issued
+        public FeedResponse(String channelFeedURL, String eTag, String lastModified) {
+            this(channelFeedURL, null, null, null, Collections.<ItemResponse>emptyList(),
+                    eTag, lastModified, true);
+        }
+
+        // Describes a feed which could not be fetched
+        public FeedResponse(String channelFeedURL, int errorCode) {
+            this(channelFeedURL, null, null, null, Collections.<ItemResponse>emptyList(),
+                    null, null, false, errorCode);
+        }
+
+        public FeedResponse(String channelFeedURL, String channelTitle, String channelURL,
+                            String channelDescription, List<ItemResponse> channelItems,
+                            String eTag, String lastModified, boolean notModified) {
+            this(channelFeedURL, channelTitle, channelURL, channelDescription, channelItems,
+                    eTag, lastModified, notModified, 0);
+        }
+
+        public FeedResponse(String channelFeedURL, String channelTitle, String channelURL,
+                            String channelDescription, List<ItemResponse> channelItems,
+                            String eTag, String lastModified, boolean notModified, int errorCode) {
             this.channelFeedURL = channelFeedURL;
             this.channelTitle = channelTitle;
             this.channelURL = channelURL;
             this.channelDescription = channelDescription;
             this.channelItems = channelItems;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.notModified = notModified;
+            this.errorCode = errorCode;
         }
     }
 
@@ -254,10 +339,19 @@ public class GetFeedsNetworkRequest extends NetworkRequest <List<GetFeedsNetwork
         public final String itemPubDate;
         public final String itemEnclosureURL;
         public final String itemEnclosureMIMEType;
+        // Hash of the item's raw values, used to tell whether a stored item has since been edited
+        public final int itemContentHash;
 
         public ItemResponse(String itemURL, String itemTitle, String itemDescription,
                             String itemGUID, String itemPubDate, String itemEnclosureURL,
                             String itemEnclosureMIMEType) {
+            this(itemURL, itemTitle, itemDescription, itemGUID, itemPubDate, itemEnclosureURL,
+                    itemEnclosureMIMEType, 0);
+        }
+
+        public ItemResponse(String itemURL, String itemTitle, String itemDescription,
+                            String itemGUID, String itemPubDate, String itemEnclosureURL,
+                            String itemEnclosureMIMEType, int itemContentHash) {
             this.itemURL = itemURL;
             this.itemTitle = itemTitle;
             this.itemDescription = itemDescription;
@@ -265,6 +359,7 @@ public class GetFeedsNetworkRequest extends NetworkRequest <List<GetFeedsNetwork
             this.itemPubDate = itemPubDate;
             this.itemEnclosureURL = itemEnclosureURL;
             this.itemEnclosureMIMEType = itemEnclosureMIMEType;
+            this.itemContentHash = itemContentHash;
         }
     }
 }
@@ -0,0 +1,487 @@
+package io.bloc.android.blocly.api.network;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.select.Elements;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * HtmlExtractor recovers both the displayable text and the first image of an RSS item's HTML body
+ * in a single scan, without building a Document. The text matches what Jsoup's body().text()
+ * produces. Input the scanner cannot reproduce exactly, such as unterminated tags, unknown
+ * entities or whitespace-preserving elements, is handed to Jsoup instead.
+ */
+public class HtmlExtractor {
+
+    // The plain text and first image recovered from an HTML body
+    public static class Content {
+        public final String text;
+        // null if the body contains no <img> tag
+        public final String imageURL;
+
+        public Content(String text, String imageURL) {
+            this.text = text;
+            this.imageURL = imageURL;
+        }
+    }
+
+    private static final String TAG_IMG = "img";
+    private static final String TAG_BR = "br";
+    private static final String TAG_P = "p";
+    private static final String ATTRIBUTE_SRC = "src";
+
+    // Elements Jsoup separates from the surrounding text with a space
+    private static final Set<String> BLOCK_TAGS = new HashSet<String>();
+
+    // Start tags which close an open <p>, following the HTML tree construction rules
+    private static final Set<String> CLOSES_P_TAGS = new HashSet<String>();
+
+    // Table parts are dropped by Jsoup outside of a <table>, and tables themselves are left to Jsoup
+    private static final Set<String> TABLE_PART_TAGS = new HashSet<String>();
+
+    // Elements whose content is never displayed
+    private static final Set<String> DATA_TAGS = new HashSet<String>();
+
+    // Elements whose content Jsoup does not tokenize as regular HTML
+    private static final Set<String> UNSUPPORTED_TAGS = new HashSet<String>();
+
+    // Named character references the scanner decodes, anything else is left to Jsoup
+    private static final Map<String, Character> ENTITIES = new HashMap<String, Character>();
+
+    static {
+        String[] blockTags = {"frameset", "script", "noscript", "style", "meta", "link", "frame",
+                "noframes", "section", "nav", "aside", "hgroup", "header", "footer", "p", "h1", "h2",
+                "h3", "h4", "h5", "h6", "ul", "ol", "div", "blockquote", "hr", "address", "figure",
+                "figcaption", "form", "fieldset", "ins", "del", "s", "dl", "dt", "dd", "li", "table",
+                "caption", "thead", "tfoot", "tbody", "colgroup", "col", "tr", "th", "td", "video",
+                "audio", "canvas", "details", "menu"};
+        for (String tag : blockTags) {
+            BLOCK_TAGS.add(tag);
+        }
+        String[] closesPTags = {"address", "article", "aside", "blockquote", "center", "details",
+                "dir", "div", "dl", "fieldset", "figcaption", "figure", "footer", "header", "hgroup",
+                "menu", "nav", "ol", "p", "section", "summary", "ul", "h1", "h2", "h3", "h4", "h5",
+                "h6", "form", "table", "hr", "li", "dd", "dt"};
+        for (String tag : closesPTags) {
+            CLOSES_P_TAGS.add(tag);
+        }
+        String[] tablePartTags = {"caption", "colgroup", "col", "tbody", "thead", "tfoot", "tr",
+                "th", "td"};
+        for (String tag : tablePartTags) {
+            TABLE_PART_TAGS.add(tag);
+        }
+        DATA_TAGS.add("script");
+        DATA_TAGS.add("style");
+
+        String[] unsupportedTags = {"pre", "textarea", "title", "plaintext", "xmp", "listing",
+                "iframe", "noembed", "noframes", "template", "svg", "math", "button", "object",
+                "applet", "marquee", "table"};
+        for (String tag : unsupportedTags) {
+            UNSUPPORTED_TAGS.add(tag);
+        }
+
+        Object[] entities = {"amp", '&', "lt", '<', "gt", '>', "quot", '"', "apos", '\'',
+                "nbsp", '\u00A0', "hellip", '\u2026', "mdash", '\u2014', "ndash", '\u2013',
+                "lsquo", '\u2018', "rsquo", '\u2019', "sbquo", '\u201A', "ldquo", '\u201C',
+                "rdquo", '\u201D', "bdquo", '\u201E', "laquo", '\u00AB', "raquo", '\u00BB',
+                "copy", '\u00A9', "reg", '\u00AE', "trade", '\u2122', "bull", '\u2022',
+                "middot", '\u00B7', "deg", '\u00B0', "euro", '\u20AC', "pound", '\u00A3',
+                "cent", '\u00A2', "yen", '\u00A5', "times", '\u00D7', "divide", '\u00F7',
+                "eacute", '\u00E9', "egrave", '\u00E8', "aacute", '\u00E1', "agrave", '\u00E0',
+                "auml", '\u00E4', "ouml", '\u00F6', "uuml", '\u00FC', "szlig", '\u00DF',
+                "ccedil", '\u00E7', "ntilde", '\u00F1', "iexcl", '\u00A1', "iquest", '\u00BF',
+                "sect", '\u00A7', "para", '\u00B6', "shy", '\u00AD', "ensp", '\u2002',
+                "emsp", '\u2003', "thinsp", '\u2009', "zwnj", '\u200C', "zwj", '\u200D',
+                "lrm", '\u200E', "rlm", '\u200F'};
+        for (int i = 0; i < entities.length; i += 2) {
+            ENTITIES.put((String) entities[i], (Character) entities[i + 1]);
+        }
+    }
+
+    // Returns the text and first image of htmlString
+    public static Content extract(String htmlString) {
+        Content content = new HtmlExtractor(htmlString).scan();
+        if (content == null) {
+            return extractWithJsoup(htmlString);
+        }
+        return content;
+    }
+
+    // The fallback path, one Jsoup Document serves both the text and the image
+    static Content extractWithJsoup(String htmlString) {
+        Document document = Jsoup.parse(htmlString);
+        Elements imgElements = document.select(TAG_IMG);
+        // The assumption is the first image in HTML body is the headline image.
+        String imageURL = imgElements.isEmpty() ? null : imgElements.attr(ATTRIBUTE_SRC);
+        return new Content(document.body().text(), imageURL);
+    }
+
+    private final String html;
+    private final int length;
+    private int position;
+
+    private final StringBuilder text;
+
+    // The src of the first <img> which has one, and whether any <img> was seen at all
+    private String imageURL;
+    private boolean imageSeen;
+
+    // Whether a <p> is open, a </p> without one creates an empty paragraph
+    private boolean paragraphOpen;
+
+    // How many of each block element are open, created on the first block start tag
+    private Map<String, Integer> openBlocks;
+
+    private HtmlExtractor(String html) {
+        this.html = html;
+        this.length = html.length();
+        this.text = new StringBuilder(length);
+    }
+
+    // Returns null if the HTML requires Jsoup's full tree builder to be interpreted correctly
+    private Content scan() {
+        while (position < length) {
+            char c = html.charAt(position);
+            if (c == '<') {
+                if (!scanMarkup()) {
+                    return null;
+                }
+            } else if (c == '&') {
+                int decoded = decodeReference(false);
+                if (decoded == -1) {
+                    return null;
+                }
+                appendCodePoint(decoded);
+            } else {
+                appendText(c);
+                position++;
+            }
+        }
+
+        // Jsoup returns the src of the first <img> which has one, or "" if none of them do
+        if (imageSeen && imageURL == null) {
+            imageURL = "";
+        }
+        return new Content(text.toString().trim(), imageURL);
+    }
+
+    // Handles whatever follows a '<', returning false if Jsoup must take over
+    private boolean scanMarkup() {
+        if (position + 1 >= length) {
+            appendText('<');
+            position++;
+            return true;
+        }
+        char next = html.charAt(position + 1);
+        if (isAsciiLetter(next)) {
+            return scanTag(false);
+        }
+        if (next == '/') {
+            if (position + 2 < length && isAsciiLetter(html.charAt(position + 2))) {
+                return scanTag(true);
+            }
+            // "</>" and "</ followed by anything else" are dropped up to the next '>'
+            return skipPast(">");
+        }
+        if (next == '!') {
+            if (html.startsWith("<!--", position)) {
+                position += 4;
+                return skipPast("-->");
+            }
+            // Jsoup keeps the text of a <![CDATA[...]]> section, it is not dropped here
+            if (html.startsWith("<![", position)) {
+                return false;
+            }
+            return skipPast(">");
+        }
+        if (next == '?') {
+            return skipPast(">");
+        }
+        // A '<' which does not open a tag is ordinary text
+        appendText('<');
+        position++;
+        return true;
+    }
+
+    // Reads a start or end tag, position is on its '<'
+    private boolean scanTag(boolean endTag) {
+        position += endTag ? 2 : 1;
+        int nameStart = position;
+        while (position < length && !isTagNameEnd(html.charAt(position))) {
+            position++;
+        }
+        String tagName = html.substring(nameStart, position).toLowerCase(Locale.US);
+        if (UNSUPPORTED_TAGS.contains(tagName)) {
+            return false;
+        }
+
+        boolean ignored = TABLE_PART_TAGS.contains(tagName);
+        boolean isImage = !endTag && TAG_IMG.equals(tagName);
+        String src = null;
+
+        // Attributes
+        while (true) {
+            skipWhitespace();
+            if (position >= length) {
+                return false;
+            }
+            char c = html.charAt(position);
+            if (c == '>') {
+                position++;
+                break;
+            }
+            if (c == '/') {
+                position++;
+                continue;
+            }
+            int attributeStart = position;
+            while (position < length && !isAttributeNameEnd(html.charAt(position))) {
+                position++;
+            }
+            int attributeNameLength = position - attributeStart;
+            skipWhitespace();
+            String value = null;
+            if (position < length && html.charAt(position) == '=') {
+                position++;
+                skipWhitespace();
+                value = readAttributeValue();
+                if (value == null) {
+                    return false;
+                }
+            }
+            if (isImage && imageURL == null && src == null && attributeNameLength == ATTRIBUTE_SRC.length()
+                    && html.regionMatches(true, attributeStart, ATTRIBUTE_SRC, 0, attributeNameLength)) {
+                src = value == null ? "" : value;
+            }
+        }
+
+        if (isImage) {
+            imageSeen = true;
+            if (imageURL == null) {
+                imageURL = src;
+            }
+        }
+
+        if (ignored) {
+            return true;
+        } else if (!endTag || TAG_BR.equals(tagName)) {
+            // Jsoup treats </br> as <br>
+            if (BLOCK_TAGS.contains(tagName) || TAG_BR.equals(tagName)) {
+                appendSeparator();
+            }
+            if (CLOSES_P_TAGS.contains(tagName)) {
+                paragraphOpen = TAG_P.equals(tagName);
+            }
+            if (!endTag && BLOCK_TAGS.contains(tagName)) {
+                if (openBlocks == null) {
+                    openBlocks = new HashMap<String, Integer>();
+                }
+                Integer count = openBlocks.get(tagName);
+                openBlocks.put(tagName, count == null ? 1 : count + 1);
+            }
+        } else if (TAG_P.equals(tagName)) {
+            if (!paragraphOpen) {
+                appendSeparator();
+            }
+            paragraphOpen = false;
+        } else if (openBlocks != null && BLOCK_TAGS.contains(tagName)) {
+            // A <p> only holds inline content, so it cannot outlive an enclosing block. End tags
+            // of blocks which are not open are ignored.
+            Integer count = openBlocks.get(tagName);
+            if (count != null && count > 0) {
+                openBlocks.put(tagName, count - 1);
+                paragraphOpen = false;
+            }
+        }
+
+        if (!endTag && DATA_TAGS.contains(tagName)) {
+            // Script and style content is not displayed, skip to the matching end tag
+            int end = indexOfIgnoreCase("</" + tagName, position);
+            if (end == -1) {
+                return false;
+            }
+            position = end;
+        }
+        return true;
+    }
+
+    // Reads a quoted or unquoted attribute value, decoding character references
+    private String readAttributeValue() {
+        if (position >= length) {
+            return null;
+        }
+        char quote = html.charAt(position);
+        boolean quoted = quote == '"' || quote == '\'';
+        if (quoted) {
+            position++;
+        }
+        StringBuilder value = null;
+        int runStart = position;
+        while (position < length) {
+            char c = html.charAt(position);
+            if (quoted ? c == quote : (isWhitespace(c) || c == '>')) {
+                break;
+            }
+            if (c == '&') {
+                if (value == null) {
+                    value = new StringBuilder();
+                }
+                value.append(html, runStart, position);
+                int decoded = decodeReference(true);
+                if (decoded == -1) {
+                    return null;
+                }
+                value.appendCodePoint(decoded);
+                runStart = position;
+                continue;
+            }
+            position++;
+        }
+        if (quoted && position >= length) {
+            return null;
+        }
+        String result;
+        if (value == null) {
+            result = html.substring(runStart, position);
+        } else {
+            result = value.append(html, runStart, position).toString();
+        }
+        if (quoted) {
+            position++;
+        }
+        return result;
+    }
+
+    // Decodes the character reference at position and advances past it. Returns -1 for references
+    // only Jsoup can resolve. An '&' which does not start a reference decodes to itself.
+    private int decodeReference(boolean inAttribute) {
+        int start = position + 1;
+        if (start >= length) {
+            position++;
+            return '&';
+        }
+        char first = html.charAt(start);
+        if (first == '#') {
+            int digitsStart = start + 1;
+            boolean hex = digitsStart < length && (html.charAt(digitsStart) == 'x' || html.charAt(digitsStart) == 'X');
+            if (hex) {
+                digitsStart++;
+            }
+            int end = digitsStart;
+            while (end < length && (hex ? Character.digit(html.charAt(end), 16) != -1
+                    : Character.isDigit(html.charAt(end)))) {
+                end++;
+            }
+            if (end == digitsStart) {
+                position++;
+                return '&';
+            }
+            if (end >= length || html.charAt(end) != ';' || end - digitsStart > 7) {
+                return -1;
+            }
+            int codePoint = Integer.parseInt(html.substring(digitsStart, end), hex ? 16 : 10);
+            position = end + 1;
+            if ((codePoint >= 0xD800 && codePoint <= 0xDFFF) || codePoint > 0x10FFFF) {
+                return 0xFFFD;
+            }
+            return codePoint;
+        }
+        if (!isAsciiLetter(first)) {
+            position++;
+            return '&';
+        }
+        int end = start;
+        while (end < length && Character.isLetterOrDigit(html.charAt(end))) {
+            end++;
+        }
+        Character decoded = end < length && html.charAt(end) == ';'
+                ? ENTITIES.get(html.substring(start, end)) : null;
+        if (decoded == null) {
+            if (inAttribute) {
+                // Jsoup leaves unrecognised references within attribute values untouched
+                position++;
+                return '&';
+            }
+            return -1;
+        }
+        position = end + 1;
+        return decoded;
+    }
+
+    // Collapses whitespace the same way Jsoup's Element.text() does
+    private void appendText(char c) {
+        if (isWhitespace(c)) {
+            int last = text.length() - 1;
+            if (last >= 0 && text.charAt(last) == ' ') {
+                return;
+            }
+            text.append(' ');
+        } else if (c != 0) {
+            text.append(c);
+        }
+    }
+
+    private void appendCodePoint(int codePoint) {
+        if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            appendText((char) codePoint);
+        } else {
+            text.appendCodePoint(codePoint);
+        }
+    }
+
+    // Block elements and <br> are separated from the preceding text by a single space
+    private void appendSeparator() {
+        int last = text.length() - 1;
+        if (last >= 0 && text.charAt(last) != ' ') {
+            text.append(' ');
+        }
+    }
+
+    // Advances past the next occurrence of terminator, returning false if there is none
+    private boolean skipPast(String terminator) {
+        int end = html.indexOf(terminator, position);
+        if (end == -1) {
+            return false;
+        }
+        position = end + terminator.length();
+        return true;
+    }
+
+    private void skipWhitespace() {
+        while (position < length && isWhitespace(html.charAt(position))) {
+            position++;
+        }
+    }
+
+    private int indexOfIgnoreCase(String target, int from) {
+        int last = length - target.length();
+        for (int i = from; i <= last; i++) {
+            if (html.regionMatches(true, i, target, 0, target.length())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isTagNameEnd(char c) {
+        return isWhitespace(c) || c == '/' || c == '>';
+    }
+
+    private static boolean isAttributeNameEnd(char c) {
+        return isWhitespace(c) || c == '/' || c == '=' || c == '>';
+    }
+
+    // The same whitespace characters recognised by Jsoup's StringUtil
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r';
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+}
@@ -2,8 +2,14 @@ package io.bloc.android.blocly.api.network;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Created by namlu on 27-Aug-16.
@@ -12,9 +18,21 @@ public abstract class NetworkRequest<Result> {
 
     public static final int ERROR_IO = 1;
     public static final int ERROR_MALFORMED_URL = 2;
+    // Reported by requests which were cancelled before they finished
+    public static final int ERROR_CANCELLED = 4;
+
+    // Request headers used to make a GET conditional on the validators of a previous response
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
 
     public int errorCode;
 
+    private volatile boolean cancelled;
+    // Streams opened by this request which have not been closed yet, cancel() closes them
+    private final Set<InputStream> openStreams = new HashSet<InputStream>();
+
     // Each request is responsible for reporting errors to its callers
     public int getErrorCode() {
         return errorCode;
@@ -24,32 +42,150 @@ public abstract class NetworkRequest<Result> {
         this.errorCode = errorCode;
     }
 
+    // Stops the request as soon as possible. Streams still being read are closed, which makes
+    // their readers fail, and no further streams are opened. May be called from any thread
+    public void cancel() {
+        List<InputStream> streamsToClose;
+        synchronized (openStreams) {
+            cancelled = true;
+            streamsToClose = new ArrayList<InputStream>(openStreams);
+            openStreams.clear();
+        }
+        for (InputStream inputStream : streamsToClose) {
+            closeStream(inputStream);
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
     // Method which accesses the Internet, retrieves the result and returns it in the anticipated form.
     public abstract Result performRequest();
 
     // To help subclasses make GET HTTP requests of any URL, the base class provides a convenience method
     protected InputStream openStream(String urlString){
+        Response response = openConditionalStream(urlString, null, null);
+        if (response.errorCode != 0) {
+            setErrorCode(response.errorCode);
+            return null;
+        }
+        return response.inputStream;
+    }
+
+    // Makes a GET request which the server may answer with 304 Not Modified if the resource still
+    // matches the eTag or lastModified validators of an earlier response. Either may be null.
+    // Failures are reported through the Response's errorCode rather than the request's own, so
+    // several streams may be opened at once from different threads.
+    protected Response openConditionalStream(String urlString, String eTag, String lastModified) {
+        Response response = openUntrackedStream(urlString, eTag, lastModified);
+        if (response.inputStream != null) {
+            synchronized (openStreams) {
+                if (!cancelled) {
+                    openStreams.add(response.inputStream);
+                    return response;
+                }
+            }
+            closeStream(response.inputStream);
+            return new Response(ERROR_CANCELLED);
+        }
+        if (response.errorCode == 0 && cancelled) {
+            return new Response(ERROR_CANCELLED);
+        }
+        return response;
+    }
+
+    private Response openUntrackedStream(String urlString, String eTag, String lastModified) {
+        if (cancelled) {
+            return new Response(ERROR_CANCELLED);
+        }
         URL url = null;
 
         try {
             url = new URL(urlString);
         } catch (MalformedURLException e) {
             e.printStackTrace();
-            setErrorCode(ERROR_MALFORMED_URL);
-            return null;
+            return new Response(ERROR_MALFORMED_URL);
         }
 
-        InputStream inputStream = null;
+        try {
+            URLConnection connection = url.openConnection();
+
+            // Only HTTP(S) connections support validators, any other scheme is read directly
+            if (!(connection instanceof HttpURLConnection)) {
+                return new Response(HttpURLConnection.HTTP_OK, connection.getInputStream(), null, null);
+            }
+
+            HttpURLConnection httpConnection = (HttpURLConnection) connection;
+            if (eTag != null) {
+                httpConnection.setRequestProperty(HEADER_IF_NONE_MATCH, eTag);
+            }
+            if (lastModified != null) {
+                httpConnection.setRequestProperty(HEADER_IF_MODIFIED_SINCE, lastModified);
+            }
 
+            int statusCode = httpConnection.getResponseCode();
+            if (statusCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                // A 304 may refresh the validators, otherwise the ones we sent remain current
+                String responseETag = httpConnection.getHeaderField(HEADER_ETAG);
+                String responseLastModified = httpConnection.getHeaderField(HEADER_LAST_MODIFIED);
+                httpConnection.disconnect();
+                return new Response(statusCode, null,
+                        responseETag == null ? eTag : responseETag,
+                        responseLastModified == null ? lastModified : responseLastModified);
+            }
+            if (statusCode >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                httpConnection.disconnect();
+                return new Response(ERROR_IO);
+            }
+            return new Response(statusCode, httpConnection.getInputStream(),
+                    httpConnection.getHeaderField(HEADER_ETAG),
+                    httpConnection.getHeaderField(HEADER_LAST_MODIFIED));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new Response(ERROR_IO);
+        }
+    }
+
+    // Closes a stream returned by openStream(), ignoring any failure to do so
+    protected void closeStream(InputStream inputStream) {
+        synchronized (openStreams) {
+            openStreams.remove(inputStream);
+        }
         try {
-            // openStream() method opens a connection to URL and returns an InputStream
-            // for reading from that connection.
-            inputStream = url.openStream();
+            inputStream.close();
         } catch (IOException e) {
             e.printStackTrace();
-            setErrorCode(ERROR_IO);
-            return null;
         }
-        return inputStream;
+    }
+
+    // The result of openConditionalStream(). inputStream is null when the request failed, in which
+    // case errorCode is set, or when the server reported that the resource has not been modified.
+    public static class Response {
+        public final int statusCode;
+        public final InputStream inputStream;
+        public final String eTag;
+        public final String lastModified;
+        public final int errorCode;
+
+        public Response(int statusCode, InputStream inputStream, String eTag, String lastModified) {
+            this.statusCode = statusCode;
+            this.inputStream = inputStream;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.errorCode = 0;
+        }
+
+        public Response(int errorCode) {
+            this.statusCode = -1;
+            this.inputStream = null;
+            this.eTag = null;
+            this.lastModified = null;
+            this.errorCode = errorCode;
+        }
+
+        public boolean isNotModified() {
+            return statusCode == HttpURLConnection.HTTP_NOT_MODIFIED;
+        }
     }
 }
@@ -0,0 +1,305 @@
+package io.bloc.android.blocly.api.network;
+
+/**
+ * PubDateParser converts the dates found in feeds into Unix time without SimpleDateFormat.
+ * It accepts RFC-822 dates as used by RSS, e.g. "Sat, 07 Sep 2002 09:42:31 GMT", including the
+ * usual variants (no day name, no seconds, single digit days, two digit years, full month names,
+ * numeric or named zones), and RFC-3339 timestamps as used by Atom, e.g. "2002-09-07T09:42:31.5+02:00".
+ * The methods are static and keep no state, so they may be used from any thread, and only read
+ * the String they are given.
+ */
+public class PubDateParser {
+
+    // Returned when the date cannot be recognized
+    public static final long INVALID_DATE = Long.MIN_VALUE;
+
+    private static final long MILLIS_PER_MINUTE = 60 * 1000l;
+    private static final long MILLIS_PER_DAY = 24 * 60 * MILLIS_PER_MINUTE;
+
+    // Three letter month abbreviations, in order, used to match both short and full month names
+    private static final String MONTHS = "janfebmaraprmayjunjulaugsepoctnovdec";
+
+    // Named zones from RFC-822 and their offset from UTC in minutes
+    private static final String[] ZONE_NAMES = {"GMT", "UTC", "UT", "Z", "EST", "EDT", "CST", "CDT",
+            "MST", "MDT", "PST", "PDT"};
+    private static final int[] ZONE_OFFSETS = {0, 0, 0, 0, -5 * 60, -4 * 60, -6 * 60, -5 * 60,
+            -7 * 60, -6 * 60, -8 * 60, -7 * 60};
+
+    private PubDateParser() {
+    }
+
+    // Returns the date in milliseconds since January 1, 1970, 00:00:00 GMT, or INVALID_DATE
+    public static long parse(String date) {
+        if (date == null) {
+            return INVALID_DATE;
+        }
+        int start = skipSpaces(date, 0);
+        // RFC-3339 timestamps begin with a four digit year, RFC-822 dates with a day name or day
+        if (date.length() - start >= 10 && date.charAt(start + 4) == '-') {
+            return parseRfc3339(date, start);
+        }
+        return parseRfc822(date, start);
+    }
+
+    // [day-name ","] day month year hour ":" minute [":" second] [zone]
+    private static long parseRfc822(String date, int position) {
+        int length = date.length();
+
+        // The day name is optional and carries no information
+        if (position < length && Character.isLetter(date.charAt(position))) {
+            while (position < length && Character.isLetter(date.charAt(position))) {
+                position++;
+            }
+            if (position < length && date.charAt(position) == ',') {
+                position++;
+            }
+            position = skipSpaces(date, position);
+        }
+
+        int end = digitsEnd(date, position, 2);
+        if (end == position) {
+            return INVALID_DATE;
+        }
+        int day = readInt(date, position, end);
+        position = skipSpaces(date, end);
+
+        // Month names are matched on their first three letters, so "Sep", "Sept" and "September" agree
+        if (position + 3 > length) {
+            return INVALID_DATE;
+        }
+        int month = monthOf(date, position);
+        if (month == 0) {
+            return INVALID_DATE;
+        }
+        position += 3;
+        while (position < length && Character.isLetter(date.charAt(position))) {
+            position++;
+        }
+        if (position < length && date.charAt(position) == '.') {
+            position++;
+        }
+        position = skipSpaces(date, position);
+
+        end = digitsEnd(date, position, 4);
+        if (end - position != 2 && end - position != 4) {
+            return INVALID_DATE;
+        }
+        int year = readInt(date, position, end);
+        if (end - position == 2) {
+            // Two digit years follow the RFC-2822 rule for obsolete dates
+            year += year < 50 ? 2000 : 1900;
+        }
+        position = skipSpaces(date, end);
+
+        end = digitsEnd(date, position, 2);
+        if (end == position || end >= length || date.charAt(end) != ':') {
+            return INVALID_DATE;
+        }
+        int hour = readInt(date, position, end);
+        position = end + 1;
+        end = digitsEnd(date, position, 2);
+        if (end - position != 2) {
+            return INVALID_DATE;
+        }
+        int minute = readInt(date, position, end);
+        position = end;
+        int second = 0;
+        if (position < length && date.charAt(position) == ':') {
+            position++;
+            end = digitsEnd(date, position, 2);
+            if (end - position != 2) {
+                return INVALID_DATE;
+            }
+            second = readInt(date, position, end);
+            position = end;
+        }
+        position = skipSpaces(date, position);
+
+        // Dates without a zone are taken to be UTC
+        int offsetMinutes = 0;
+        if (position < length) {
+            offsetMinutes = zoneOffset(date, position);
+            if (offsetMinutes == Integer.MIN_VALUE) {
+                return INVALID_DATE;
+            }
+        }
+        return toMillis(year, month, day, hour, minute, second, 0, offsetMinutes);
+    }
+
+    // year "-" month "-" day ("T" | " ") hour ":" minute ":" second ["." fraction] ("Z" | offset)
+    private static long parseRfc3339(String date, int position) {
+        int length = date.length();
+        if (digitsEnd(date, position, 4) != position + 4 || date.charAt(position + 7) != '-'
+                || digitsEnd(date, position + 5, 2) != position + 7
+                || digitsEnd(date, position + 8, 2) != position + 10) {
+            return INVALID_DATE;
+        }
+        int year = readInt(date, position, position + 4);
+        int month = readInt(date, position + 5, position + 7);
+        int day = readInt(date, position + 8, position + 10);
+        position += 10;
+
+        int hour = 0;
+        int minute = 0;
+        int second = 0;
+        int millis = 0;
+        int offsetMinutes = 0;
+        // A date on its own stands for midnight UTC
+        if (position < length) {
+            char separator = date.charAt(position);
+            if (separator != 'T' && separator != 't' && separator != ' ') {
+                return INVALID_DATE;
+            }
+            position++;
+            if (position + 5 > length || digitsEnd(date, position, 2) != position + 2
+                    || date.charAt(position + 2) != ':'
+                    || digitsEnd(date, position + 3, 2) != position + 5) {
+                return INVALID_DATE;
+            }
+            hour = readInt(date, position, position + 2);
+            minute = readInt(date, position + 3, position + 5);
+            position += 5;
+            if (position < length && date.charAt(position) == ':') {
+                if (digitsEnd(date, position + 1, 2) != position + 3) {
+                    return INVALID_DATE;
+                }
+                second = readInt(date, position + 1, position + 3);
+                position += 3;
+            }
+            if (position < length && date.charAt(position) == '.') {
+                // Only the first three digits of the fraction are significant
+                int end = position + 1;
+                int scale = 100;
+                while (end < length && isDigit(date.charAt(end))) {
+                    millis += (date.charAt(end) - '0') * scale;
+                    scale /= 10;
+                    end++;
+                }
+                if (end == position + 1) {
+                    return INVALID_DATE;
+                }
+                position = end;
+            }
+            position = skipSpaces(date, position);
+            if (position < length) {
+                offsetMinutes = zoneOffset(date, position);
+                if (offsetMinutes == Integer.MIN_VALUE) {
+                    return INVALID_DATE;
+                }
+            }
+        }
+        return toMillis(year, month, day, hour, minute, second, millis, offsetMinutes);
+    }
+
+    // Returns the zone's offset from UTC in minutes, or Integer.MIN_VALUE. Accepts "+hhmm", "+hh:mm",
+    // "+hh" and the named zones. Anything after the zone, such as a comment, is ignored.
+    private static int zoneOffset(String date, int position) {
+        char sign = date.charAt(position);
+        if (sign == '+' || sign == '-') {
+            int end = digitsEnd(date, position + 1, 4);
+            int hours;
+            int minutes = 0;
+            if (end - position == 5) {
+                hours = readInt(date, position + 1, position + 3);
+                minutes = readInt(date, position + 3, position + 5);
+            } else if (end - position == 3) {
+                hours = readInt(date, position + 1, position + 3);
+                if (end < date.length() && date.charAt(end) == ':') {
+                    if (digitsEnd(date, end + 1, 2) != end + 3) {
+                        return Integer.MIN_VALUE;
+                    }
+                    minutes = readInt(date, end + 1, end + 3);
+                }
+            } else {
+                return Integer.MIN_VALUE;
+            }
+            if (minutes > 59) {
+                return Integer.MIN_VALUE;
+            }
+            int offset = hours * 60 + minutes;
+            return sign == '-' ? -offset : offset;
+        }
+        for (int i = 0; i < ZONE_NAMES.length; i++) {
+            String zoneName = ZONE_NAMES[i];
+            if (date.regionMatches(true, position, zoneName, 0, zoneName.length())
+                    && !isLetterAt(date, position + zoneName.length())) {
+                return ZONE_OFFSETS[i];
+            }
+        }
+        return Integer.MIN_VALUE;
+    }
+
+    // Converts the fields to Unix time, or returns INVALID_DATE if any is out of range
+    private static long toMillis(int year, int month, int day, int hour, int minute, int second,
+                                 int millis, int offsetMinutes) {
+        if (month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month) || hour > 23
+                || minute > 59 || second > 60) {
+            return INVALID_DATE;
+        }
+        // A leap second is folded into the following second, as SimpleDateFormat does
+        long days = daysFromEpoch(year, month, day);
+        return days * MILLIS_PER_DAY + ((hour * 60 + minute) * 60 + second) * 1000l + millis
+                - offsetMinutes * MILLIS_PER_MINUTE;
+    }
+
+    // Number of days between January 1, 1970 and the given date in the proleptic Gregorian calendar
+    private static long daysFromEpoch(int year, int month, int day) {
+        // Count years from March so that the leap day falls at the end of the year
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097l + dayOfEra - 719468;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 2) {
+            boolean leapYear = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+            return leapYear ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    // Returns 1 to 12 for the month whose name starts at position, or 0
+    private static int monthOf(String date, int position) {
+        for (int i = 0; i < 12; i++) {
+            if (date.regionMatches(true, position, MONTHS, i * 3, 3)) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    // Returns the index after the run of at most maxDigits digits starting at position
+    private static int digitsEnd(String date, int position, int maxDigits) {
+        int end = position;
+        while (end < date.length() && end - position < maxDigits && isDigit(date.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+
+    private static int readInt(String date, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            value = value * 10 + (date.charAt(i) - '0');
+        }
+        return value;
+    }
+
+    private static int skipSpaces(String date, int position) {
+        while (position < date.length() && Character.isWhitespace(date.charAt(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isLetterAt(String date, int position) {
+        return position < date.length() && Character.isLetter(date.charAt(position));
+    }
+}
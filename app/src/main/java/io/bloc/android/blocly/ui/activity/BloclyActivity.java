@@ -3,8 +3,10 @@ package io.bloc.android.blocly.ui.activity;
 import android.animation.ValueAnimator;
 import android.content.Intent;
 import android.content.res.Configuration;
+import android.database.Cursor;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
 import android.support.v4.content.ContextCompat;
 import android.support.v4.widget.DrawerLayout;
@@ -22,11 +24,20 @@ import android.view.animation.AccelerateDecelerateInterpolator;
 import android.widget.Toast;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import io.bloc.android.blocly.BloclyApplication;
 import io.bloc.android.blocly.R;
+import io.bloc.android.blocly.api.ChangeSet;
 import io.bloc.android.blocly.api.DataSource;
+import io.bloc.android.blocly.api.ItemCounts;
+import io.bloc.android.blocly.api.ItemPage;
+import io.bloc.android.blocly.api.ItemStateStore;
+import io.bloc.android.blocly.api.RequestHandle;
+import io.bloc.android.blocly.api.StartupContent;
+import io.bloc.android.blocly.api.model.Model;
 import io.bloc.android.blocly.api.model.RssFeed;
 import io.bloc.android.blocly.api.model.RssItem;
 import io.bloc.android.blocly.ui.adapter.ItemAdapter;
@@ -40,8 +51,12 @@ public class BloclyActivity extends AppCompatActivity
         NavigationDrawerAdapter.NavigationDrawerAdapterDelegate,
         ItemAdapter.DataSource,
         ItemAdapter.Delegate,
+        ItemAdapter.PageLoader,
         NavigationDrawerAdapter.NavigationDrawerAdapterDataSource{
 
+    // Beyond this many items, ItemAdapter binds the feed from a Cursor instead of holding models
+    private static final int MAX_LISTED_ITEMS = 300;
+
     // 55: Add SwipeRefreshLayout variable
     private SwipeRefreshLayout swipeRefreshLayout;
     // Add external reference to RecyclerView
@@ -58,20 +73,58 @@ public class BloclyActivity extends AppCompatActivity
     // 55: BloclyActivity now implements its own lists
     private List<RssFeed> allFeeds = new ArrayList<RssFeed>();
     private List<RssItem> currentItems = new ArrayList<RssItem>();
+    // Requests still in flight, cancelled when they are superseded or the Activity is destroyed
+    private RequestHandle startupRequest;
+    private RequestHandle refreshRequest;
+    private RequestHandle itemsRequest;
+    private RequestHandle pageRequest;
+    private RequestHandle cursorRequest;
+    // Set when the Cursor on screen falls behind a write while it is being read again, along with
+    //      the items updated since it was read
+    private boolean cursorStale;
+    private final Set<Long> staleItemIds = new HashSet<Long>();
+    private RequestHandle itemCountsRequest;
+    private List<RequestHandle> changedItemsRequests = new ArrayList<RequestHandle>();
+    // The feed whose items are shown in currentItems
+    private RssFeed currentFeed;
+    // The last page of currentFeed's items read so far
+    private ItemPage lastItemPage;
+    // Counts shown in the navigation drawer, null until first read
+    private ItemCounts itemCounts;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        // Stored feeds and items are read while the views below are inflated, the network is
+        //      only used once the user refreshes
+        startupRequest = BloclyApplication.getSharedDataSource().fetchStartupContent(
+                new DataSource.Callback<StartupContent>() {
+
+                    @Override
+                    public void onSuccess(StartupContent startupContent) {
+                        startupRequest = null;
+                        showStartupContent(startupContent);
+                    }
+
+                    @Override
+                    public void onError(String errorMessage) {
+                        startupRequest = null;
+                    }
+                });
         setContentView(R.layout.activity_blocly);
 
         // Assign ToolBar as our ActionBar
         Toolbar toolbar = (Toolbar) findViewById(R.id.tb_activity_blocly);
         setSupportActionBar(toolbar);
 
+        // Subscribed until onDestroy()
+        BloclyApplication.getSharedDataSource().subscribe(changeListener);
+
         itemAdapter = new ItemAdapter();
         // Set BloclyActivity as ItemAdapter's delegate and data source.
         itemAdapter.setDataSource(this);
         itemAdapter.setDelegate(this);
+        itemAdapter.setPageLoader(this);
 
         // 55: Initialize SwipeRefreshLayout variable
         swipeRefreshLayout = (SwipeRefreshLayout) findViewById(R.id.srl_activity_blocly);
@@ -83,47 +136,46 @@ public class BloclyActivity extends AppCompatActivity
             public void onRefresh() {
                 // 55: Fetch a new feed and provide an in-line Callback interface to
                 //      receive the results
-                BloclyApplication.getSharedDataSource().fetchNewFeed("http://feeds.feedburner.com/androidcentral?format=xml",
+                refreshRequest = BloclyApplication.getSharedDataSource().fetchNewFeed("http://feeds.feedburner.com/androidcentral?format=xml",
                 // BloclyApplication.getSharedDataSource().fetchNewFeed("http://feeds.ign.com/ign/all?format=xml",
+                        // The refresh indicator shows how many items have been stored so far
+                        new DataSource.ProgressListener() {
+                            @Override
+                            public void onItemsIngested(int insertedCount, int updatedCount) {
+                                getSupportActionBar().setSubtitle(getString(R.string.refresh_progress,
+                                        insertedCount, updatedCount));
+                            }
+                        },
                         new DataSource.Callback<RssFeed>() {
 
                             @Override
                             public void onSuccess(RssFeed rssFeed) {
-                                // 55: Check to see if Activity is still active
-                                if (isFinishing() || isDestroyed()) {
-                                    return;
+                                getSupportActionBar().setSubtitle(null);
+                                // Callbacks of cancelled requests are dropped, so the Activity is still active
+                                // A refreshed feed replaces its earlier copy instead of being listed twice
+                                int feedIndex = indexOfModel(allFeeds, rssFeed.getRowId());
+                                int feedOptionsCount = NavigationDrawerAdapter.NavigationOption.values().length;
+                                if (feedIndex == -1) {
+                                    allFeeds.add(rssFeed);
+                                    navigationDrawerAdapter.notifyItemInserted(feedOptionsCount + allFeeds.size() - 1);
+                                } else {
+                                    allFeeds.set(feedIndex, rssFeed);
+                                    navigationDrawerAdapter.notifyItemChanged(feedOptionsCount + feedIndex);
+                                }
+                                // The items of the feed on screen arrive through changeListener as they
+                                //      are stored, any other feed's items are loaded in full
+                                if (currentFeed != null && currentFeed.getRowId() == rssFeed.getRowId()) {
+                                    currentFeed = rssFeed;
+                                    // 55: programmatically disable the refreshing animation
+                                    swipeRefreshLayout.setRefreshing(false);
+                                } else {
+                                    showItemsForFeed(rssFeed);
                                 }
-                                allFeeds.add(rssFeed);
-                                navigationDrawerAdapter.notifyDataSetChanged();
-                                BloclyApplication.getSharedDataSource().fetchItemsForFeed(rssFeed,
-                                        new DataSource.Callback<List<RssItem>>() {
-
-                                            @Override
-                                            public void onSuccess(List<RssItem> rssItems) {
-                                                // 55: Check to see if Activity is still active
-                                                if (isFinishing() || isDestroyed()) {
-                                                    return;
-                                                }
-                                                currentItems.addAll(0, rssItems);
-                                                // 55: notifyItemRangeInserted() uses ItemAnimator to add
-                                                //      each RSS item to RecyclerView individually, producing
-                                                //      a pleasing animation that eases items into place
-                                                //      rather than forcing them to appear instantaneously
-                                                itemAdapter.notifyItemRangeInserted(0, rssItems.size());
-                                                // 55: programmatically disable the refreshing animation
-                                                swipeRefreshLayout.setRefreshing(false);
-                                            }
-
-                                            @Override
-                                            public void onError(String errorMessage) {
-                                                // 55: programmatically disable the refreshing animation
-                                                swipeRefreshLayout.setRefreshing(false);
-                                            }
-                                        });
                             }
 
                             @Override
                             public void onError(String errorMessage) {
+                                getSupportActionBar().setSubtitle(null);
                                 Toast.makeText(BloclyActivity.this, errorMessage, Toast.LENGTH_LONG).show();
                                 // 55: programmatically disable the refreshing animation
                                 swipeRefreshLayout.setRefreshing(false);
@@ -153,6 +205,7 @@ public class BloclyActivity extends AppCompatActivity
         navigationRecyclerView.setLayoutManager(new LinearLayoutManager(this));
         navigationRecyclerView.setItemAnimator(new DefaultItemAnimator());
         navigationRecyclerView.setAdapter(navigationDrawerAdapter);
+        loadItemCounts();
 
         // Recover the instance of ActionBar associated with ToolBar
         // and invoke setDisplayHomeAsUpEnabled(boolean) to allow this behavior
@@ -249,6 +302,42 @@ public class BloclyActivity extends AppCompatActivity
         drawerLayout.addDrawerListener(drawerToggle);
     }
 
+    @Override
+    // Flag changes still held in memory are written before the app may be stopped
+    protected void onPause() {
+        BloclyApplication.getSharedDataSource().flushItemStates();
+        super.onPause();
+    }
+
+    @Override
+    // Abandon outstanding requests, their results could no longer be shown
+    protected void onDestroy() {
+        if (startupRequest != null) {
+            startupRequest.cancel();
+        }
+        if (refreshRequest != null) {
+            refreshRequest.cancel();
+        }
+        if (itemsRequest != null) {
+            itemsRequest.cancel();
+        }
+        if (pageRequest != null) {
+            pageRequest.cancel();
+        }
+        if (cursorRequest != null) {
+            cursorRequest.cancel();
+        }
+        if (itemCountsRequest != null) {
+            itemCountsRequest.cancel();
+        }
+        for (RequestHandle changedItemsRequest : changedItemsRequests) {
+            changedItemsRequest.cancel();
+        }
+        closeItemCursor();
+        BloclyApplication.getSharedDataSource().unsubscribe(changeListener);
+        super.onDestroy();
+    }
+
     @Override
     // Call syncState() to synchronize the indicator with the state of the linked DrawerLayout
     protected void onPostCreate(Bundle savedInstanceState){
@@ -335,6 +424,11 @@ public class BloclyActivity extends AppCompatActivity
         return allFeeds;
     }
 
+    @Override
+    public ItemCounts getItemCounts(NavigationDrawerAdapter adapter) {
+        return itemCounts;
+    }
+
     /*
      * ItemAdapter.DataSource
      */
@@ -350,6 +444,10 @@ public class BloclyActivity extends AppCompatActivity
         // get() returns a RssFeed
         // 55: previous assumption was that feed was found at 0th index, but updating so that
         //      multiple feeds are supported
+        // A Cursor only ever holds the items of currentFeed
+        if (itemAdapter.getCursor() != null) {
+            return currentFeed;
+        }
         RssItem rssItem = currentItems.get(position);
         for (RssFeed feed: allFeeds) {
             // 55: Todo
@@ -378,10 +476,9 @@ public class BloclyActivity extends AppCompatActivity
         // getExpandedItem() returns an RssItem
         if(itemAdapter.getExpandedItem() != null){
             // If ItemAdapter was previously expanded, contract it
-            // Recover its position within the list by invoking List's indexOf(Object) method
-            // currentItems is an ArrayList<RssItems>
-            // indexOf() returns an int
-            positionToContract = currentItems.indexOf(itemAdapter.getExpandedItem());
+            // Recover its position within the list from its row id, as the list may be a Cursor
+            //      and its RssItem a different instance from the one clicked
+            positionToContract = itemAdapter.getPosition(itemAdapter.getExpandedItem().getRowId());
 
             // Only check the edge-case condition when both expanding and contracting Views are visible on screen
             // findViewByPosition() returns 'position' if View is currently onscreen, 'null' otherwise
@@ -392,9 +489,12 @@ public class BloclyActivity extends AppCompatActivity
         }
 
         // When a new item is clicked, recover its position within the list and set it as the expanded item
-        if(itemAdapter.getExpandedItem() != rssItem){
-            positionToExpand = currentItems.indexOf(rssItem);
+        if(itemAdapter.getExpandedItem() == null
+                || itemAdapter.getExpandedItem().getRowId() != rssItem.getRowId()){
+            positionToExpand = itemAdapter.getPosition(rssItem.getRowId());
             itemAdapter.setExpandedItem(rssItem);
+            // Expanding an item shows all of it, it counts as read
+            BloclyApplication.getSharedDataSource().setItemFlag(rssItem, ItemStateStore.Flag.READ, true);
         }else{
             // If user clicks on the expanded item, contract it by resetting ItemAdapter's expanded item to null
             itemAdapter.setExpandedItem(null);
@@ -432,6 +532,43 @@ public class BloclyActivity extends AppCompatActivity
         recyclerView.smoothScrollBy(0, viewToExpand.getTop() - lessToScroll);
     }
 
+    /*
+     * ItemAdapter.PageLoader
+     */
+
+    @Override
+    public void loadNextPage(ItemAdapter itemAdapter) {
+        // Pages are read one at a time, in order
+        if (currentFeed == null || lastItemPage == null || !lastItemPage.hasMore() || pageRequest != null) {
+            return;
+        }
+        pageRequest = BloclyApplication.getSharedDataSource().fetchItemPage(currentFeed, lastItemPage,
+                new DataSource.Callback<ItemPage>() {
+
+                    @Override
+                    public void onSuccess(ItemPage itemPage) {
+                        pageRequest = null;
+                        lastItemPage = itemPage;
+                        int start = currentItems.size();
+                        for (RssItem rssItem : itemPage.getItems()) {
+                            if (indexOfModel(currentItems, rssItem.getRowId()) == -1) {
+                                currentItems.add(rssItem);
+                            }
+                        }
+                        BloclyActivity.this.itemAdapter.notifyItemRangeInserted(start, currentItems.size() - start);
+                        // Long feeds are bound from a Cursor from here on, rather than kept in memory
+                        if (currentItems.size() >= MAX_LISTED_ITEMS && itemPage.hasMore()) {
+                            openItemCursor();
+                        }
+                    }
+
+                    @Override
+                    public void onError(String errorMessage) {
+                        pageRequest = null;
+                    }
+                });
+    }
+
     // Implement onVisitedClicked delegate method
     @Override
     public void onVisitClicked(ItemAdapter itemAdapter, RssItem rssItem) {
@@ -439,10 +576,359 @@ public class BloclyActivity extends AppCompatActivity
         startActivity(visitIntent);
     }
 
+    // Flag changes are shown by the check boxes at once and written in batches by DataSource
+    @Override
+    public void onItemFavoriteChanged(ItemAdapter itemAdapter, RssItem rssItem, boolean favorite) {
+        BloclyApplication.getSharedDataSource().setItemFlag(rssItem, ItemStateStore.Flag.FAVORITE, favorite);
+    }
+
+    @Override
+    public void onItemArchivedChanged(ItemAdapter itemAdapter, RssItem rssItem, boolean archived) {
+        BloclyApplication.getSharedDataSource().setItemFlag(rssItem, ItemStateStore.Flag.ARCHIVED, archived);
+    }
+
     /*
     * Private methods
     */
 
+    // Replaces the items on screen with the first page of the given feed's items, later pages
+    //      are loaded as the user scrolls towards them
+    private void showItemsForFeed(RssFeed rssFeed) {
+        currentFeed = rssFeed;
+        lastItemPage = null;
+        // Only the latest list of items matters
+        if (itemsRequest != null) {
+            itemsRequest.cancel();
+        }
+        if (pageRequest != null) {
+            pageRequest.cancel();
+            pageRequest = null;
+        }
+        if (cursorRequest != null) {
+            cursorRequest.cancel();
+            cursorRequest = null;
+        }
+        itemsRequest = BloclyApplication.getSharedDataSource().fetchItemPage(rssFeed, null,
+                new DataSource.Callback<ItemPage>() {
+
+                    @Override
+                    public void onSuccess(ItemPage itemPage) {
+                        showFirstPage(itemPage);
+                        // 55: programmatically disable the refreshing animation
+                        swipeRefreshLayout.setRefreshing(false);
+                    }
+
+                    @Override
+                    public void onError(String errorMessage) {
+                        // 55: programmatically disable the refreshing animation
+                        swipeRefreshLayout.setRefreshing(false);
+                    }
+                });
+    }
+
+    // Replaces the items on screen with the first page of currentFeed's items
+    private void showFirstPage(ItemPage itemPage) {
+        lastItemPage = itemPage;
+        // The first page replaces what is shown rather than being added to it
+        int previousCount = itemAdapter.getItemCount();
+        closeItemCursor();
+        currentItems.clear();
+        currentItems.addAll(itemPage.getItems());
+        // Keep the same item expanded, its RssItem is a new instance
+        RssItem expandedItem = itemAdapter.getExpandedItem();
+        if (expandedItem != null) {
+            int expandedIndex = indexOfModel(currentItems, expandedItem.getRowId());
+            itemAdapter.setExpandedItem(expandedIndex == -1
+                    ? null : currentItems.get(expandedIndex));
+        }
+        if (previousCount == 0) {
+            // 55: notifyItemRangeInserted() uses ItemAnimator to add
+            //      each RSS item to RecyclerView individually, producing
+            //      a pleasing animation that eases items into place
+            //      rather than forcing them to appear instantaneously
+            itemAdapter.notifyItemRangeInserted(0, currentItems.size());
+        } else {
+            itemAdapter.notifyDataSetChanged();
+        }
+    }
+
+    // Lists the stored feeds and shows the first one's newest items, unless the user has already
+    //      brought up a feed. Stored content is on screen at this point, which ends the startup metric
+    private void showStartupContent(StartupContent startupContent) {
+        int feedOptionsCount = NavigationDrawerAdapter.NavigationOption.values().length;
+        for (RssFeed rssFeed : startupContent.getFeeds()) {
+            if (indexOfModel(allFeeds, rssFeed.getRowId()) == -1) {
+                allFeeds.add(rssFeed);
+                navigationDrawerAdapter.notifyItemInserted(feedOptionsCount + allFeeds.size() - 1);
+            }
+        }
+        ItemPage firstPage = startupContent.getFirstPage();
+        if (currentFeed == null && firstPage != null) {
+            currentFeed = allFeeds.get(indexOfModel(allFeeds, firstPage.getFeedRowId()));
+            showFirstPage(firstPage);
+        }
+        if (BloclyApplication.getSharedInstance().reportContentShown()
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            // Lets the platform's own startup timing cover the stored content as well
+            reportFullyDrawn();
+        }
+    }
+
+    // Applies DataSource's changes to the lists on screen, telling each adapter exactly which
+    //      rows moved instead of reloading
+    private final DataSource.ChangeListener changeListener = new DataSource.ChangeListener() {
+        @Override
+        public void onDataChanged(ChangeSet changes) {
+            // Any write may have moved the counts, reading them again costs a handful of rows
+            loadItemCounts();
+            for (Long removedFeedId : changes.getRemovedFeedIds()) {
+                int feedIndex = indexOfModel(allFeeds, removedFeedId);
+                if (feedIndex != -1) {
+                    allFeeds.remove(feedIndex);
+                    navigationDrawerAdapter.notifyItemRemoved(
+                            NavigationDrawerAdapter.NavigationOption.values().length + feedIndex);
+                }
+                if (currentFeed != null && currentFeed.getRowId() == removedFeedId) {
+                    currentFeed = null;
+                    lastItemPage = null;
+                    if (cursorRequest != null) {
+                        cursorRequest.cancel();
+                        cursorRequest = null;
+                    }
+                    closeItemCursor();
+                    int removedCount = currentItems.size();
+                    currentItems.clear();
+                    itemAdapter.setExpandedItem(null);
+                    itemAdapter.notifyItemRangeRemoved(0, removedCount);
+                }
+            }
+            if (currentFeed == null) {
+                return;
+            }
+            ChangeSet.ItemChanges itemChanges = changes.getItemChanges(currentFeed.getRowId());
+            if (itemChanges == null) {
+                return;
+            }
+            // A Cursor is a snapshot, it is read again and only the rows which changed are rebound
+            if (itemAdapter.getCursor() != null) {
+                staleItemIds.addAll(itemChanges.getUpdatedIds());
+                refreshItemCursor();
+                return;
+            }
+
+            // Removed items leave at once, inserted and updated items are read first
+            for (Long removedItemId : itemChanges.getRemovedIds()) {
+                int itemIndex = indexOfModel(currentItems, removedItemId);
+                if (itemIndex != -1) {
+                    currentItems.remove(itemIndex);
+                    itemAdapter.notifyItemRemoved(itemIndex);
+                }
+            }
+            List<Long> changedItemIds = new ArrayList<Long>(itemChanges.getInsertedPubDates().keySet());
+            changedItemIds.addAll(itemChanges.getUpdatedIds());
+            if (changedItemIds.isEmpty()) {
+                return;
+            }
+            final long feedRowId = currentFeed.getRowId();
+            final RequestHandle[] changedItemsRequest = new RequestHandle[1];
+            changedItemsRequest[0] = BloclyApplication.getSharedDataSource().fetchItems(changedItemIds,
+                    new DataSource.Callback<List<RssItem>>() {
+
+                        @Override
+                        public void onSuccess(List<RssItem> rssItems) {
+                            changedItemsRequests.remove(changedItemsRequest[0]);
+                            // The user may have moved on to another feed
+                            if (currentFeed != null && currentFeed.getRowId() == feedRowId) {
+                                mergeItems(rssItems);
+                            }
+                        }
+
+                        @Override
+                        public void onError(String errorMessage) {
+                            changedItemsRequests.remove(changedItemsRequest[0]);
+                        }
+                    });
+            changedItemsRequests.add(changedItemsRequest[0]);
+        }
+    };
+
+    // Replaces the items already on screen and inserts the rest in order, notifying ItemAdapter of
+    //      each run of neighbouring insertions as one range. rssItems are ordered newest first
+    private void mergeItems(List<RssItem> rssItems) {
+        RssItem expandedItem = itemAdapter.getExpandedItem();
+        List<RssItem> newItems = new ArrayList<RssItem>();
+        for (RssItem rssItem : rssItems) {
+            int itemIndex = indexOfModel(currentItems, rssItem.getRowId());
+            if (itemIndex == -1) {
+                // Items below the pages loaded so far arrive with a later page
+                if (lastItemPage == null || !lastItemPage.hasMore() || !lastItemPage.endsBefore(rssItem)) {
+                    newItems.add(rssItem);
+                }
+                continue;
+            }
+            currentItems.set(itemIndex, rssItem);
+            if (expandedItem != null && expandedItem.getRowId() == rssItem.getRowId()) {
+                itemAdapter.setExpandedItem(rssItem);
+            }
+            itemAdapter.notifyItemChanged(itemIndex);
+        }
+
+        // Each new item sorts after the one before it, so its position is never lower
+        int rangeStart = 0;
+        int rangeCount = 0;
+        for (RssItem rssItem : newItems) {
+            int position = insertionPosition(rssItem);
+            currentItems.add(position, rssItem);
+            if (rangeCount > 0 && position == rangeStart + rangeCount) {
+                rangeCount++;
+                continue;
+            }
+            if (rangeCount > 0) {
+                itemAdapter.notifyItemRangeInserted(rangeStart, rangeCount);
+            }
+            rangeStart = position;
+            rangeCount = 1;
+        }
+        if (rangeCount > 0) {
+            itemAdapter.notifyItemRangeInserted(rangeStart, rangeCount);
+        }
+    }
+
+    // Reads all of currentFeed's items into a Cursor and has ItemAdapter bind from it, dropping
+    //      the models held so far. Stable ids keep the list where it is
+    private void openItemCursor() {
+        if (cursorRequest != null) {
+            cursorRequest.cancel();
+        }
+        final long feedRowId = currentFeed.getRowId();
+        cursorRequest = BloclyApplication.getSharedDataSource().fetchItemCursor(currentFeed,
+                new DataSource.Callback<Cursor>() {
+
+                    @Override
+                    public void onSuccess(Cursor cursor) {
+                        cursorRequest = null;
+                        if (currentFeed == null || currentFeed.getRowId() != feedRowId) {
+                            cursor.close();
+                            return;
+                        }
+                        Cursor oldCursor = itemAdapter.swapCursor(cursor);
+                        if (oldCursor != null) {
+                            oldCursor.close();
+                        }
+                        // Everything is in the Cursor now, no more pages are read
+                        if (pageRequest != null) {
+                            pageRequest.cancel();
+                            pageRequest = null;
+                        }
+                        lastItemPage = null;
+                        currentItems.clear();
+                    }
+
+                    @Override
+                    public void onError(String errorMessage) {
+                        cursorRequest = null;
+                    }
+                });
+    }
+
+    // Reads the Cursor on screen again once the writes reported so far have committed. Changes which
+    //      arrive while it is being read are taken in by one more read once it returns, rather than
+    //      by a read each
+    private void refreshItemCursor() {
+        if (cursorRequest != null) {
+            cursorStale = true;
+            return;
+        }
+        final long feedRowId = currentFeed.getRowId();
+        // Items updated from here on are left for the next read
+        final List<Long> updatedItemIds = new ArrayList<Long>(staleItemIds);
+        staleItemIds.clear();
+        cursorRequest = BloclyApplication.getSharedDataSource().fetchItemCursor(currentFeed,
+                new DataSource.Callback<Cursor>() {
+
+                    @Override
+                    public void onSuccess(Cursor cursor) {
+                        cursorRequest = null;
+                        if (currentFeed == null || currentFeed.getRowId() != feedRowId
+                                || itemAdapter.getCursor() == null) {
+                            cursor.close();
+                            return;
+                        }
+                        itemAdapter.changeCursor(cursor, updatedItemIds).close();
+                        if (cursorStale) {
+                            cursorStale = false;
+                            refreshItemCursor();
+                        }
+                    }
+
+                    @Override
+                    public void onError(String errorMessage) {
+                        cursorRequest = null;
+                        staleItemIds.addAll(updatedItemIds);
+                    }
+                });
+    }
+
+    // Returns ItemAdapter to binding currentItems, if it was binding a Cursor
+    private void closeItemCursor() {
+        cursorStale = false;
+        staleItemIds.clear();
+        if (itemAdapter.getCursor() != null) {
+            itemAdapter.swapCursor(null).close();
+        }
+    }
+
+    // Reads the drawer's counts, replacing any read still in flight
+    private void loadItemCounts() {
+        if (itemCountsRequest != null) {
+            itemCountsRequest.cancel();
+        }
+        itemCountsRequest = BloclyApplication.getSharedDataSource().fetchItemCounts(
+                new DataSource.Callback<ItemCounts>() {
+
+                    @Override
+                    public void onSuccess(ItemCounts counts) {
+                        itemCountsRequest = null;
+                        itemCounts = counts;
+                        navigationDrawerAdapter.notifyItemRangeChanged(0, navigationDrawerAdapter.getItemCount());
+                    }
+
+                    @Override
+                    public void onError(String errorMessage) {
+                        itemCountsRequest = null;
+                    }
+                });
+    }
+
+    // Finds where an item belongs in currentItems, which is ordered newest first
+    private int insertionPosition(RssItem rssItem) {
+        int low = 0;
+        int high = currentItems.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            RssItem other = currentItems.get(middle);
+            boolean otherComesFirst = other.getDatePublished() > rssItem.getDatePublished()
+                    || (other.getDatePublished() == rssItem.getDatePublished()
+                    && other.getRowId() > rssItem.getRowId());
+            if (otherComesFirst) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // Returns the position of the model with the given row id, or -1
+    private static int indexOfModel(List<? extends Model> models, long rowId) {
+        for (int i = 0; i < models.size(); i++) {
+            if (models.get(i).getRowId() == rowId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     // Method animates share button to full opacity or full transparency based on desired
     // enabled state
     private void animateShareItem(final boolean enabled){
@@ -1,6 +1,7 @@
 package io.bloc.android.blocly.ui.adapter;
 
 import android.animation.ValueAnimator;
+import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.support.v7.widget.RecyclerView;
 import android.util.Log;
@@ -19,12 +20,21 @@ import com.nostra13.universalimageloader.core.assist.FailReason;
 import com.nostra13.universalimageloader.core.listener.ImageLoadingListener;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import io.bloc.android.blocly.BloclyApplication;
 import io.bloc.android.blocly.R;
 import io.bloc.android.blocly.api.DataSource;
+import io.bloc.android.blocly.api.ItemStateStore;
 import io.bloc.android.blocly.api.model.RssFeed;
 import io.bloc.android.blocly.api.model.RssItem;
+import io.bloc.android.blocly.api.model.database.table.RssItemTable;
+
+import static io.bloc.android.blocly.api.DataSource.itemFromCursor;
 
 /**
  * Created by namlu on 20-Jun-16.
@@ -39,24 +49,48 @@ public class ItemAdapter extends RecyclerView.Adapter<ItemAdapter.ItemAdapterVie
         public int getItemCount(ItemAdapter itemAdapter);
     }
 
+    // Asked for more items as the list nears its end. Only needed when the DataSource
+    //      supplies its items a page at a time
+    public static interface PageLoader{
+        public void loadNextPage(ItemAdapter itemAdapter);
+    }
+
     public static interface Delegate{
         public void onItemClicked(ItemAdapter itemAdapter, RssItem rssItem);
         public void onVisitClicked(ItemAdapter itemAdapter, RssItem rssItem);
+        public void onItemFavoriteChanged(ItemAdapter itemAdapter, RssItem rssItem, boolean favorite);
+        public void onItemArchivedChanged(ItemAdapter itemAdapter, RssItem rssItem, boolean archived);
     }
 
     private static String TAG = ItemAdapter.class.getSimpleName();
 
+    // The next page is requested once a row this close to the end is bound
+    private static final int PAGE_PREFETCH_DISTANCE = 10;
+
     // An expandedItem field to represent the RssItem
     private RssItem expandedItem = null;
 
     // References to delegate objects
     private WeakReference<DataSource> dataSource;
     private WeakReference<Delegate> delegate;
+    private WeakReference<PageLoader> pageLoader;
+
+    // Set in cursor mode, rows are then bound straight from the Cursor and the DataSource is only
+    //      asked for each row's feed. Models are built only for the rows the user acts on
+    private Cursor cursor;
+    private RssItemTable.ItemColumns cursorColumns;
+    // The row id at each position of the Cursor, and the position of each row id, read once per Cursor
+    private long[] cursorRowIds;
+    private Map<Long, Integer> cursorPositions;
 
     // Track view's expanding and contracting heights
     private int collapsedItemHeight;
     private int expandedItemHeight;
 
+    public ItemAdapter() {
+        setHasStableIds(true);
+    }
+
     @Override
     // Required method which asks us to create and return a ViewHolder, specifically one
     // matching the class we supplied as our typed-parameter, ItemAdapterViewHolder
@@ -74,24 +108,166 @@ public class ItemAdapter extends RecyclerView.Adapter<ItemAdapter.ItemAdapterVie
         if(getDataSource() == null){
             return;
         }
-        // Calling DataSource interfaces
-        // getRssItem(ItemAdapter itemAdapter, int position)
-        RssItem rssItem = getDataSource().getRssItem(this, index);
         // getRssFeed(ItemAdapter itemAdapter, int position)
         RssFeed rssFeed = getDataSource().getRssFeed(this, index);
-        itemAdapterViewHolder.update(rssFeed, rssItem);
+        if (cursor != null) {
+            cursor.moveToPosition(index);
+            itemAdapterViewHolder.update(rssFeed, cursor, cursorColumns);
+        } else {
+            // Calling DataSource interfaces
+            // getRssItem(ItemAdapter itemAdapter, int position)
+            RssItem rssItem = getDataSource().getRssItem(this, index);
+            itemAdapterViewHolder.update(rssFeed, rssItem);
+        }
+
+        // Ask for the next page before the user reaches the end, so it is ready when they do
+        if (getPageLoader() != null && index >= getItemCount() - PAGE_PREFETCH_DISTANCE) {
+            getPageLoader().loadNextPage(this);
+        }
     }
 
     @Override
     public int getItemCount(){
+        if (cursor != null) {
+            return cursor.getCount();
+        }
         if(getDataSource() == null){
             return 0;
         }
         return getDataSource().getItemCount(this);
     }
 
+    // Row ids are stable, so RecyclerView keeps each item's place when the data is replaced
+    @Override
+    public long getItemId(int position) {
+        if (cursor != null) {
+            return cursorRowIds[position];
+        }
+        if (getDataSource() == null) {
+            return RecyclerView.NO_ID;
+        }
+        return getDataSource().getRssItem(this, position).getRowId();
+    }
+
     /*
-    * Getters and setters for DataSource and Delegate
+    * Cursor mode
+    * */
+
+    // Binds rows from the given Cursor from now on, or from the DataSource again if it is null.
+    //      Returns the previous Cursor, which the caller must close
+    public Cursor swapCursor(Cursor newCursor) {
+        Cursor oldCursor = setCursor(newCursor);
+        notifyDataSetChanged();
+        return oldCursor;
+    }
+
+    // Replaces the Cursor with a newer read of the same list. RecyclerView is told which rows were
+    //      removed and inserted, and which of updatedRowIds are still listed, so only those rows are
+    //      bound again. Should the rows kept have changed order, the whole list is bound again.
+    //      Returns the previous Cursor, which the caller must close
+    public Cursor changeCursor(Cursor newCursor, Collection<Long> updatedRowIds) {
+        long[] oldRowIds = cursorRowIds;
+        Map<Long, Integer> oldPositions = cursorPositions;
+        Cursor oldCursor = setCursor(newCursor);
+        if (oldRowIds == null || newCursor == null || !keptInOrder(oldRowIds, oldPositions)) {
+            notifyDataSetChanged();
+            return oldCursor;
+        }
+
+        // Removals from the bottom up, so the positions of the rows above hold
+        int rangeEnd = -1;
+        for (int position = oldRowIds.length - 1; position >= -1; position--) {
+            boolean removed = position >= 0 && !cursorPositions.containsKey(oldRowIds[position]);
+            if (removed && rangeEnd == -1) {
+                rangeEnd = position;
+            } else if (!removed && rangeEnd != -1) {
+                notifyItemRangeRemoved(position + 1, rangeEnd - position);
+                rangeEnd = -1;
+            }
+        }
+        // Then insertions from the top down, each at its position in the new Cursor
+        int rangeStart = -1;
+        for (int position = 0; position <= cursorRowIds.length; position++) {
+            boolean inserted = position < cursorRowIds.length && !oldPositions.containsKey(cursorRowIds[position]);
+            if (inserted && rangeStart == -1) {
+                rangeStart = position;
+            } else if (!inserted && rangeStart != -1) {
+                notifyItemRangeInserted(rangeStart, position - rangeStart);
+                rangeStart = -1;
+            }
+        }
+        for (Long updatedRowId : updatedRowIds) {
+            Integer position = cursorPositions.get(updatedRowId);
+            if (position != null && oldPositions.containsKey(updatedRowId)) {
+                notifyItemChanged(position);
+            }
+        }
+        return oldCursor;
+    }
+
+    private Cursor setCursor(Cursor newCursor) {
+        Cursor oldCursor = cursor;
+        cursor = newCursor;
+        cursorColumns = newCursor == null ? null : new RssItemTable.ItemColumns(newCursor);
+        cursorRowIds = null;
+        cursorPositions = null;
+        if (newCursor != null) {
+            cursorRowIds = new long[newCursor.getCount()];
+            cursorPositions = new HashMap<Long, Integer>(cursorRowIds.length * 2);
+            for (int position = 0; newCursor.moveToPosition(position); position++) {
+                cursorRowIds[position] = cursorColumns.getRowId(newCursor);
+                cursorPositions.put(cursorRowIds[position], position);
+            }
+        }
+        return oldCursor;
+    }
+
+    // Whether the rows found in both the old and the current Cursor come in the same order in each
+    private boolean keptInOrder(long[] oldRowIds, Map<Long, Integer> oldPositions) {
+        List<Long> keptOld = new ArrayList<Long>();
+        for (long rowId : oldRowIds) {
+            if (cursorPositions.containsKey(rowId)) {
+                keptOld.add(rowId);
+            }
+        }
+        List<Long> keptNew = new ArrayList<Long>();
+        for (long rowId : cursorRowIds) {
+            if (oldPositions.containsKey(rowId)) {
+                keptNew.add(rowId);
+            }
+        }
+        return keptOld.equals(keptNew);
+    }
+
+    public Cursor getCursor() {
+        return cursor;
+    }
+
+    // Returns the item at a position, building it from the Cursor in cursor mode
+    public RssItem getRssItem(int position) {
+        if (cursor != null) {
+            cursor.moveToPosition(position);
+            return itemFromCursor(cursor, cursorColumns);
+        }
+        return getDataSource().getRssItem(this, position);
+    }
+
+    // Returns the position of the item with the given row id, or -1 if it is not listed
+    public int getPosition(long rowId) {
+        if (cursor != null) {
+            Integer position = cursorPositions.get(rowId);
+            return position == null ? -1 : position;
+        }
+        for (int position = 0; position < getItemCount(); position++) {
+            if (getItemId(position) == rowId) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    /*
+    * Getters and setters for DataSource, Delegate and PageLoader
     * */
 
     public DataSource getDataSource() {
@@ -116,6 +292,17 @@ public class ItemAdapter extends RecyclerView.Adapter<ItemAdapter.ItemAdapterVie
         this.delegate = new WeakReference<Delegate>(delegate);
     }
 
+    public PageLoader getPageLoader() {
+        if(pageLoader == null){
+            return null;
+        }
+        return pageLoader.get();
+    }
+
+    public void setPageLoader(PageLoader pageLoader) {
+        this.pageLoader = new WeakReference<PageLoader>(pageLoader);
+    }
+
     /*
     * Getter and setter for expandedItem
     * */
@@ -160,8 +347,11 @@ public class ItemAdapter extends RecyclerView.Adapter<ItemAdapter.ItemAdapterVie
         TextView content;
         View headerWrapper;
         ImageView headerImage;
-        // Reference to RssItem to act on the data associated with each ItemAdapterViewHolder
+        // Reference to RssItem to act on the data associated with each ItemAdapterViewHolder.
+        //      In cursor mode it is null until the item is acted on
         RssItem rssItem;
+        long rowId;
+        String imageUrl;
         // References to Checkbox objects
         CheckBox archiveCheckBox;
         CheckBox favoriteCheckBox;
@@ -206,19 +396,47 @@ public class ItemAdapter extends RecyclerView.Adapter<ItemAdapter.ItemAdapterVie
 
         void update(RssFeed rssFeed, RssItem rssItem){
             this.rssItem = rssItem;
-            title.setText(rssItem.getTitle());
+            ItemStateStore itemStates = BloclyApplication.getSharedDataSource().getItemStates();
+            bind(rssFeed, rssItem.getRowId(), rssItem.getTitle(), rssItem.getDescription(), rssItem.getImageUrl(),
+                    itemStates.get(rssItem, ItemStateStore.Flag.FAVORITE),
+                    itemStates.get(rssItem, ItemStateStore.Flag.ARCHIVED));
+        }
+
+        // Binds the row the Cursor is on, without building an RssItem
+        void update(RssFeed rssFeed, Cursor cursor, RssItemTable.ItemColumns columns){
+            this.rssItem = null;
+            long rowId = columns.getRowId(cursor);
+            ItemStateStore itemStates = BloclyApplication.getSharedDataSource().getItemStates();
+            bind(rssFeed, rowId, columns.getTitle(cursor), columns.getDescription(cursor),
+                    columns.getEnclosure(cursor),
+                    itemStates.get(rowId, ItemStateStore.Flag.FAVORITE, columns.getFavorite(cursor)),
+                    itemStates.get(rowId, ItemStateStore.Flag.ARCHIVED, columns.getArchived(cursor)));
+        }
+
+        private void bind(RssFeed rssFeed, long rowId, String itemTitle, String description, String imageUrl,
+                          boolean favorite, boolean archived){
+            this.rowId = rowId;
+            // Listeners are detached meanwhile, only the user's own taps count as changes
+            favoriteCheckBox.setOnCheckedChangeListener(null);
+            favoriteCheckBox.setChecked(favorite);
+            favoriteCheckBox.setOnCheckedChangeListener(this);
+            archiveCheckBox.setOnCheckedChangeListener(null);
+            archiveCheckBox.setChecked(archived);
+            archiveCheckBox.setOnCheckedChangeListener(this);
+            this.imageUrl = imageUrl;
+            title.setText(itemTitle);
             feed.setText(rssFeed.getTitle());
 
             // content and expandedContent will present the same text: the RSS item's story
-            content.setText(rssItem.getDescription());
-            expandedContent.setText(rssItem.getDescription());
+            content.setText(description);
+            expandedContent.setText(description);
 
-            if(rssItem.getImageUrl() != null){
+            if(imageUrl != null){
                 headerWrapper.setVisibility(View.VISIBLE);
                 headerImage.setVisibility(View.INVISIBLE);
                 // Attempt to load the image
                 // loadImage(String url, ImageLoadingListener listener)
-                ImageLoader.getInstance().loadImage(rssItem.getImageUrl(), this);
+                ImageLoader.getInstance().loadImage(imageUrl, this);
             } else{
                 headerWrapper.setVisibility(View.GONE);
             }
@@ -226,7 +444,21 @@ public class ItemAdapter extends RecyclerView.Adapter<ItemAdapter.ItemAdapterVie
             // only View which expands
             // If ItemAdapterViewHolder's RssItem == ItemAdapter's expanded RssItem, it will
             // expand its View, otherwise it will contract
-            animateContent(getExpandedItem() == rssItem);
+            animateContent(getExpandedItem() != null && getExpandedItem().getRowId() == rowId);
+        }
+
+        // The bound item, built from the Cursor the first time it is needed. It is found by its
+        //      row id, since the adapter position may be NO_POSITION or already point at another
+        //      row. Returns null if the row is no longer listed
+        private RssItem getRssItem(){
+            if(rssItem == null){
+                int position = ItemAdapter.this.getPosition(rowId);
+                if (position == -1) {
+                    return null;
+                }
+                rssItem = ItemAdapter.this.getRssItem(position);
+            }
+            return rssItem;
         }
 
          /*
@@ -243,13 +475,13 @@ public class ItemAdapter extends RecyclerView.Adapter<ItemAdapter.ItemAdapterVie
         @Override
         public void onLoadingFailed(String imageUri, View view, FailReason failReason) {
             // .e(String tag, String msg)
-            Log.e(TAG, "onLoadingFailed: " + failReason.toString() + " for URL: " + rssItem.getImageUrl());
+            Log.e(TAG, "onLoadingFailed: " + failReason.toString() + " for URL: " + imageUrl);
         }
 
         // Called when image is loaded successfully (and displayed in View if one was specified)
         @Override
         public void onLoadingComplete(String imageUri, View view, Bitmap loadedImage) {
-            if(imageUri.equals(rssItem.getImageUrl())){
+            if(imageUri.equals(imageUrl)){
                 headerImage.setImageBitmap(loadedImage);
                 headerImage.setVisibility(View.VISIBLE);
             }
@@ -270,23 +502,35 @@ public class ItemAdapter extends RecyclerView.Adapter<ItemAdapter.ItemAdapterVie
         // Abstract and only method of View.OnClickListener
         public void onClick(View view) {
 
+            RssItem boundItem = getRssItem();
+            if (boundItem == null) {
+                return;
+            }
             if(view == itemView){
                 if(getDelegate() != null){
                     // Calling Delegate interface to react to click events
                     // onItemClicked(ItemAdapter itemAdapter, RssItem rssItem)
-                    getDelegate().onItemClicked(ItemAdapter.this, rssItem);
+                    getDelegate().onItemClicked(ItemAdapter.this, boundItem);
                 }
             } else{
                 // Delegate the Visit Site click response to delegate object
                 if (getDelegate() != null) {
-                    getDelegate().onVisitClicked(ItemAdapter.this, rssItem);
+                    getDelegate().onVisitClicked(ItemAdapter.this, boundItem);
                 }
             }
         }
 
         @Override
         public void onCheckedChanged(CompoundButton buttonButton, boolean isChecked) {
-            Log.v(TAG, "Checked changed to: " + isChecked);
+            RssItem boundItem = getDelegate() == null ? null : getRssItem();
+            if (boundItem == null) {
+                return;
+            }
+            if (buttonButton == favoriteCheckBox) {
+                getDelegate().onItemFavoriteChanged(ItemAdapter.this, boundItem, isChecked);
+            } else {
+                getDelegate().onItemArchivedChanged(ItemAdapter.this, boundItem, isChecked);
+            }
         }
 
         /*
@@ -10,6 +10,7 @@ import java.lang.ref.WeakReference;
 import java.util.List;
 
 import io.bloc.android.blocly.R;
+import io.bloc.android.blocly.api.ItemCounts;
 import io.bloc.android.blocly.api.model.RssFeed;
 
 /**
@@ -28,6 +29,8 @@ public class NavigationDrawerAdapter extends RecyclerView.Adapter<NavigationDraw
     // 55: Data source interface for NavigationDrawerAdapter
     public static interface NavigationDrawerAdapterDataSource{
         public List<RssFeed> getFeeds(NavigationDrawerAdapter adapter);
+        // Counts shown beside each option and feed, or null while they are not known
+        public ItemCounts getItemCounts(NavigationDrawerAdapter adapter);
     }
 
     public static interface NavigationDrawerAdapterDelegate{
@@ -112,6 +115,7 @@ public class NavigationDrawerAdapter extends RecyclerView.Adapter<NavigationDraw
 
         View topPadding;
         TextView title;
+        TextView count;
         View bottomPadding;
         View divider;
 
@@ -123,6 +127,7 @@ public class NavigationDrawerAdapter extends RecyclerView.Adapter<NavigationDraw
             super(itemView);
             topPadding = itemView.findViewById(R.id.v_nav_item_top_padding);
             title = (TextView) itemView.findViewById(R.id.tv_nav_item_title);
+            count = (TextView) itemView.findViewById(R.id.tv_nav_item_count);
             bottomPadding = itemView.findViewById(R.id.v_nav_item_bottom_padding);
             divider = itemView.findViewById(R.id.v_nav_item_divider);
             // .setOnClickListener(onClickListener l)
@@ -163,6 +168,24 @@ public class NavigationDrawerAdapter extends RecyclerView.Adapter<NavigationDraw
             } else{
                 title.setText(rssFeed.getTitle());
             }
+
+            // Inbox and each feed count their unread items, Favorites and Archived the items they hold
+            ItemCounts itemCounts = getDataSource() == null ? null
+                    : getDataSource().getItemCounts(NavigationDrawerAdapter.this);
+            int badgeCount = 0;
+            if (itemCounts != null) {
+                if (position == NavigationOption.NAVIGATION_OPTION_INBOX.ordinal()) {
+                    badgeCount = itemCounts.getTotals().unreadCount;
+                } else if (position == NavigationOption.NAVIGATION_OPTION_FAVORITES.ordinal()) {
+                    badgeCount = itemCounts.getTotals().favoriteCount;
+                } else if (position == NavigationOption.NAVIGATION_OPTION_ARCHIVED.ordinal()) {
+                    badgeCount = itemCounts.getTotals().archivedCount;
+                } else {
+                    badgeCount = itemCounts.getFeedCounts(rssFeed.getRowId()).unreadCount;
+                }
+            }
+            count.setText(String.valueOf(badgeCount));
+            count.setVisibility(badgeCount > 0 ? View.VISIBLE : View.GONE);
         }
 
         /*
@@ -0,0 +1,91 @@
+package io.bloc.android.blocly.api;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks how ChangeSet combines changes to the same rows.
+ */
+public class ChangeSetTest {
+
+    @Test
+    public void insertedItemsKeepTheirSortKeys() {
+        ChangeSet changes = new ChangeSet();
+        changes.itemInserted(1, 10, 1000);
+        changes.itemInserted(1, 11, 900);
+
+        ChangeSet.ItemChanges itemChanges = changes.getItemChanges(1);
+        assertEquals(Long.valueOf(1000), itemChanges.getInsertedPubDates().get(10l));
+        assertEquals(Long.valueOf(900), itemChanges.getInsertedPubDates().get(11l));
+        assertNull(changes.getItemChanges(2));
+    }
+
+    @Test
+    public void itemInsertedThenRemovedIsNoChange() {
+        ChangeSet changes = new ChangeSet();
+        changes.itemInserted(1, 10, 1000);
+
+        ChangeSet later = new ChangeSet();
+        later.itemUpdated(1, 10);
+        later.itemRemoved(1, 10);
+        changes.merge(later);
+
+        assertNull(changes.getItemChanges(1));
+        assertTrue(changes.isEmpty());
+    }
+
+    @Test
+    public void updatesToInsertedItemsAreFoldedIntoTheInsert() {
+        ChangeSet changes = new ChangeSet();
+        changes.itemInserted(1, 10, 1000);
+
+        ChangeSet later = new ChangeSet();
+        later.itemUpdated(1, 10);
+        later.itemUpdated(1, 11);
+        changes.merge(later);
+
+        ChangeSet.ItemChanges itemChanges = changes.getItemChanges(1);
+        assertEquals(Collections.singleton(10l), itemChanges.getInsertedPubDates().keySet());
+        assertEquals(Collections.singleton(11l), itemChanges.getUpdatedIds());
+    }
+
+    @Test
+    public void removingAFeedDropsItsItemChanges() {
+        ChangeSet changes = new ChangeSet();
+        changes.feedAdded(1);
+        changes.itemInserted(1, 10, 1000);
+        changes.feedUpdated(2);
+        changes.itemInserted(2, 20, 1000);
+
+        ChangeSet later = new ChangeSet();
+        later.feedRemoved(1);
+        later.feedRemoved(2);
+        changes.merge(later);
+
+        // Feed 1 was never delivered, so it is simply forgotten
+        assertTrue(changes.getAddedFeedIds().isEmpty());
+        assertTrue(changes.getUpdatedFeedIds().isEmpty());
+        assertEquals(Collections.singleton(2l), changes.getRemovedFeedIds());
+        assertNull(changes.getItemChanges(1));
+        assertNull(changes.getItemChanges(2));
+    }
+
+    @Test
+    public void mergeKeepsArrivalOrder() {
+        ChangeSet changes = new ChangeSet();
+        changes.itemUpdated(1, 12);
+
+        ChangeSet later = new ChangeSet();
+        later.itemUpdated(1, 10);
+        later.itemUpdated(1, 11);
+        changes.merge(later);
+
+        assertEquals(Arrays.asList(12l, 10l, 11l),
+                new ArrayList<Long>(changes.getItemChanges(1).getUpdatedIds()));
+    }
+}
@@ -0,0 +1,86 @@
+package io.bloc.android.blocly.api;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.bloc.android.blocly.api.network.FeedPullParser;
+import io.bloc.android.blocly.api.network.GetFeedsNetworkRequest;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs FeedIngestionPipeline over a feed stood in for by a fixed list of items.
+ */
+public class FeedIngestionPipelineTest {
+
+    private static final String FEED_URL = "http://example.com/feed";
+
+    private final TaskScheduler taskScheduler = new TaskScheduler();
+
+    @After
+    public void tearDown() {
+        taskScheduler.shutdown();
+    }
+
+    @Test
+    public void everyItemIsWrittenInBatches() {
+        final List<GetFeedsNetworkRequest.ItemResponse> written = new ArrayList<GetFeedsNetworkRequest.ItemResponse>();
+        GetFeedsNetworkRequest.FeedResponse feedResponse = new FeedIngestionPipeline(new FixedFeedRequest(100), FEED_URL)
+                .run(taskScheduler, TaskScheduler.Priority.USER_VISIBLE, new RequestHandle(),
+                        new FeedIngestionPipeline.BatchWriter() {
+                            @Override
+                            public void write(List<GetFeedsNetworkRequest.ItemResponse> batch) {
+                                assertTrue(batch.size() <= FeedIngestionPipeline.BATCH_SIZE);
+                                written.addAll(batch);
+                            }
+                        });
+
+        assertEquals(0, feedResponse.errorCode);
+        assertEquals(100, written.size());
+        assertEquals("guid-99", written.get(99).itemGUID);
+    }
+
+    @Test
+    public void failedWriteEndsTheFeedWithAnError() {
+        final int[] batchesWritten = {0};
+        GetFeedsNetworkRequest.FeedResponse feedResponse = new FeedIngestionPipeline(new FixedFeedRequest(100), FEED_URL)
+                .run(taskScheduler, TaskScheduler.Priority.USER_VISIBLE, new RequestHandle(),
+                        new FeedIngestionPipeline.BatchWriter() {
+                            @Override
+                            public void write(List<GetFeedsNetworkRequest.ItemResponse> batch) {
+                                if (++batchesWritten[0] == 2) {
+                                    throw new IllegalStateException("Disk full");
+                                }
+                            }
+                        });
+
+        assertEquals(FeedIngestionPipeline.ERROR_WRITING, feedResponse.errorCode);
+        assertEquals(2, batchesWritten[0]);
+    }
+
+    // Hands out count items without touching the network
+    private static class FixedFeedRequest extends GetFeedsNetworkRequest {
+
+        private final int count;
+
+        FixedFeedRequest(int count) {
+            super(FEED_URL);
+            this.count = count;
+        }
+
+        @Override
+        public FeedResponse streamFeed(String feedUrlString, FeedPullParser.ItemHandler itemHandler) {
+            for (int i = 0; i < count; i++) {
+                if (!itemHandler.onItem(new ItemResponse("http://example.com/" + i, "Item " + i, null,
+                        "guid-" + i, null, null, null))) {
+                    break;
+                }
+            }
+            return new FeedResponse(feedUrlString, "Feed", "http://example.com", null,
+                    new ArrayList<ItemResponse>());
+        }
+    }
+}
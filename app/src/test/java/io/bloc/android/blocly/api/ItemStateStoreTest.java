@@ -0,0 +1,150 @@
+package io.bloc.android.blocly.api;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks how ItemStateStore combines flag changes and lays them over stored values.
+ */
+public class ItemStateStoreTest {
+
+    private static final ItemStateStore.Flag READ = ItemStateStore.Flag.READ;
+    private static final ItemStateStore.Flag FAVORITE = ItemStateStore.Flag.FAVORITE;
+
+    @Test
+    public void changesShowBeforeTheyAreWritten() {
+        ItemStateStore itemStates = new ItemStateStore();
+        itemStates.set(1, 10, FAVORITE, true, false);
+
+        assertTrue(itemStates.get(10, FAVORITE, false));
+        assertFalse(itemStates.get(10, READ, false));
+        assertFalse(itemStates.get(11, FAVORITE, false));
+        assertTrue(itemStates.hasPendingChanges());
+    }
+
+    @Test
+    public void repeatedTogglesLeaveOneChangePerItem() {
+        ItemStateStore itemStates = new ItemStateStore();
+        for (int i = 0; i < 5; i++) {
+            itemStates.set(1, 10, FAVORITE, true, false);
+            itemStates.set(1, 10, FAVORITE, false, false);
+        }
+        itemStates.set(1, 10, FAVORITE, true, false);
+        itemStates.set(1, 10, READ, true, false);
+
+        Map<Long, ItemStateStore.ItemState> batch = itemStates.takeBatch();
+        assertEquals(1, batch.size());
+        assertEquals(Boolean.TRUE, batch.get(10l).getFlags().get(FAVORITE));
+        assertEquals(Boolean.TRUE, batch.get(10l).getFlags().get(READ));
+        assertFalse(itemStates.hasPendingChanges());
+    }
+
+    @Test
+    public void settingTheStoredValueIsNoChange() {
+        ItemStateStore itemStates = new ItemStateStore();
+        itemStates.set(1, 10, READ, true, false);
+        itemStates.set(1, 10, READ, false, false);
+        itemStates.set(1, 11, READ, true, true);
+
+        assertFalse(itemStates.hasPendingChanges());
+        assertNull(itemStates.takeBatch());
+    }
+
+    @Test
+    public void batchesCountUntilTheyAreWritten() {
+        ItemStateStore itemStates = new ItemStateStore();
+        itemStates.set(1, 10, FAVORITE, true, false);
+        Map<Long, ItemStateStore.ItemState> batch = itemStates.takeBatch();
+
+        // The model still holds the old value while the batch is written
+        assertTrue(itemStates.get(10, FAVORITE, false));
+        // Undoing the change is a change of its own, against the value being written
+        itemStates.set(1, 10, FAVORITE, false, false);
+        assertFalse(itemStates.get(10, FAVORITE, false));
+        assertTrue(itemStates.hasPendingChanges());
+
+        itemStates.batchWritten(batch);
+        Map<Long, ItemStateStore.ItemState> undo = itemStates.takeBatch();
+        assertEquals(Boolean.FALSE, undo.get(10l).getFlags().get(FAVORITE));
+        itemStates.batchWritten(undo);
+        // Reloaded models hold the written values
+        assertFalse(itemStates.get(10, FAVORITE, false));
+    }
+
+    @Test
+    public void writtenValuesCountUntilAModelHoldsThem() {
+        ItemStateStore itemStates = new ItemStateStore();
+        itemStates.set(1, 10, FAVORITE, true, false);
+        itemStates.batchWritten(itemStates.takeBatch());
+
+        // A model read before the write, e.g. of a feed off screen, is still bound later
+        assertTrue(itemStates.get(10, FAVORITE, false));
+        assertTrue(itemStates.get(10, FAVORITE, false));
+        // Once a reloaded model holds the value, the model is trusted again
+        assertTrue(itemStates.get(10, FAVORITE, true));
+        assertFalse(itemStates.get(10, FAVORITE, false));
+    }
+
+    @Test
+    public void revertAfterAWriteIsWrittenToo() {
+        ItemStateStore itemStates = new ItemStateStore();
+        itemStates.set(1, 10, FAVORITE, true, false);
+        itemStates.batchWritten(itemStates.takeBatch());
+
+        // Reverted through a model read before the write, which holds the value being reverted to
+        itemStates.set(1, 10, FAVORITE, false, false);
+        assertTrue(itemStates.hasPendingChanges());
+        assertFalse(itemStates.get(10, FAVORITE, false));
+        assertFalse(itemStates.get(10, FAVORITE, true));
+
+        Map<Long, ItemStateStore.ItemState> revert = itemStates.takeBatch();
+        assertEquals(Boolean.FALSE, revert.get(10l).getFlags().get(FAVORITE));
+        itemStates.batchWritten(revert);
+        // Models read between the two writes show the revert until they are reloaded
+        assertFalse(itemStates.get(10, FAVORITE, true));
+        assertFalse(itemStates.get(10, FAVORITE, false));
+    }
+
+    @Test
+    public void failedBatchesAreHeldAgain() {
+        ItemStateStore itemStates = new ItemStateStore();
+        itemStates.set(1, 10, FAVORITE, true, false);
+        itemStates.set(1, 11, READ, true, false);
+        Map<Long, ItemStateStore.ItemState> batch = itemStates.takeBatch();
+        // A change made while the batch is written is newer than the batch's
+        itemStates.set(1, 10, FAVORITE, false, false);
+
+        itemStates.batchFailed(batch);
+        assertTrue(itemStates.hasPendingChanges());
+        assertFalse(itemStates.get(10, FAVORITE, false));
+        assertTrue(itemStates.get(11, READ, false));
+
+        Map<Long, ItemStateStore.ItemState> retry = itemStates.takeBatch();
+        assertEquals(Boolean.FALSE, retry.get(10l).getFlags().get(FAVORITE));
+        assertEquals(Boolean.TRUE, retry.get(11l).getFlags().get(READ));
+        itemStates.batchWritten(retry);
+        assertFalse(itemStates.hasPendingChanges());
+        assertTrue(itemStates.get(11, READ, false));
+    }
+
+    @Test
+    public void batchesAreGroupedByFlagAndValue() {
+        ItemStateStore itemStates = new ItemStateStore();
+        itemStates.set(1, 10, READ, true, false);
+        itemStates.set(1, 11, READ, true, false);
+        itemStates.set(2, 12, READ, false, true);
+        itemStates.set(2, 12, FAVORITE, true, false);
+
+        Map<Long, ItemStateStore.ItemState> batch = itemStates.takeBatch();
+        assertEquals(Arrays.asList(10l, 11l), ItemStateStore.itemsWith(batch, READ, true));
+        assertEquals(Collections.singletonList(12l), ItemStateStore.itemsWith(batch, READ, false));
+        assertEquals(Collections.singletonList(12l), ItemStateStore.itemsWith(batch, FAVORITE, true));
+        assertTrue(ItemStateStore.itemsWith(batch, ItemStateStore.Flag.ARCHIVED, true).isEmpty());
+        assertEquals(2, batch.get(12l).getFeedRowId());
+    }
+}
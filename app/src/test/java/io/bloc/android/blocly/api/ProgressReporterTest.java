@@ -0,0 +1,116 @@
+package io.bloc.android.blocly.api;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks how ProgressReporter merges updates, with the requesting thread stood in for by a queue
+ * which is only run when the test says so.
+ */
+public class ProgressReporterTest {
+
+    private final QueueExecutor callbackExecutor = new QueueExecutor();
+    private final List<String> delivered = new ArrayList<String>();
+    private final ProgressReporter progressReporter = new ProgressReporter(callbackExecutor,
+            new DataSource.ProgressListener() {
+                @Override
+                public void onItemsIngested(int insertedCount, int updatedCount) {
+                    delivered.add(insertedCount + "/" + updatedCount);
+                }
+            });
+
+    @Test
+    public void batchesWaitingOnTheRequestingThreadAreMerged() {
+        for (int i = 0; i < 5; i++) {
+            progressReporter.add(30, 1);
+        }
+        assertEquals(1, callbackExecutor.size());
+
+        callbackExecutor.runAll();
+        assertEquals(1, delivered.size());
+        assertEquals("150/5", delivered.get(0));
+
+        // Once the update is delivered the next batch posts another
+        progressReporter.add(2, 0);
+        assertEquals(1, callbackExecutor.size());
+        callbackExecutor.runAll();
+        assertEquals("152/5", delivered.get(1));
+    }
+
+    @Test
+    public void emptyBatchesPostNothing() {
+        progressReporter.add(0, 0);
+        assertEquals(0, callbackExecutor.size());
+    }
+
+    @Test
+    public void lastUpdateHoldsEveryItemBeforeTheCallback() {
+        progressReporter.add(30, 0);
+        progressReporter.add(20, 5);
+        // The request's Callback is posted once the last batch is written
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                delivered.add("done");
+            }
+        });
+
+        callbackExecutor.runAll();
+        assertEquals(2, delivered.size());
+        assertEquals("50/5", delivered.get(0));
+        assertEquals("done", delivered.get(1));
+    }
+
+    @Test
+    public void writerFasterThanTheRequestingThreadEndsOnTheFullCount() throws Exception {
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 10000; i++) {
+                    progressReporter.add(1, 0);
+                }
+            }
+        });
+        writer.start();
+        while (writer.isAlive()) {
+            callbackExecutor.runAll();
+        }
+        writer.join();
+        callbackExecutor.runAll();
+
+        assertTrue(delivered.size() <= 10000);
+        assertEquals("10000/0", delivered.get(delivered.size() - 1));
+    }
+
+    // Holds posted Runnables until runAll() is called
+    private static class QueueExecutor implements Executor {
+
+        private final LinkedList<Runnable> queue = new LinkedList<Runnable>();
+
+        @Override
+        public synchronized void execute(Runnable runnable) {
+            queue.add(runnable);
+        }
+
+        synchronized int size() {
+            return queue.size();
+        }
+
+        void runAll() {
+            Runnable runnable;
+            while ((runnable = poll()) != null) {
+                runnable.run();
+            }
+        }
+
+        private synchronized Runnable poll() {
+            return queue.poll();
+        }
+    }
+}
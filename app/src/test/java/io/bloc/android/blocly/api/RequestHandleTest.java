@@ -0,0 +1,49 @@
+package io.bloc.android.blocly.api;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that RequestHandle runs its cancel actions exactly once.
+ */
+public class RequestHandleTest {
+
+    @Test
+    public void cancelRunsEveryActionOnce() {
+        RequestHandle requestHandle = new RequestHandle();
+        final List<String> actions = new ArrayList<String>();
+        requestHandle.whenCancelled(record(actions, "close stream"));
+        requestHandle.whenCancelled(record(actions, "cancel task"));
+
+        assertFalse(requestHandle.isCancelled());
+        requestHandle.cancel();
+        requestHandle.cancel();
+
+        assertTrue(requestHandle.isCancelled());
+        assertEquals(2, actions.size());
+    }
+
+    @Test
+    public void actionsAddedAfterCancelRunImmediately() {
+        RequestHandle requestHandle = new RequestHandle();
+        requestHandle.cancel();
+
+        List<String> actions = new ArrayList<String>();
+        requestHandle.whenCancelled(record(actions, "close stream"));
+
+        assertEquals(1, actions.size());
+    }
+
+    private static Runnable record(final List<String> actions, final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                actions.add(name);
+            }
+        };
+    }
+}
@@ -0,0 +1,70 @@
+package io.bloc.android.blocly.api;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import io.bloc.android.blocly.api.model.database.table.RssItemTable;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks which downloaded items StoredItemFilter takes for the stored copies of a feed's items.
+ */
+public class StoredItemFilterTest {
+
+    private final Map<String, Long> storedContentHashes = new HashMap<String, Long>();
+    private final StoredItemFilter filter = new StoredItemFilter(storedContentHashes);
+
+    @Test
+    public void storedItemIsKnownUntilItChanges() {
+        storedContentHashes.put("guid-1", 42l);
+
+        assertTrue(filter.isKnownItem("guid-1", "http://example.com/1", 42));
+        // An edited item is stored again
+        assertFalse(filter.isKnownItem("guid-1", "http://example.com/1", 43));
+        assertFalse(filter.isKnownItem("guid-2", "http://example.com/1", 42));
+    }
+
+    @Test
+    public void guidIsTrimmedAndPreferredToLink() {
+        storedContentHashes.put("guid-1", 42l);
+
+        assertTrue(filter.isKnownItem("  guid-1\n", null, 42));
+        // The link does not matter once there is a guid
+        assertTrue(filter.isKnownItem("guid-1", "http://example.com/moved", 42));
+    }
+
+    @Test
+    public void itemsWithoutGuidAreMatchedByLink() {
+        storedContentHashes.put(RssItemTable.itemKeyOf(null, "http://example.com/1"), 42l);
+
+        assertTrue(filter.isKnownItem(null, "http://example.com/1", 42));
+        assertTrue(filter.isKnownItem("  ", " http://example.com/1 ", 42));
+        assertFalse(filter.isKnownItem(null, "http://example.com/2", 42));
+    }
+
+    @Test
+    public void itemsWithoutGuidOrLinkAreNeverKnown() {
+        assertNull(RssItemTable.itemKeyOf(null, " "));
+        storedContentHashes.put("", 42l);
+
+        assertFalse(filter.isKnownItem(null, null, 42));
+        assertFalse(filter.isKnownItem("", " ", 42));
+    }
+
+    @Test
+    public void negativeHashesMatchTheirStoredValue() {
+        // Hashes are ints, SQLite hands them back as longs
+        storedContentHashes.put("guid-1", (long) Integer.MIN_VALUE);
+
+        assertTrue(filter.isKnownItem("guid-1", null, Integer.MIN_VALUE));
+        assertFalse(filter.isKnownItem("guid-1", null, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void emptyFeedKnowsNothing() {
+        assertFalse(filter.isKnownItem("guid-1", "http://example.com/1", 42));
+    }
+}
@@ -0,0 +1,171 @@
+package io.bloc.android.blocly.api;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives SyncScheduler with a fake clock to check how feed intervals adapt.
+ */
+public class SyncSchedulerTest {
+
+    private static final long MINUTE = 60l * 1000l;
+    private static final long HOUR = 60l * MINUTE;
+    private static final long DAY = 24l * HOUR;
+
+    private FakeClock clock;
+    private FixedRandom random;
+    private SyncScheduler syncScheduler;
+
+    @Before
+    public void setUp() {
+        clock = new FakeClock();
+        clock.now = 100l * DAY;
+        // 0.5 places jitter in the middle of its range, leaving intervals unchanged
+        random = new FixedRandom(0.5);
+        syncScheduler = new SyncScheduler(clock, random);
+    }
+
+    @Test
+    public void newFeedsAreSpreadOverTheShortestInterval() {
+        random.value = 0.0;
+        syncScheduler.addFeed(1);
+        random.value = 0.9;
+        syncScheduler.addFeed(2);
+
+        assertEquals(Collections.singletonList(1l), syncScheduler.takeDueFeeds());
+        assertEquals(clock.now + (long) (0.9 * SyncScheduler.MIN_INTERVAL_MILLIS),
+                syncScheduler.getNextRefreshMillis());
+
+        clock.now += SyncScheduler.MIN_INTERVAL_MILLIS;
+        assertEquals(Collections.singletonList(2l), syncScheduler.takeDueFeeds());
+    }
+
+    @Test
+    public void feedsBeingRefreshedAreNotTakenTwice() {
+        random.value = 0.0;
+        syncScheduler.addFeed(1);
+
+        assertEquals(Collections.singletonList(1l), syncScheduler.takeDueFeeds());
+        assertTrue(syncScheduler.takeDueFeeds().isEmpty());
+        assertEquals(Long.MAX_VALUE, syncScheduler.getNextRefreshMillis());
+    }
+
+    @Test
+    public void frequentPublishersAreCheckedOften() {
+        refresh(1, pubDatesEvery(2 * HOUR, 0));
+
+        assertEquals(HOUR, syncScheduler.getIntervalMillis(1));
+        assertEquals(clock.now + HOUR, syncScheduler.getNextRefreshMillis());
+    }
+
+    @Test
+    public void intervalsStayWithinBounds() {
+        refresh(1, pubDatesEvery(5 * MINUTE, 0));
+        assertEquals(SyncScheduler.MIN_INTERVAL_MILLIS, syncScheduler.getIntervalMillis(1));
+
+        refresh(2, pubDatesEvery(30 * DAY, 0));
+        assertEquals(SyncScheduler.MAX_INTERVAL_MILLIS, syncScheduler.getIntervalMillis(2));
+    }
+
+    @Test
+    public void quietFeedsAreBackedOff() {
+        // Posts every two hours, but nothing for the last ten
+        refresh(1, pubDatesEvery(2 * HOUR, 10 * HOUR));
+
+        assertEquals(5 * HOUR, syncScheduler.getIntervalMillis(1));
+    }
+
+    @Test
+    public void itemsPostedTogetherDoNotShortenTheInterval() {
+        // Undated items are placed a millisecond apart
+        List<Long> pubDates = new ArrayList<Long>();
+        for (int i = 0; i < 10; i++) {
+            pubDates.add(clock.now - i);
+        }
+        refresh(1, pubDates);
+
+        assertEquals(SyncScheduler.DEFAULT_INTERVAL_MILLIS, syncScheduler.getIntervalMillis(1));
+    }
+
+    @Test
+    public void failuresDoubleTheInterval() {
+        refresh(1, pubDatesEvery(2 * HOUR, 0));
+        clock.now += HOUR;
+        syncScheduler.takeDueFeeds();
+
+        syncScheduler.onFeedFailed(1);
+        assertEquals(2 * HOUR, syncScheduler.getIntervalMillis(1));
+        clock.now += 2 * HOUR;
+        syncScheduler.takeDueFeeds();
+        syncScheduler.onFeedFailed(1);
+        assertEquals(4 * HOUR, syncScheduler.getIntervalMillis(1));
+
+        // A successful refresh returns the feed to its publishing cadence
+        clock.now += 4 * HOUR;
+        syncScheduler.takeDueFeeds();
+        syncScheduler.onFeedRefreshed(1, pubDatesEvery(2 * HOUR, 0));
+        assertEquals(HOUR, syncScheduler.getIntervalMillis(1));
+    }
+
+    @Test
+    public void jitterMovesRefreshesByAtMostTenPercent() {
+        random.value = 1.0;
+        refresh(1, pubDatesEvery(2 * HOUR, 0));
+        assertEquals(clock.now + (long) (HOUR * 1.1), syncScheduler.getNextRefreshMillis());
+
+        random.value = 0.0;
+        refresh(2, pubDatesEvery(2 * HOUR, 0));
+        assertEquals(clock.now + (long) (HOUR * 0.9), syncScheduler.getNextRefreshMillis());
+    }
+
+    // Adds a feed, takes its first refresh and reports it with the given pub dates
+    private void refresh(long feedRowId, List<Long> pubDates) {
+        double jitter = random.value;
+        random.value = 0.0;
+        syncScheduler.addFeed(feedRowId);
+        assertTrue(syncScheduler.takeDueFeeds().contains(feedRowId));
+        random.value = jitter;
+        syncScheduler.onFeedRefreshed(feedRowId, pubDates);
+    }
+
+    // Ten pub dates, newest first, the newest published the given time ago
+    private List<Long> pubDatesEvery(long gap, long age) {
+        Long[] pubDates = new Long[10];
+        for (int i = 0; i < pubDates.length; i++) {
+            pubDates[i] = clock.now - age - i * gap;
+        }
+        return Arrays.asList(pubDates);
+    }
+
+    private static class FakeClock implements SyncScheduler.Clock {
+        long now;
+
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+    }
+
+    private static class FixedRandom extends Random {
+        private static final long serialVersionUID = 1l;
+
+        double value;
+
+        FixedRandom(double value) {
+            this.value = value;
+        }
+
+        @Override
+        public double nextDouble() {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package io.bloc.android.blocly.api;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks lane separation, priority ordering and metrics of TaskScheduler.
+ */
+public class TaskSchedulerTest {
+
+    private TaskScheduler taskScheduler;
+
+    @Before
+    public void setUp() {
+        taskScheduler = new TaskScheduler();
+    }
+
+    @After
+    public void tearDown() {
+        taskScheduler.shutdown();
+    }
+
+    @Test(timeout = 5000)
+    public void userVisibleTasksRunBeforeQueuedBackgroundTasks() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        // The write lane has a single thread, keep it busy while the other tasks queue up
+        taskScheduler.submit(TaskScheduler.Lane.DATABASE_WRITE, TaskScheduler.Priority.BACKGROUND, await(release));
+
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        taskScheduler.submit(TaskScheduler.Lane.DATABASE_WRITE, TaskScheduler.Priority.BACKGROUND, record(order, "background 1"));
+        taskScheduler.submit(TaskScheduler.Lane.DATABASE_WRITE, TaskScheduler.Priority.BACKGROUND, record(order, "background 2"));
+        taskScheduler.submit(TaskScheduler.Lane.DATABASE_WRITE, TaskScheduler.Priority.USER_VISIBLE, record(order, "user 1"));
+        Future<?> last = taskScheduler.submit(TaskScheduler.Lane.DATABASE_WRITE, TaskScheduler.Priority.USER_VISIBLE,
+                record(order, "user 2"));
+
+        assertEquals(4, taskScheduler.getMetrics(TaskScheduler.Lane.DATABASE_WRITE).queueDepth);
+        release.countDown();
+        while (order.size() < 4) {
+            Thread.sleep(10);
+        }
+        last.get();
+
+        assertEquals(Arrays.asList("user 1", "user 2", "background 1", "background 2"), order);
+    }
+
+    @Test(timeout = 5000)
+    public void busyLaneDoesNotDelayOtherLanes() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 10; i++) {
+            taskScheduler.submit(TaskScheduler.Lane.NETWORK, TaskScheduler.Priority.BACKGROUND, await(release));
+        }
+
+        Future<String> read = taskScheduler.submit(TaskScheduler.Lane.DATABASE_READ,
+                TaskScheduler.Priority.USER_VISIBLE, new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return "read";
+                    }
+                });
+
+        assertEquals("read", read.get(1, TimeUnit.SECONDS));
+        // Threads of the network lane may still be starting
+        while (taskScheduler.getMetrics(TaskScheduler.Lane.NETWORK).activeCount < 4) {
+            Thread.sleep(10);
+        }
+        TaskScheduler.LaneMetrics networkMetrics = taskScheduler.getMetrics(TaskScheduler.Lane.NETWORK);
+        assertEquals(4, networkMetrics.activeCount);
+        assertEquals(6, networkMetrics.queueDepth);
+        release.countDown();
+    }
+
+    @Test(timeout = 5000)
+    public void metricsRecordWaitTimes() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        taskScheduler.submit(TaskScheduler.Lane.DATABASE_WRITE, TaskScheduler.Priority.BACKGROUND, await(release));
+        Future<?> waiting = taskScheduler.submit(TaskScheduler.Lane.DATABASE_WRITE,
+                TaskScheduler.Priority.USER_VISIBLE, new Runnable() {
+                    @Override
+                    public void run() {
+                    }
+                });
+
+        Thread.sleep(100);
+        release.countDown();
+        waiting.get();
+
+        TaskScheduler.LaneMetrics metrics = taskScheduler.getMetrics(TaskScheduler.Lane.DATABASE_WRITE);
+        assertEquals(2, metrics.startedCount);
+        assertTrue(metrics.toString(), metrics.maxWaitMillis >= 90);
+        assertEquals(0, metrics.queueDepth);
+    }
+
+    private static Runnable await(final CountDownLatch latch) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+
+    private static Runnable record(final List<String> order, final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                order.add(name);
+            }
+        };
+    }
+}
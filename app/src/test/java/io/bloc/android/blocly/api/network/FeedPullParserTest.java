@@ -0,0 +1,232 @@
+package io.bloc.android.blocly.api.network;
+
+import org.junit.Test;
+import org.kxml2.io.KXmlParser;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Parses small RSS and Atom documents with kXML, the pull parser android.util.Xml hands out on the
+ * device.
+ */
+public class FeedPullParserTest {
+
+    private static final String FEED_URL = "http://example.com/feed";
+
+    private static final String RSS = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<rss version=\"2.0\" xmlns:content=\"http://purl.org/rss/1.0/modules/content/\">"
+            + "<channel>"
+            + "<image><title>Logo</title><link>http://example.com/logo</link><url>http://example.com/logo.png</url></image>"
+            + "<title>Example News</title>"
+            + "<link>http://example.com/</link>"
+            + "<description>All the news</description>"
+            + "<item>"
+            + "<title>First</title>"
+            + "<link>http://example.com/1</link>"
+            + "<guid>guid-1</guid>"
+            + "<pubDate>Sat, 07 Sep 2002 09:42:31 GMT</pubDate>"
+            + "<description><![CDATA[<p>Hello <b>world</b></p><img src=\"http://example.com/1.png\">]]></description>"
+            + "<enclosure url=\"http://example.com/1.mp3\" type=\"audio/mpeg\"/>"
+            + "</item>"
+            + "<item>"
+            + "<title>No guid</title>"
+            + "<link>http://example.com/2</link>"
+            + "<source url=\"http://other.example/\"><title>Other</title><link>http://other.example/</link></source>"
+            + "<content:encoded><![CDATA[Encoded <i>body</i>]]></content:encoded>"
+            + "</item>"
+            + "<item>"
+            + "<title>No link</title>"
+            + "<guid isPermaLink=\"false\">guid-3</guid>"
+            + "<category><nested><title>Deep</title></nested></category>"
+            + "</item>"
+            + "</channel>"
+            + "</rss>";
+
+    private static final String ATOM = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<feed xmlns=\"http://www.w3.org/2005/Atom\">"
+            + "<title>Example Atom</title>"
+            + "<subtitle>Atom news</subtitle>"
+            + "<link rel=\"self\" href=\"http://example.com/feed\"/>"
+            + "<link href=\"http://example.com/\"/>"
+            + "<author><name>Someone</name></author>"
+            + "<entry>"
+            + "<title>Atom first</title>"
+            + "<link rel=\"alternate\" href=\"http://example.com/a1\"/>"
+            + "<link rel=\"replies\" href=\"http://example.com/a1/comments\"/>"
+            + "<id>urn:uuid:1</id>"
+            + "<updated>2002-09-07T09:42:31Z</updated>"
+            + "<published>2002-09-06T09:42:31Z</published>"
+            + "<summary>Short</summary>"
+            + "<content type=\"html\">&lt;p&gt;Longer&lt;/p&gt;</content>"
+            + "</entry>"
+            + "<entry>"
+            + "<title>Atom second</title>"
+            + "<id>urn:uuid:2</id>"
+            + "<updated>2002-09-08T09:42:31Z</updated>"
+            + "</entry>"
+            + "</feed>";
+
+    @Test
+    public void readsRssChannelAndItems() throws Exception {
+        List<GetFeedsNetworkRequest.ItemResponse> items = new ArrayList<GetFeedsNetworkRequest.ItemResponse>();
+        GetFeedsNetworkRequest.FeedResponse feed = parse(RSS, items);
+
+        // The <image> comes first, its <title> and <link> are not the channel's
+        assertEquals("Example News", feed.channelTitle);
+        assertEquals("http://example.com/", feed.channelURL);
+        assertEquals("All the news", feed.channelDescription);
+        assertEquals(FEED_URL, feed.channelFeedURL);
+        assertEquals(3, items.size());
+
+        GetFeedsNetworkRequest.ItemResponse first = items.get(0);
+        assertEquals("First", first.itemTitle);
+        assertEquals("http://example.com/1", first.itemURL);
+        assertEquals("guid-1", first.itemGUID);
+        assertEquals("Sat, 07 Sep 2002 09:42:31 GMT", first.itemPubDate);
+        // The CDATA body is read as HTML and reduced to its text
+        assertEquals("Hello world", first.itemDescription);
+        assertEquals("http://example.com/1.mp3", first.itemEnclosureURL);
+        assertEquals("audio/mpeg", first.itemEnclosureMIMEType);
+    }
+
+    @Test
+    public void itemsMayLackGuidOrLink() throws Exception {
+        List<GetFeedsNetworkRequest.ItemResponse> items = new ArrayList<GetFeedsNetworkRequest.ItemResponse>();
+        parse(RSS, items);
+
+        GetFeedsNetworkRequest.ItemResponse noGuid = items.get(1);
+        assertNull(noGuid.itemGUID);
+        // The <title> and <link> nested in <source> are skipped along with it
+        assertEquals("No guid", noGuid.itemTitle);
+        assertEquals("http://example.com/2", noGuid.itemURL);
+        assertEquals("Encoded body", noGuid.itemDescription);
+
+        GetFeedsNetworkRequest.ItemResponse noLink = items.get(2);
+        assertNull(noLink.itemURL);
+        assertEquals("No link", noLink.itemTitle);
+        assertEquals("guid-3", noLink.itemGUID);
+        assertNull(noLink.itemDescription);
+        assertNull(noLink.itemEnclosureURL);
+    }
+
+    @Test
+    public void readsAtomFeedAndEntries() throws Exception {
+        List<GetFeedsNetworkRequest.ItemResponse> items = new ArrayList<GetFeedsNetworkRequest.ItemResponse>();
+        GetFeedsNetworkRequest.FeedResponse feed = parse(ATOM, items);
+
+        assertEquals("Example Atom", feed.channelTitle);
+        // The rel="self" link is the feed's own address, not its site
+        assertEquals("http://example.com/", feed.channelURL);
+        assertEquals("Atom news", feed.channelDescription);
+        assertEquals(2, items.size());
+
+        GetFeedsNetworkRequest.ItemResponse first = items.get(0);
+        assertEquals("Atom first", first.itemTitle);
+        assertEquals("http://example.com/a1", first.itemURL);
+        assertEquals("urn:uuid:1", first.itemGUID);
+        assertEquals("2002-09-06T09:42:31Z", first.itemPubDate);
+        // <content> is preferred to <summary>, as <content:encoded> is to <description>
+        assertEquals("Longer", first.itemDescription);
+
+        GetFeedsNetworkRequest.ItemResponse second = items.get(1);
+        assertNull(second.itemURL);
+        assertEquals("2002-09-08T09:42:31Z", second.itemPubDate);
+    }
+
+    @Test
+    public void knownItemsAreSkippedAndEndARun() throws Exception {
+        final List<String> seen = new ArrayList<String>();
+        FeedPullParser.ItemFilter knownFirstItem = new FeedPullParser.ItemFilter() {
+            @Override
+            public boolean isKnownItem(String guid, String link, int contentHash) {
+                seen.add(guid + " " + link);
+                return !"http://example.com/2".equals(link);
+            }
+        };
+        List<GetFeedsNetworkRequest.ItemResponse> items = new ArrayList<GetFeedsNetworkRequest.ItemResponse>();
+
+        new FeedPullParser(collectInto(items), knownFirstItem, 0).parse(FEED_URL, stream(RSS), new KXmlParser());
+        assertEquals(1, items.size());
+        assertEquals("No guid", items.get(0).itemTitle);
+        assertEquals("guid-3 null", seen.get(2));
+
+        // A run of one known item is enough to stop reading
+        items.clear();
+        seen.clear();
+        new FeedPullParser(collectInto(items), knownFirstItem, 1).parse(FEED_URL, stream(RSS), new KXmlParser());
+        assertEquals(0, items.size());
+        assertEquals(1, seen.size());
+    }
+
+    @Test
+    public void runOfKnownItemsStopsAfterThatMany() throws Exception {
+        StringBuilder document = new StringBuilder("<rss><channel><title>Known</title>");
+        for (int i = 0; i < 6; i++) {
+            document.append("<item><guid>guid-").append(i).append("</guid></item>");
+        }
+        document.append("</channel></rss>");
+        final List<String> seen = new ArrayList<String>();
+        FeedPullParser.ItemFilter everyItemKnown = new FeedPullParser.ItemFilter() {
+            @Override
+            public boolean isKnownItem(String guid, String link, int contentHash) {
+                seen.add(guid);
+                return true;
+            }
+        };
+        List<GetFeedsNetworkRequest.ItemResponse> items = new ArrayList<GetFeedsNetworkRequest.ItemResponse>();
+
+        for (int run = 1; run <= 3; run++) {
+            seen.clear();
+            new FeedPullParser(collectInto(items), everyItemKnown, run)
+                    .parse(FEED_URL, stream(document.toString()), new KXmlParser());
+            assertEquals(run, seen.size());
+        }
+
+        // A run of 0 reads the whole feed
+        seen.clear();
+        new FeedPullParser(collectInto(items), everyItemKnown, 0)
+                .parse(FEED_URL, stream(document.toString()), new KXmlParser());
+        assertEquals(6, seen.size());
+        assertTrue(items.isEmpty());
+    }
+
+    @Test
+    public void handlerStopsParsing() throws Exception {
+        final List<String> titles = new ArrayList<String>();
+        GetFeedsNetworkRequest.FeedResponse feed = new FeedPullParser(new FeedPullParser.ItemHandler() {
+            @Override
+            public boolean onItem(GetFeedsNetworkRequest.ItemResponse itemResponse) {
+                titles.add(itemResponse.itemTitle);
+                return false;
+            }
+        }).parse(FEED_URL, stream(RSS), new KXmlParser());
+
+        assertEquals(1, titles.size());
+        assertEquals("Example News", feed.channelTitle);
+        assertTrue(feed.channelItems.isEmpty());
+    }
+
+    private static GetFeedsNetworkRequest.FeedResponse parse(String document,
+                                                             List<GetFeedsNetworkRequest.ItemResponse> items)
+            throws Exception {
+        return new FeedPullParser(collectInto(items)).parse(FEED_URL, stream(document), new KXmlParser());
+    }
+
+    private static FeedPullParser.ItemHandler collectInto(final List<GetFeedsNetworkRequest.ItemResponse> items) {
+        return new FeedPullParser.ItemHandler() {
+            @Override
+            public boolean onItem(GetFeedsNetworkRequest.ItemResponse itemResponse) {
+                items.add(itemResponse);
+                return true;
+            }
+        };
+    }
+
+    private static ByteArrayInputStream stream(String document) throws Exception {
+        return new ByteArrayInputStream(document.getBytes("UTF-8"));
+    }
+}
@@ -0,0 +1,116 @@
+package io.bloc.android.blocly.api.network;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks how GetFeedsNetworkRequest spreads several feeds over its workers, with downloads stood in
+ * for by a short sleep.
+ */
+public class GetFeedsNetworkRequestTest {
+
+    private static final long DOWNLOAD_MILLIS = 100;
+
+    @Test
+    public void busyHostDoesNotHoldUpOtherHosts() {
+        // The first feeds all share a host, a worker waiting on that host would keep the others idle
+        CountingRequest request = new CountingRequest(
+                "http://a.example/1", "http://a.example/2", "http://a.example/3", "http://a.example/4",
+                "http://a.example/5", "http://b.example/1", "http://b.example/2", "http://c.example/1");
+
+        List<GetFeedsNetworkRequest.FeedResponse> responses = request.performRequest();
+
+        assertEquals(GetFeedsNetworkRequest.DEFAULT_MAX_REQUESTS_PER_HOST, request.maxRunningFor("a.example"));
+        assertEquals(GetFeedsNetworkRequest.DEFAULT_MAX_REQUESTS_PER_HOST, request.maxRunningFor("b.example"));
+        assertEquals(GetFeedsNetworkRequest.DEFAULT_MAX_CONCURRENT_REQUESTS, request.maxRunning);
+        assertEquals(8, responses.size());
+        for (int i = 0; i < responses.size(); i++) {
+            assertEquals(request.feedUrls[i], responses.get(i).channelFeedURL);
+            assertEquals(0, responses.get(i).errorCode);
+        }
+    }
+
+    @Test
+    public void limitsApplyToEveryHostTogether() {
+        CountingRequest request = new CountingRequest(
+                "http://a.example/1", "http://b.example/1", "http://c.example/1", "http://d.example/1",
+                "http://e.example/1", "http://f.example/1");
+        request.setMaxConcurrentRequests(3);
+
+        request.performRequest();
+
+        assertEquals(3, request.maxRunning);
+        assertEquals(6, request.fetched);
+    }
+
+    @Test
+    public void failedFeedLeavesTheOthers() {
+        CountingRequest request = new CountingRequest("http://a.example/1", "http://a.example/fail",
+                "http://a.example/3");
+
+        List<GetFeedsNetworkRequest.FeedResponse> responses = request.performRequest();
+
+        assertEquals(0, responses.get(0).errorCode);
+        assertEquals(NetworkRequest.ERROR_IO, responses.get(1).errorCode);
+        assertEquals(0, responses.get(2).errorCode);
+        assertEquals(0, request.getErrorCode());
+    }
+
+    // Records how many feeds are fetched at once, overall and from each host
+    private static class CountingRequest extends GetFeedsNetworkRequest {
+
+        private final Map<String, Integer> runningByHost = new HashMap<String, Integer>();
+        private final Map<String, Integer> maxRunningByHost = new HashMap<String, Integer>();
+        private int runningTotal;
+        int maxRunning;
+        int fetched;
+
+        CountingRequest(String... feedUrls) {
+            super(feedUrls);
+        }
+
+        @Override
+        FeedResponse fetchFeed(String feedUrlString) {
+            String host = feedUrlString.substring("http://".length(), feedUrlString.lastIndexOf('/'));
+            started(host);
+            try {
+                Thread.sleep(DOWNLOAD_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                finished(host);
+            }
+            if (feedUrlString.endsWith("fail")) {
+                throw new IllegalStateException("Failed on purpose");
+            }
+            return new FeedResponse(feedUrlString, "Title", feedUrlString, null,
+                    Collections.<ItemResponse>emptyList());
+        }
+
+        synchronized int maxRunningFor(String host) {
+            return maxRunningByHost.get(host);
+        }
+
+        private synchronized void started(String host) {
+            int hostRunning = runningByHost.containsKey(host) ? runningByHost.get(host) + 1 : 1;
+            runningByHost.put(host, hostRunning);
+            if (!maxRunningByHost.containsKey(host) || maxRunningByHost.get(host) < hostRunning) {
+                maxRunningByHost.put(host, hostRunning);
+            }
+            runningTotal++;
+            maxRunning = Math.max(maxRunning, runningTotal);
+            fetched++;
+        }
+
+        private synchronized void finished(String host) {
+            runningByHost.put(host, runningByHost.get(host) - 1);
+            runningTotal--;
+        }
+    }
+}
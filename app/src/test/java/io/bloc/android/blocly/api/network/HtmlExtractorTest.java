@@ -0,0 +1,70 @@
+package io.bloc.android.blocly.api.network;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the single-pass scanner agrees with Jsoup on the kind of HTML found in RSS items.
+ */
+public class HtmlExtractorTest {
+
+    private static final String[] SAMPLES = {
+            "",
+            "Plain text only",
+            "<p>Hello <b>world</b></p><p>Second paragraph</p>",
+            "<div><img src=\"http://example.com/a.png\" alt=\"a\"/>Caption</div>",
+            "<img alt=\"no source\"><img SRC='http://example.com/b.png?x=1&amp;y=2'>text",
+            "Tom &amp; Jerry &mdash; &#8220;quoted&#8221; &#x41;&nbsp;B",
+            "line<br>break<br/>and</br>more",
+            "<ul><li>one</li><li>two</li></ul>after",
+            "a < b and c > d & e",
+            "<!-- hidden --><script>var s = '<p>no</p>';</script><style>p {}</style>shown",
+            "  leading   and\n\ttrailing  whitespace  ",
+            "text</p>stray close",
+            "<h2>Title</h2></h1>unmatched",
+            "<a href=\"http://example.com/?a=1&b=2\">link</a>",
+            "<p>Read more at <a href=x>site</a>.</p><p><img src=http://example.com/c.jpg></p>",
+    };
+
+    @Test
+    public void matchesJsoup() {
+        for (String sample : SAMPLES) {
+            HtmlExtractor.Content expected = HtmlExtractor.extractWithJsoup(sample);
+            HtmlExtractor.Content actual = HtmlExtractor.extract(sample);
+            assertEquals(sample, expected.text, actual.text);
+            assertEquals(sample, expected.imageURL, actual.imageURL);
+        }
+    }
+
+    @Test
+    public void firstImageWithSource_isReturned() {
+        HtmlExtractor.Content content = HtmlExtractor.extract(
+                "<p>intro</p><img alt=x><img src=\"http://example.com/1.png\"><img src=\"http://example.com/2.png\">");
+        assertEquals("intro", content.text);
+        assertEquals("http://example.com/1.png", content.imageURL);
+    }
+
+    @Test
+    public void noImage_returnsNull() {
+        assertNull(HtmlExtractor.extract("<p>no images here</p>").imageURL);
+    }
+
+    @Test
+    public void malformedInput_fallsBackToJsoup() {
+        String[] malformed = {
+                "<p>unterminated <b",
+                "unknown &entity; reference",
+                "<table><tr><td>cell</td></tr></table>",
+                "<pre>  keep   spacing </pre>",
+                "<!-- never closed",
+                "<p>before <![CDATA[inside]]> after</p>",
+        };
+        for (String sample : malformed) {
+            HtmlExtractor.Content expected = HtmlExtractor.extractWithJsoup(sample);
+            HtmlExtractor.Content actual = HtmlExtractor.extract(sample);
+            assertEquals(sample, expected.text, actual.text);
+            assertEquals(sample, expected.imageURL, actual.imageURL);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package io.bloc.android.blocly.api.network;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Exercises conditional GET requests against a local stand-in for a feed server.
+ */
+public class NetworkRequestTest {
+
+    private static final String ETAG = "\"v1\"";
+    private static final String LAST_MODIFIED = "Mon, 03 Oct 2016 10:00:00 GMT";
+    private static final byte[] BODY = "<rss><channel><title>t</title></channel></rss>".getBytes();
+
+    private HttpServer server;
+    private String feedUrl;
+    private int fullResponses;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/feed", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+                String ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+                exchange.getResponseHeaders().add("ETag", ETAG);
+                exchange.getResponseHeaders().add("Last-Modified", LAST_MODIFIED);
+                if (ETAG.equals(ifNoneMatch) || LAST_MODIFIED.equals(ifModifiedSince)) {
+                    exchange.sendResponseHeaders(304, -1);
+                } else {
+                    fullResponses++;
+                    exchange.sendResponseHeaders(200, BODY.length);
+                    OutputStream body = exchange.getResponseBody();
+                    body.write(BODY);
+                    body.close();
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+        feedUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/feed";
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void unconditionalRequest_returnsBodyAndValidators() throws Exception {
+        NetworkRequest.Response response = new TestRequest().openConditionalStream(feedUrl, null, null);
+        assertFalse(response.isNotModified());
+        assertNotNull(response.inputStream);
+        response.inputStream.close();
+        assertEquals(ETAG, response.eTag);
+        assertEquals(LAST_MODIFIED, response.lastModified);
+    }
+
+    @Test
+    public void matchingETag_returnsNotModifiedWithoutBody() {
+        NetworkRequest.Response response = new TestRequest().openConditionalStream(feedUrl, ETAG, null);
+        assertTrue(response.isNotModified());
+        assertNull(response.inputStream);
+        assertEquals(ETAG, response.eTag);
+        assertEquals(0, fullResponses);
+    }
+
+    @Test
+    public void matchingLastModified_returnsNotModified() {
+        NetworkRequest.Response response = new TestRequest().openConditionalStream(feedUrl, null, LAST_MODIFIED);
+        assertTrue(response.isNotModified());
+    }
+
+    @Test
+    public void staleETag_returnsFullResponse() throws Exception {
+        NetworkRequest.Response response = new TestRequest().openConditionalStream(feedUrl, "\"v0\"", null);
+        assertFalse(response.isNotModified());
+        response.inputStream.close();
+        assertEquals(1, fullResponses);
+    }
+
+    @Test
+    public void getFeeds_notModified_skipsParsing() {
+        GetFeedsNetworkRequest request = new GetFeedsNetworkRequest(feedUrl);
+        request.setValidators(feedUrl, ETAG, LAST_MODIFIED);
+        List<GetFeedsNetworkRequest.FeedResponse> feedResponses = request.performRequest();
+
+        assertEquals(0, request.getErrorCode());
+        assertEquals(1, feedResponses.size());
+        assertTrue(feedResponses.get(0).notModified);
+        assertTrue(feedResponses.get(0).channelItems.isEmpty());
+        assertEquals(ETAG, feedResponses.get(0).eTag);
+    }
+
+    @Test
+    public void getFeeds_concurrentFetch_keepsPartialResults() {
+        String missingUrl = feedUrl.replace("/feed", "/missing");
+        GetFeedsNetworkRequest request = new GetFeedsNetworkRequest(missingUrl, feedUrl, "not a url");
+        request.setValidators(feedUrl, ETAG, null);
+        List<GetFeedsNetworkRequest.FeedResponse> feedResponses = request.performRequest();
+
+        assertEquals(0, request.getErrorCode());
+        assertEquals(3, feedResponses.size());
+        assertEquals(missingUrl, feedResponses.get(0).channelFeedURL);
+        assertEquals(NetworkRequest.ERROR_IO, feedResponses.get(0).errorCode);
+        assertEquals(0, feedResponses.get(1).errorCode);
+        assertTrue(feedResponses.get(1).notModified);
+        assertEquals(NetworkRequest.ERROR_MALFORMED_URL, feedResponses.get(2).errorCode);
+    }
+
+    @Test
+    public void getFeeds_everyFeedFailing_setsRequestError() {
+        GetFeedsNetworkRequest request = new GetFeedsNetworkRequest("not a url", "also not a url");
+        List<GetFeedsNetworkRequest.FeedResponse> feedResponses = request.performRequest();
+
+        assertEquals(NetworkRequest.ERROR_MALFORMED_URL, request.getErrorCode());
+        assertEquals(2, feedResponses.size());
+    }
+
+    @Test
+    public void missingResource_setsIOError() {
+        NetworkRequest.Response response = new TestRequest()
+                .openConditionalStream(feedUrl.replace("/feed", "/missing"), null, null);
+        assertNull(response.inputStream);
+        assertEquals(NetworkRequest.ERROR_IO, response.errorCode);
+    }
+
+    @Test
+    public void cancel_closesOpenStreams() throws Exception {
+        TestRequest request = new TestRequest();
+        NetworkRequest.Response response = request.openConditionalStream(feedUrl, null, null);
+        assertNotNull(response.inputStream);
+
+        request.cancel();
+
+        assertTrue(request.isCancelled());
+        try {
+            response.inputStream.read();
+            fail("Stream should have been closed");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void cancelledRequest_opensNoStream() {
+        TestRequest request = new TestRequest();
+        request.cancel();
+
+        NetworkRequest.Response response = request.openConditionalStream(feedUrl, null, null);
+
+        assertNull(response.inputStream);
+        assertEquals(NetworkRequest.ERROR_CANCELLED, response.errorCode);
+        assertEquals(0, fullResponses);
+    }
+
+    private static class TestRequest extends NetworkRequest<Void> {
+        @Override
+        public Void performRequest() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package io.bloc.android.blocly.api.network;
+
+import org.junit.Test;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks PubDateParser against SimpleDateFormat, which DataSource used to parse item dates.
+ */
+public class PubDateParserTest {
+
+    @Test
+    public void matchesSimpleDateFormat() {
+        DateFormat gmtFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.ENGLISH);
+        gmtFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+        DateFormat offsetFormat = new SimpleDateFormat("EEE, d MMM yyyy HH:mm:ss Z", Locale.ENGLISH);
+        offsetFormat.setTimeZone(TimeZone.getTimeZone("America/New_York"));
+
+        Random random = new Random(822);
+        for (int i = 0; i < 2000; i++) {
+            // Whole seconds between 1950 and 2100
+            long millis = (random.nextLong() % 4102444800l) / 1000 * 1000;
+            String gmtDate = gmtFormat.format(new Date(millis));
+            String offsetDate = offsetFormat.format(new Date(millis));
+            assertEquals(gmtDate, millis, PubDateParser.parse(gmtDate));
+            assertEquals(offsetDate, millis, PubDateParser.parse(offsetDate));
+        }
+    }
+
+    @Test
+    public void parsesRfc822Variants() {
+        long expected = 1031391751000l;
+        assertEquals(expected, PubDateParser.parse("Sat, 07 Sep 2002 09:42:31 GMT"));
+        assertEquals(expected, PubDateParser.parse("07 Sep 2002 09:42:31 GMT"));
+        assertEquals(expected, PubDateParser.parse("Saturday, 7 September 2002 09:42:31 UT"));
+        assertEquals(expected, PubDateParser.parse("Sat, 7 Sept 02 09:42:31 +0000"));
+        assertEquals(expected, PubDateParser.parse("  Sat, 07 Sep 2002 05:42:31 EDT  "));
+        assertEquals(expected, PubDateParser.parse("Sat, 07 Sep 2002 04:42:31 -05:00"));
+        assertEquals(expected, PubDateParser.parse("Sat, 07 Sep 2002 15:12:31 +0530"));
+        assertEquals(expected, PubDateParser.parse("Sat, 07 sep 2002 02:42:31 pdt"));
+        assertEquals(expected, PubDateParser.parse("Sat, 07 Sep 2002 09:42:31"));
+        assertEquals(expected - 31000, PubDateParser.parse("Sat, 07 Sep 2002 09:42 Z"));
+    }
+
+    @Test
+    public void parsesRfc3339() {
+        long expected = 1031391751000l;
+        assertEquals(expected, PubDateParser.parse("2002-09-07T09:42:31Z"));
+        assertEquals(expected, PubDateParser.parse("2002-09-07t11:42:31+02:00"));
+        assertEquals(expected, PubDateParser.parse("2002-09-07 09:42:31z"));
+        assertEquals(expected + 123, PubDateParser.parse("2002-09-07T09:42:31.123456Z"));
+        assertEquals(expected + 500, PubDateParser.parse("2002-09-07T04:42:31.5-05:00"));
+        assertEquals(1031356800000l, PubDateParser.parse("2002-09-07"));
+        assertEquals(951782400000l, PubDateParser.parse("2000-02-29T00:00:00Z"));
+        assertEquals(-86400000l, PubDateParser.parse("1969-12-31T00:00:00Z"));
+    }
+
+    @Test
+    public void rejectsInvalidDates() {
+        String[] invalidDates = {
+                null,
+                "",
+                "yesterday",
+                "Sat, 07 Foo 2002 09:42:31 GMT",
+                "Sat, 31 Sep 2002 09:42:31 GMT",
+                "Sat, 07 Sep 2002 24:42:31 GMT",
+                "Sat, 07 Sep 2002 09:42:31 XYZ",
+                "Sat, 07 Sep 2002",
+                "2001-02-29T00:00:00Z",
+                "2002-09-07T09:42:31+0",
+                "2002-09-07X09:42:31Z",
+                "2002-13-07T09:42:31Z",
+        };
+        for (String invalidDate : invalidDates) {
+            assertEquals(invalidDate, PubDateParser.INVALID_DATE, PubDateParser.parse(invalidDate));
+        }
+    }
+}